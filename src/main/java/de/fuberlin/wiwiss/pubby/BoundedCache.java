@@ -0,0 +1,292 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache with a maximum number of entries. When full, the
+ * least recently used entry is evicted. Entries can optionally expire
+ * after a fixed time, and <code>null</code> values (which usually mean
+ * "not found") can be given a different expiry time than other values.
+ *
+ * Concurrent requests for a key that is not yet cached are coalesced:
+ * the value is computed by the first requesting thread, and all others
+ * wait for and share its result.
+ *
+ * Large caches are split into independently locked segments to reduce
+ * contention. Each segment evicts its own least recently used entries,
+ * so eviction order is only approximately LRU for the cache as a whole.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the cached values
+ */
+public class BoundedCache<K, V> {
+	private final static int MAX_SEGMENTS = 16;
+	private final static int MIN_SEGMENT_SIZE = 64;
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final long negativeTTLMillis;
+	private final Segment[] segments;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize Maximum number of entries
+	 * @param ttlMillis Time after which an entry expires, in milliseconds;
+	 * 		0 means entries don't expire
+	 */
+	public BoundedCache(int maxSize, long ttlMillis) {
+		this(maxSize, ttlMillis, ttlMillis);
+	}
+
+	/**
+	 * @param maxSize Maximum number of entries
+	 * @param ttlMillis Time after which an entry expires, in milliseconds;
+	 * 		0 means entries don't expire
+	 * @param negativeTTLMillis Time after which an entry with a
+	 * 		<code>null</code> value expires; 0 means they don't expire
+	 */
+	@SuppressWarnings("unchecked")
+	public BoundedCache(int maxSize, long ttlMillis, long negativeTTLMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.negativeTTLMillis = negativeTTLMillis;
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && 
+				maxSize / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+			segmentCount *= 2;
+		}
+		segments = (Segment[]) new BoundedCache<?, ?>.Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// Distribute the remainder so the sizes add up to maxSize
+			segments[i] = new Segment(maxSize / segmentCount + 
+					(i < maxSize % segmentCount ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Returns the cached value for a key, computing it if necessary.
+	 * If the loader throws an exception, then nothing is cached and the
+	 * exception is passed on to all threads waiting for the value.
+	 *
+	 * @param key The key
+	 * @param loader Computes the value if it is not cached
+	 * @return The cached or newly computed value
+	 */
+	public V get(K key, Callable<V> loader) {
+		Segment segment = segmentFor(key);
+		Entry<V> entry;
+		boolean isNew = false;
+		synchronized (segment) {
+			entry = segment.getLiveEntry(key);
+			if (entry == null) {
+				entry = new Entry<V>(new FutureTask<V>(loader));
+				segment.put(key, entry);
+				isNew = true;
+			}
+		}
+		(isNew ? misses : hits).incrementAndGet();
+		if (isNew) {
+			entry.value.run();
+		}
+		try {
+			V result = entry.value.get();
+			if (isNew) {
+				entry.expires = expiryTime(result);
+			}
+			return result;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			synchronized (segment) {
+				segment.removeIfSame(key, entry);
+			}
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Returns a value only if it is already cached and completely
+	 * computed. Never blocks, and never computes anything. Does not
+	 * count as a hit or miss.
+	 */
+	public V getIfPresent(K key) {
+		Segment segment = segmentFor(key);
+		Entry<V> entry;
+		synchronized (segment) {
+			entry = segment.getLiveEntry(key);
+		}
+		if (entry == null || !entry.value.isDone()) return null;
+		try {
+			return entry.value.get();
+		} catch (InterruptedException ex) {
+			return null;
+		} catch (ExecutionException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a completely computed value is cached for the key.
+	 * Never blocks. Does not count as a hit or miss.
+	 */
+	public boolean containsKey(K key) {
+		Segment segment = segmentFor(key);
+		Entry<V> entry;
+		synchronized (segment) {
+			entry = segment.getLiveEntry(key);
+		}
+		return entry != null && entry.value.isDone();
+	}
+
+	/**
+	 * Adds a value to the cache, replacing any previous value.
+	 */
+	public void put(K key, V value) {
+		FutureTask<V> task = new FutureTask<V>(new Constant<V>(value));
+		task.run();
+		Entry<V> entry = new Entry<V>(task);
+		entry.expires = expiryTime(value);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	public void clear() {
+		for (Segment segment: segments) {
+			synchronized (segment) {
+				segment.entries.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int result = 0;
+		for (Segment segment: segments) {
+			synchronized (segment) {
+				result += segment.entries.size();
+			}
+		}
+		return result;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Number of requests answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Number of requests that required computing the value
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Number of entries removed because the cache was full or
+	 * 		because they had expired
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "BoundedCache(size=" + size() + ", maxSize=" + maxSize +
+				", hits=" + hits + ", misses=" + misses +
+				", evictions=" + evictions + ")";
+	}
+
+	private Segment segmentFor(K key) {
+		if (segments.length == 1) return segments[0];
+		int h = key == null ? 0 : key.hashCode();
+		// Spread bits so that keys differing only in high bits are distributed
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & (segments.length - 1)];
+	}
+
+	private long expiryTime(V value) {
+		long ttl = value == null ? negativeTTLMillis : ttlMillis;
+		return ttl == 0 ? 0 : System.currentTimeMillis() + ttl;
+	}
+
+	/**
+	 * An independently locked part of the cache. All access must
+	 * synchronize on the segment.
+	 */
+	private class Segment {
+		private final Map<K, Entry<V>> entries;
+		Segment(final int segmentSize) {
+			entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+					if (size() <= segmentSize) return false;
+					evictions.incrementAndGet();
+					return true;
+				}
+				private static final long serialVersionUID = -3014458187297566311L;
+			};
+		}
+		Entry<V> getLiveEntry(K key) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null && entry.expires != 0 &&
+					entry.expires < System.currentTimeMillis()) {
+				entries.remove(key);
+				evictions.incrementAndGet();
+				return null;
+			}
+			return entry;
+		}
+		void put(K key, Entry<V> entry) {
+			entries.put(key, entry);
+		}
+		void removeIfSame(K key, Entry<V> entry) {
+			if (entries.get(key) == entry) {
+				entries.remove(key);
+			}
+		}
+	}
+
+	private static class Entry<V> {
+		final FutureTask<V> value;
+		// 0 while the value is being computed, and for entries that don't expire
+		volatile long expires = 0;
+		Entry(FutureTask<V> value) {
+			this.value = value;
+		}
+	}
+
+	private static class Constant<V> implements Callable<V> {
+		private final V value;
+		Constant(V value) {
+			this.value = value;
+		}
+		public V call() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,623 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/**
+ * A read-only graph that needs much less memory than Jena's default
+ * in-memory graph, for large static datasets. Each distinct RDF term is
+ * stored once in a dictionary, UTF-8 encoded, and triples are stored as
+ * term IDs in sorted integer arrays. Two orders are kept:
+ * subject-predicate-object, to find the outgoing arcs of a resource,
+ * and object-subject-predicate, to find its incoming arcs. Patterns
+ * with only the predicate bound require a full scan.
+ *
+ * Nodes are created when triples are read, so the same term may be
+ * returned as different, but equal, {@link Node} instances. Literals are
+ * matched by term equality, not by value.
+ *
+ * Instances are created with a {@link Builder}, or mapped into memory
+ * from a file written with {@link #write(FileChannel)}. All data is held
+ * in NIO buffers, so a mapped graph is read straight from the file.
+ */
+public class CompactGraph extends GraphBase {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	private final static int ANY = -1;
+
+	private final Dictionary dictionary;
+	private final int size;
+	// Term IDs of all triples, sorted by subject, predicate, object
+	private final IntBuffer subjects;
+	private final IntBuffer predicates;
+	private final IntBuffer objects;
+	// Positions in the buffers above, sorted by object, subject, predicate
+	private final IntBuffer osp;
+
+	private CompactGraph(Dictionary dictionary, int size, IntBuffer subjects,
+			IntBuffer predicates, IntBuffer objects, IntBuffer osp) {
+		this.dictionary = dictionary;
+		this.size = size;
+		this.subjects = subjects;
+		this.predicates = predicates;
+		this.objects = objects;
+		this.osp = osp;
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+		int s = getId(m.getMatchSubject());
+		int p = getId(m.getMatchPredicate());
+		int o = getId(m.getMatchObject());
+		if (s == Dictionary.NOT_FOUND || p == Dictionary.NOT_FOUND ||
+				o == Dictionary.NOT_FOUND) {
+			return NullIterator.instance();
+		}
+		if (s != ANY) {
+			int from = lowerBound(subjects, null, 0, size, s);
+			int to = upperBound(subjects, null, from, size, s);
+			if (p != ANY) {
+				from = lowerBound(predicates, null, from, to, p);
+				to = upperBound(predicates, null, from, to, p);
+			}
+			return new TripleIterator(null, from, to, ANY, o);
+		}
+		if (o != ANY) {
+			int from = lowerBound(objects, osp, 0, size, o);
+			int to = upperBound(objects, osp, from, size, o);
+			return new TripleIterator(osp, from, to, p, ANY);
+		}
+		return new TripleIterator(null, 0, size, p, ANY);
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		return size;
+	}
+
+	/**
+	 * @return The term's ID, {@link #ANY} for a wildcard, or
+	 * 		{@link Dictionary#NOT_FOUND} if the term is not in the graph
+	 */
+	private int getId(Node node) {
+		if (node == null || !node.isConcrete()) return ANY;
+		return dictionary.getId(encode(node));
+	}
+
+	/**
+	 * Index of the first position in a sorted range whose value is not
+	 * less than the key.
+	 */
+	private static int lowerBound(IntBuffer values, IntBuffer order, int from, int to, int key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (values.get(order == null ? mid : order.get(mid)) < key) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * Index of the first position in a sorted range whose value is
+	 * greater than the key.
+	 */
+	private static int upperBound(IntBuffer values, IntBuffer order, int from, int to, int key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (values.get(order == null ? mid : order.get(mid)) <= key) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * Iterates over a range of positions in SPO or OSP order, optionally
+	 * skipping triples with the wrong predicate or object.
+	 */
+	private class TripleIterator extends NiceIterator<Triple> {
+		private final IntBuffer order;
+		private final int to;
+		private final int predicate;
+		private final int object;
+		private int next;
+
+		TripleIterator(IntBuffer order, int from, int to, int predicate, int object) {
+			this.order = order;
+			this.next = from;
+			this.to = to;
+			this.predicate = predicate;
+			this.object = object;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next < to) {
+				int i = order == null ? next : order.get(next);
+				if ((predicate == ANY || predicates.get(i) == predicate) &&
+						(object == ANY || objects.get(i) == object)) {
+					return true;
+				}
+				next++;
+			}
+			return false;
+		}
+
+		@Override
+		public Triple next() {
+			ensureHasNext();
+			int i = order == null ? next : order.get(next);
+			next++;
+			return Triple.create(dictionary.getNode(subjects.get(i)),
+					dictionary.getNode(predicates.get(i)), dictionary.getNode(objects.get(i)));
+		}
+	}
+
+	/**
+	 * Writes the graph, including its prefixes, to a channel at its
+	 * current position. It can be read back with {@link #map(FileChannel)}.
+	 */
+	public void write(FileChannel channel) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(size);
+		header.writeInt(dictionary.size);
+		header.writeInt(dictionary.data.limit());
+		header.writeInt(dictionary.table.limit());
+		Map<String, String> prefixes = getPrefixMapping().getNsPrefixMap();
+		header.writeInt(prefixes.size());
+		for (String prefix: prefixes.keySet()) {
+			header.writeUTF(prefix);
+			header.writeUTF(prefixes.get(prefix));
+		}
+		header.flush();
+		writeBlock(channel, bytes.toByteArray());
+		ByteBuffer data = dictionary.data.duplicate();
+		data.position(0);
+		writeFully(channel, data);
+		writeInts(channel, dictionary.offsets);
+		writeInts(channel, dictionary.hashes);
+		writeInts(channel, dictionary.table);
+		writeInts(channel, subjects);
+		writeInts(channel, predicates);
+		writeInts(channel, objects);
+		writeInts(channel, osp);
+	}
+
+	/**
+	 * Maps a graph written with {@link #write(FileChannel)} into memory,
+	 * starting at the channel's current position. The graph remains
+	 * usable after the channel is closed. Afterwards, the channel is
+	 * positioned after the graph.
+	 */
+	public static CompactGraph map(FileChannel channel) throws IOException {
+		DataInputStream header = new DataInputStream(
+				new ByteArrayInputStream(readBlock(channel)));
+		int size = header.readInt();
+		int termCount = header.readInt();
+		int dataLength = header.readInt();
+		int tableLength = header.readInt();
+		Map<String, String> prefixes = new HashMap<String, String>();
+		int prefixCount = header.readInt();
+		for (int i = 0; i < prefixCount; i++) {
+			String prefix = header.readUTF();
+			prefixes.put(prefix, header.readUTF());
+		}
+		long position = channel.position();
+		ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, position, dataLength);
+		position += dataLength;
+		IntBuffer[] sections = new IntBuffer[7];
+		int[] lengths = {termCount + 1, termCount, tableLength, size, size, size, size};
+		for (int i = 0; i < sections.length; i++) {
+			long bytes = lengths[i] * 4L;
+			if (bytes > Integer.MAX_VALUE) {
+				throw new IOException("Graph too large to map into memory");
+			}
+			sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).asIntBuffer();
+			position += bytes;
+		}
+		channel.position(position);
+		Dictionary dictionary = new Dictionary(termCount, data,
+				sections[0], sections[1], sections[2]);
+		CompactGraph result = new CompactGraph(dictionary, size,
+				sections[3], sections[4], sections[5], sections[6]);
+		result.getPrefixMapping().setNsPrefixes(prefixes);
+		return result;
+	}
+
+	/**
+	 * Writes a byte array, preceded by its length.
+	 */
+	static void writeBlock(FileChannel channel, byte[] block) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + block.length);
+		buffer.putInt(block.length).put(block).flip();
+		writeFully(channel, buffer);
+	}
+
+	/**
+	 * Reads a byte array written with {@link #writeBlock(FileChannel, byte[])}.
+	 */
+	static byte[] readBlock(FileChannel channel) throws IOException {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(channel, length);
+		int blockLength = length.getInt(0);
+		if (blockLength < 0 || blockLength > channel.size() - channel.position()) {
+			throw new IOException("Invalid block length: " + blockLength);
+		}
+		ByteBuffer block = ByteBuffer.allocate(blockLength);
+		readFully(channel, block);
+		return block.array();
+	}
+
+	private static void writeInts(FileChannel channel, IntBuffer values) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		for (int i = 0; i < values.limit(); i++) {
+			if (!buffer.hasRemaining()) {
+				buffer.flip();
+				writeFully(channel, buffer);
+				buffer.clear();
+			}
+			buffer.putInt(values.get(i));
+		}
+		buffer.flip();
+		writeFully(channel, buffer);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	/**
+	 * Serializes a term to bytes. The first byte gives the kind of term:
+	 * <tt>U</tt> for IRIs, <tt>B</tt> for blank nodes, <tt>L</tt> for plain
+	 * literals (lexical form and language tag, separated by a zero
+	 * character), and <tt>T</tt> for typed literals (lexical form and
+	 * datatype IRI).
+	 */
+	private static byte[] encode(Node node) {
+		StringBuilder result = new StringBuilder();
+		if (node.isURI()) {
+			result.append('U').append(node.getURI());
+		} else if (node.isBlank()) {
+			result.append('B').append(node.getBlankNodeLabel());
+		} else if (node.getLiteralDatatypeURI() == null) {
+			result.append('L').append(node.getLiteralLexicalForm())
+					.append('\u0000').append(node.getLiteralLanguage());
+		} else {
+			result.append('T').append(node.getLiteralLexicalForm())
+					.append('\u0000').append(node.getLiteralDatatypeURI());
+		}
+		return result.toString().getBytes(UTF8);
+	}
+
+	private static Node decode(String term) {
+		char kind = term.charAt(0);
+		if (kind == 'U') return NodeFactory.createURI(term.substring(1));
+		if (kind == 'B') return NodeFactory.createAnon(new AnonId(term.substring(1)));
+		int split = term.lastIndexOf('\u0000');
+		String lexicalForm = term.substring(1, split);
+		if (kind == 'L') {
+			return NodeFactory.createLiteral(lexicalForm, term.substring(split + 1), false);
+		}
+		return NodeFactory.createLiteral(lexicalForm, null,
+				TypeMapper.getInstance().getSafeTypeByName(term.substring(split + 1)));
+	}
+
+	/**
+	 * Collects triples and builds a {@link CompactGraph} from them.
+	 * The builder cannot be used any more after {@link #build()}.
+	 */
+	public static class Builder {
+		private final DictionaryBuilder dictionary = new DictionaryBuilder();
+		private final Map<String, String> prefixes = new HashMap<String, String>();
+		private int[] subjects = new int[1024];
+		private int[] predicates = new int[1024];
+		private int[] objects = new int[1024];
+		private int size = 0;
+
+		public void add(Triple triple) {
+			if (size == subjects.length) {
+				int capacity = subjects.length + (subjects.length >> 1);
+				subjects = Arrays.copyOf(subjects, capacity);
+				predicates = Arrays.copyOf(predicates, capacity);
+				objects = Arrays.copyOf(objects, capacity);
+			}
+			subjects[size] = dictionary.add(encode(triple.getSubject()));
+			predicates[size] = dictionary.add(encode(triple.getPredicate()));
+			objects[size] = dictionary.add(encode(triple.getObject()));
+			size++;
+		}
+
+		public void setNsPrefix(String prefix, String namespace) {
+			prefixes.put(prefix, namespace);
+		}
+
+		public CompactGraph build() {
+			new Sorter() {
+				int compare(int i, int j) {
+					if (subjects[i] != subjects[j]) return subjects[i] < subjects[j] ? -1 : 1;
+					if (predicates[i] != predicates[j]) return predicates[i] < predicates[j] ? -1 : 1;
+					if (objects[i] != objects[j]) return objects[i] < objects[j] ? -1 : 1;
+					return 0;
+				}
+				void swap(int i, int j) {
+					CompactGraph.swap(subjects, i, j);
+					CompactGraph.swap(predicates, i, j);
+					CompactGraph.swap(objects, i, j);
+				}
+			}.sort(0, size);
+			// Remove duplicates
+			int distinct = 0;
+			for (int i = 0; i < size; i++) {
+				if (distinct > 0 && subjects[i] == subjects[distinct - 1] &&
+						predicates[i] == predicates[distinct - 1] &&
+						objects[i] == objects[distinct - 1]) continue;
+				subjects[distinct] = subjects[i];
+				predicates[distinct] = predicates[i];
+				objects[distinct] = objects[i];
+				distinct++;
+			}
+			final int[] s = Arrays.copyOf(subjects, distinct);
+			final int[] p = Arrays.copyOf(predicates, distinct);
+			final int[] o = Arrays.copyOf(objects, distinct);
+			subjects = predicates = objects = null;
+			final int[] osp = new int[distinct];
+			for (int i = 0; i < distinct; i++) {
+				osp[i] = i;
+			}
+			new Sorter() {
+				int compare(int i, int j) {
+					int a = osp[i];
+					int b = osp[j];
+					if (o[a] != o[b]) return o[a] < o[b] ? -1 : 1;
+					// Positions are in SPO order already
+					return a < b ? -1 : (a > b ? 1 : 0);
+				}
+				void swap(int i, int j) {
+					CompactGraph.swap(osp, i, j);
+				}
+			}.sort(0, distinct);
+			CompactGraph result = new CompactGraph(dictionary.build(), distinct,
+					IntBuffer.wrap(s), IntBuffer.wrap(p), IntBuffer.wrap(o), IntBuffer.wrap(osp));
+			result.getPrefixMapping().setNsPrefixes(prefixes);
+			return result;
+		}
+	}
+
+	private static void swap(int[] array, int i, int j) {
+		int tmp = array[i];
+		array[i] = array[j];
+		array[j] = tmp;
+	}
+
+	/**
+	 * Quicksort over positions, with the comparison and swapping of
+	 * positions left to subclasses, so that parallel arrays can be
+	 * sorted without creating objects.
+	 */
+	private static abstract class Sorter {
+		abstract int compare(int i, int j);
+		abstract void swap(int i, int j);
+
+		void sort(int from, int to) {
+			while (to - from > 16) {
+				int mid = (from + to) >>> 1;
+				// Median of three becomes the pivot, at position from
+				if (compare(mid, from) < 0) swap(from, mid);
+				if (compare(to - 1, mid) < 0) {
+					swap(mid, to - 1);
+					if (compare(mid, from) < 0) swap(from, mid);
+				}
+				swap(from, mid);
+				int i = from + 1;
+				int j = to - 1;
+				while (true) {
+					while (i <= j && compare(i, from) < 0) i++;
+					while (i <= j && compare(j, from) > 0) j--;
+					if (i >= j) break;
+					swap(i, j);
+					i++;
+					j--;
+				}
+				swap(from, j);
+				// Recurse into the smaller part, loop on the larger one
+				if (j - from < to - j - 1) {
+					sort(from, j);
+					from = j + 1;
+				} else {
+					sort(j + 1, to);
+					to = j;
+				}
+			}
+			for (int i = from + 1; i < to; i++) {
+				for (int j = i; j > from && compare(j - 1, j) > 0; j--) {
+					swap(j - 1, j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps terms to consecutive integer IDs and back. The encoded terms
+	 * are concatenated in a single buffer, and found by hashing into an
+	 * open addressing table. Only absolute buffer operations are used,
+	 * so instances are safe for use by several threads.
+	 */
+	private static class Dictionary {
+		final static int NOT_FOUND = -2;
+
+		private final int size;
+		private final ByteBuffer data;
+		// Term i is at data[offsets[i]] to data[offsets[i + 1]]
+		private final IntBuffer offsets;
+		private final IntBuffer hashes;
+		// Term IDs plus one, 0 for empty slots
+		private final IntBuffer table;
+
+		Dictionary(int size, ByteBuffer data, IntBuffer offsets,
+				IntBuffer hashes, IntBuffer table) {
+			this.size = size;
+			this.data = data;
+			this.offsets = offsets;
+			this.hashes = hashes;
+			this.table = table;
+		}
+
+		int getId(byte[] term) {
+			int hash = hash(term);
+			int mask = table.limit() - 1;
+			for (int slot = hash & mask; table.get(slot) != 0; slot = (slot + 1) & mask) {
+				int id = table.get(slot) - 1;
+				if (hashes.get(id) == hash && termEquals(id, term)) return id;
+			}
+			return NOT_FOUND;
+		}
+
+		Node getNode(int id) {
+			int offset = offsets.get(id);
+			byte[] term = new byte[offsets.get(id + 1) - offset];
+			for (int i = 0; i < term.length; i++) {
+				term[i] = data.get(offset + i);
+			}
+			return decode(new String(term, UTF8));
+		}
+
+		private boolean termEquals(int id, byte[] term) {
+			int offset = offsets.get(id);
+			if (offsets.get(id + 1) - offset != term.length) return false;
+			for (int i = 0; i < term.length; i++) {
+				if (data.get(offset + i) != term[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Assigns IDs to terms while a graph is built, in growable arrays
+	 * laid out like those of a {@link Dictionary}.
+	 */
+	private static class DictionaryBuilder {
+		private byte[] data = new byte[1 << 16];
+		private int dataLength = 0;
+		private int[] offsets = new int[1024];
+		private int[] hashes = new int[1024];
+		private int size = 0;
+		private int[] table = new int[2048];
+
+		int add(byte[] term) {
+			int hash = hash(term);
+			int slot = hash & (table.length - 1);
+			for (; table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+				int id = table[slot] - 1;
+				if (hashes[id] == hash && termEquals(id, term)) return id;
+			}
+			if (size + 1 == offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			}
+			if (dataLength + term.length > data.length) {
+				long capacity = Math.max((long) data.length * 2, (long) dataLength + term.length);
+				if (capacity > Integer.MAX_VALUE - 8) {
+					capacity = Integer.MAX_VALUE - 8;
+					if (dataLength + term.length > capacity) {
+						throw new IllegalStateException("Too much data for a compact graph");
+					}
+				}
+				data = Arrays.copyOf(data, (int) capacity);
+			}
+			int id = size;
+			System.arraycopy(term, 0, data, dataLength, term.length);
+			offsets[id] = dataLength;
+			dataLength += term.length;
+			offsets[id + 1] = dataLength;
+			hashes[id] = hash;
+			table[slot] = id + 1;
+			size++;
+			if (size * 2 > table.length) {
+				rehash(table.length * 2);
+			}
+			return id;
+		}
+
+		/**
+		 * Releases unused capacity once all terms are added. The builder
+		 * cannot be used any more afterwards.
+		 */
+		Dictionary build() {
+			Dictionary result = new Dictionary(size,
+					ByteBuffer.wrap(Arrays.copyOf(data, dataLength)),
+					IntBuffer.wrap(Arrays.copyOf(offsets, size + 1)),
+					IntBuffer.wrap(Arrays.copyOf(hashes, size)),
+					IntBuffer.wrap(table));
+			data = null;
+			offsets = hashes = table = null;
+			return result;
+		}
+
+		private void rehash(int capacity) {
+			table = new int[capacity];
+			for (int id = 0; id < size; id++) {
+				int slot = hashes[id] & (capacity - 1);
+				while (table[slot] != 0) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				table[slot] = id + 1;
+			}
+		}
+
+		private boolean termEquals(int id, byte[] term) {
+			int offset = offsets[id];
+			if (offsets[id + 1] - offset != term.length) return false;
+			for (int i = 0; i < term.length; i++) {
+				if (data[offset + i] != term[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	private static int hash(byte[] term) {
+		// 32-bit FNV-1a, with a final mix because the low bits pick the slot
+		int hash = 0x811c9dc5;
+		for (byte b: term) {
+			hash ^= b & 0xFF;
+			hash *= 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
@@ -5,6 +5,13 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -21,7 +28,9 @@ import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 import com.hp.hpl.jena.vocabulary.XSD;
 
+import de.fuberlin.wiwiss.pubby.sources.CachingDataSource;
 import de.fuberlin.wiwiss.pubby.sources.DataSource;
+import de.fuberlin.wiwiss.pubby.sources.HttpTransport;
 import de.fuberlin.wiwiss.pubby.sources.IndexDataSource;
 import de.fuberlin.wiwiss.pubby.sources.MergeDataSource;
 import de.fuberlin.wiwiss.pubby.sources.ModelDataSource;
@@ -42,38 +51,28 @@ public class Configuration extends ResourceReader {
 	}
 	
 	private final PrefixMapping prefixes;
+	private final PrefixTrie prefixTrie;
 	private final String webBase;
 	private final Collection<Property> labelProperties;
 	private final Collection<Property> commentProperties;
 	private final Collection<Property> imageProperties;
 	private final ArrayList<Dataset> datasets = new ArrayList<Dataset>();
 	private final VocabularyStore vocabularyStore = new VocabularyStore();
+	private final HttpTransport httpTransport;
+	private final ExecutorService sourceExecutor;
+	private final ExecutorService requestExecutor;
 	private final DataSource dataSource;
+	private IndexDataSource indexDataSource = null;
 	private final String indexIRI;
 	private final Set<String> allBrowsableNamespaces = new HashSet<String>();
+	private final NamespaceMatcher browsableNamespaceMatcher;
+	private final long loadTime = System.currentTimeMillis();
+	private final String dataVersion;
 	
 	public Configuration(Resource configuration) {
 		super(configuration);
 		webBase = getRequiredIRI(CONF.webBase);
 
-		// Create datasets from conf:dataset
-		for (Resource r: getResources(CONF.dataset)) {
-			Dataset ds = new Dataset(r, this);
-			datasets.add(ds);
-			allBrowsableNamespaces.addAll(ds.getBrowsableNamespaces());
-		}
-		allBrowsableNamespaces.add(getWebApplicationBaseURI() + getWebResourcePrefix());
-		allBrowsableNamespaces.addAll(getBrowsableNamespaces());
-		
-		// Create datasets from conf:loadVocabularyFromURL
-		for (String sourceURL: getIRIs(CONF.loadVocabulary)) {
-			Model m = ModelFactory.createDefaultModel();
-			Resource dummyDataset = m.createResource();
-			dummyDataset.addProperty(CONF.loadRDF, m.createResource(sourceURL));
-			dummyDataset.addProperty(RDF.type, CONF.AnnotationProvider);
-			datasets.add(new Dataset(dummyDataset, this));
-		}
-		
 		labelProperties = getProperties(CONF.labelProperty);
 		if (labelProperties.isEmpty()) {
 			labelProperties.add(RDFS.label);
@@ -92,75 +91,220 @@ public class Configuration extends ResourceReader {
 			imageProperties.add(FOAF.depiction);
 		}
 
-		prefixes = new PrefixMappingImpl();
-		if (hasProperty(CONF.usePrefixesFrom)) {
-			for (String iri: getIRIs(CONF.usePrefixesFrom)) {
-				prefixes.setNsPrefixes(FileManager.get().loadModel(iri));
+		// Threads and connections created from here on must be released
+		// if the configuration turns out to be broken, because the
+		// servlet container won't call shutdown() on it
+		try {
+			// Shared by all datasets that use remote SPARQL endpoints
+			httpTransport = new HttpTransport(
+					getInt(CONF.httpMaxConnections, HttpTransport.DEFAULT_MAX_CONNECTIONS),
+					getInt(CONF.httpMaxConnectionsPerEndpoint, HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT),
+					getInt(CONF.httpConnectTimeout, HttpTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS),
+					getInt(CONF.httpReadTimeout, HttpTransport.DEFAULT_READ_TIMEOUT_MILLIS),
+					getInt(CONF.httpMaxRetries, HttpTransport.DEFAULT_MAX_RETRIES));
+			int sourceThreads = getInt(CONF.sourceThreads, 0);
+			sourceExecutor = sourceThreads > 0 ? createExecutor(sourceThreads, "pubby-source-") : null;
+			int requestThreads = getInt(CONF.requestThreads, 0);
+			requestExecutor = requestThreads > 0 ? createExecutor(requestThreads, "pubby-request-") : null;
+
+			// Create datasets from conf:dataset
+			for (Resource r: getResources(CONF.dataset)) {
+				Dataset ds = new Dataset(r, this);
+				datasets.add(ds);
+				allBrowsableNamespaces.addAll(ds.getBrowsableNamespaces());
+			}
+			allBrowsableNamespaces.add(getWebApplicationBaseURI() + getWebResourcePrefix());
+			allBrowsableNamespaces.addAll(getBrowsableNamespaces());
+			browsableNamespaceMatcher = new NamespaceMatcher(allBrowsableNamespaces);
+		
+			// Create datasets from conf:loadVocabularyFromURL
+			for (String sourceURL: getIRIs(CONF.loadVocabulary)) {
+				Model m = ModelFactory.createDefaultModel();
+				Resource dummyDataset = m.createResource();
+				dummyDataset.addProperty(CONF.loadRDF, m.createResource(sourceURL));
+				dummyDataset.addProperty(RDF.type, CONF.AnnotationProvider);
+				datasets.add(new Dataset(dummyDataset, this));
 			}
-		} else {
-			prefixes.setNsPrefixes(getModel());
-		}
-		if (prefixes.getNsURIPrefix(CONF.NS) != null) {
-			prefixes.removeNsPrefix(prefixes.getNsURIPrefix(CONF.NS));
-		}
-		// If no prefix is defined for the RDF and XSD namespaces, set them,
-		// unless that would overwrite something. This is the namespaces that
-		// have syntactic sugar in Turtle.
-		ModelUtil.addNSIfUndefined(prefixes, "rdf", RDF.getURI());
-		ModelUtil.addNSIfUndefined(prefixes, "xsd", XSD.getURI());
-		dataSource = buildDataSource();
 
-		// Vocabulary data source contains our normal data sources plus
-		// the configuration model, so that we can read labels etc from
-		// the configuration file
-		DataSource vocabularyDataSource = new MergeDataSource(
-				new ModelDataSource(getModel()), getDataSource());
-		vocabularyStore.setDataSource(vocabularyDataSource);
-		vocabularyStore.setDefaultLanguage(getDefaultLanguage());
+			prefixes = new PrefixMappingImpl();
+			if (hasProperty(CONF.usePrefixesFrom)) {
+				for (String iri: getIRIs(CONF.usePrefixesFrom)) {
+					prefixes.setNsPrefixes(FileManager.get().loadModel(iri));
+				}
+			} else {
+				prefixes.setNsPrefixes(getModel());
+			}
+			if (prefixes.getNsURIPrefix(CONF.NS) != null) {
+				prefixes.removeNsPrefix(prefixes.getNsURIPrefix(CONF.NS));
+			}
+			// If no prefix is defined for the RDF and XSD namespaces, set them,
+			// unless that would overwrite something. This is the namespaces that
+			// have syntactic sugar in Turtle.
+			ModelUtil.addNSIfUndefined(prefixes, "rdf", RDF.getURI());
+			ModelUtil.addNSIfUndefined(prefixes, "xsd", XSD.getURI());
+			prefixTrie = new PrefixTrie(prefixes);
+
+			// If all data has been loaded from files, then it doesn't change
+			// until the next restart, and we can use the load time as version
+			boolean isStatic = true;
+			for (Dataset dataset: datasets) {
+				if (!dataset.isFileBacked()) isStatic = false;
+			}
+			dataVersion = isStatic ? Long.toString(loadTime, 36) : null;
+			dataSource = buildDataSource(isStatic);
+
+			// Vocabulary data source contains our normal data sources plus
+			// the configuration model, so that we can read labels etc from
+			// the configuration file
+			DataSource vocabularyDataSource = new MergeDataSource(
+					new ModelDataSource(getModel(), labelProperties), getDataSource());
+			vocabularyStore.setDataSource(vocabularyDataSource);
+			vocabularyStore.setDefaultLanguage(getDefaultLanguage());
 
-		// Sanity check to spot typical configuration problem
-		if (dataSource.getIndex().isEmpty()) {
-			throw new ConfigurationException("The index is empty. " + 
-					"Try adding conf:datasetBase to your datasets, " + 
-					"check any conf:datasetURIPatterns, " + 
-					"and check that all data sources actually contain data.");
-		}
-		String resourceBase = getWebApplicationBaseURI() + getWebResourcePrefix();
-		if (hasProperty(CONF.indexResource)) {
-			indexIRI = getIRI(CONF.indexResource);
 			// Sanity check to spot typical configuration problem
-			if (dataSource.describeResource(indexIRI).isEmpty()) {
-				throw new ConfigurationException(
-						"conf:indexResource <" + indexIRI + 
-						"> not found in data sets. " + 
-						"Try disabling the conf:indexResource to get " +
-						"a list of found resources.");
+			if (dataSource.getIndex(1).isEmpty()) {
+				throw new ConfigurationException("The index is empty. " + 
+						"Try adding conf:datasetBase to your datasets, " + 
+						"check any conf:datasetURIPatterns, " + 
+						"and check that all data sources actually contain data.");
 			}
-		} else {
-			indexIRI = resourceBase;
+			String resourceBase = getWebApplicationBaseURI() + getWebResourcePrefix();
+			if (hasProperty(CONF.indexResource)) {
+				indexIRI = getIRI(CONF.indexResource);
+				// Sanity check to spot typical configuration problem
+				if (dataSource.describeResource(indexIRI).isEmpty()) {
+					throw new ConfigurationException(
+							"conf:indexResource <" + indexIRI + 
+							"> not found in data sets. " + 
+							"Try disabling the conf:indexResource to get " +
+							"a list of found resources.");
+				}
+			} else {
+				indexIRI = resourceBase;
+			}
+
+			// Static data is cheap to index, and keeps the index, because
+			// it must not change under a fixed data version. Otherwise the
+			// index is built in the background, so that it doesn't hold up
+			// the start of the web application, and it can be rebuilt
+			if (indexDataSource != null) {
+				if (isStatic) {
+					indexDataSource.refresh();
+				} else {
+					indexDataSource.startBackgroundRefresh(
+							getInt(CONF.indexRefreshInterval, 0));
+				}
+			}
+		} catch (RuntimeException ex) {
+			shutdown();
+			throw ex;
 		}
 	}
 
-	private DataSource buildDataSource() {
+	private DataSource buildDataSource(boolean isStatic) {
 		List<DataSource> sources = new ArrayList<DataSource>(datasets.size());
+		List<Set<String>> namespaces = new ArrayList<Set<String>>(datasets.size());
 		for (Dataset dataset: datasets) {
 			sources.add(dataset.getDataSource());
+			namespaces.add(dataset.getDescribableNamespaces());
+		}
+		MergeDataSource merged = new MergeDataSource(sources, prefixes, sourceExecutor,
+				getInt(CONF.sourceTimeout, 0), getBoolean(CONF.skipSlowSources, false));
+		merged.setSourceNamespaces(namespaces);
+		DataSource result = merged;
+		int cacheSize = getInt(CONF.cacheSize, 0);
+		if (cacheSize > 0) {
+			result = new CachingDataSource(result, cacheSize, 
+					getInt(CONF.cacheTTL, 0) * 1000L);
 		}
-		DataSource result = new MergeDataSource(sources, prefixes);
 		// If we don't have an indexResource, and there is no resource
 		// at the home URL in any of the datasets, then add an
 		// index builder. It will be responsible for handling the
-		// homepage/index resource.
+		// homepage/index resource. It keeps its pages in memory,
+		// so it goes outside of the cache.
 		// TODO: Shouldn't we make the index data source available even if there
 		//       is an indexResource?
 		String indexIRI = webBase + getWebResourcePrefix();
 		if (!hasProperty(CONF.indexResource) && 
 				result.describeResource(indexIRI).isEmpty()) {
-			result = new IndexDataSource(indexIRI, result);
+			indexDataSource = new IndexDataSource(indexIRI, result,
+					getInt(CONF.indexSize, isStatic
+							? IndexDataSource.DEFAULT_SIZE : IndexDataSource.DEFAULT_REMOTE_SIZE),
+					getInt(CONF.indexPageSize, IndexDataSource.DEFAULT_PAGE_SIZE));
+			result = indexDataSource;
 		}
 		return result;
 	}
 
+	/**
+	 * A fixed-size pool of daemon threads for querying datasets in
+	 * parallel, or for handling requests. The queue is bounded as well,
+	 * so a slow dataset can only tie up a limited number of threads and
+	 * queued requests.
+	 */
+	private static ExecutorService createExecutor(int threads, final String namePrefix) {
+		ThreadPoolExecutor result = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads * 4),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	/**
+	 * Releases threads and other resources held by the configuration.
+	 * Must be called when the web application is stopped.
+	 */
+	public void shutdown() {
+		if (indexDataSource != null) {
+			indexDataSource.shutdown();
+		}
+		if (requestExecutor != null) {
+			// Queued requests are cancelled, so that they can answer
+			// their clients instead of leaving the connections open
+			for (Runnable task: requestExecutor.shutdownNow()) {
+				if (task instanceof Future) {
+					((Future<?>) task).cancel(false);
+				}
+			}
+		}
+		if (sourceExecutor != null) {
+			sourceExecutor.shutdownNow();
+		}
+		if (httpTransport != null) {
+			httpTransport.shutdown();
+		}
+	}
+
+	/**
+	 * The HTTP client used for talking to remote SPARQL endpoints.
+	 */
+	public HttpTransport getHttpTransport() {
+		return httpTransport;
+	}
+
+	/**
+	 * Thread pool for querying data sources in parallel, or
+	 * <code>null</code> if disabled.
+	 */
+	public ExecutorService getSourceExecutor() {
+		return sourceExecutor;
+	}
+
+	/**
+	 * Thread pool for handling requests asynchronously, away from the
+	 * servlet container's threads, or <code>null</code> if disabled.
+	 */
+	public ExecutorService getRequestExecutor() {
+		return requestExecutor;
+	}
+
 	/**
 	 * A composite {@link DataSource} representing the merge of all datasets.
 	 */
@@ -168,6 +312,42 @@ public class Configuration extends ResourceReader {
 		return dataSource;
 	}
 
+	/**
+	 * A string that changes whenever the data served by Pubby may have
+	 * changed, or <code>null</code> if this can't be known because some
+	 * data comes from SPARQL endpoints.
+	 */
+	public String getDataVersion() {
+		return dataVersion;
+	}
+
+	/**
+	 * The time when the data was last modified, in milliseconds, or -1
+	 * if unknown (see {@link #getDataVersion()}).
+	 */
+	public long getDataLastModified() {
+		return dataVersion == null ? -1 : loadTime;
+	}
+
+	/**
+	 * Number of seconds that caches may keep the pages and documents
+	 * about a resource. This is the smallest <code>conf:cacheMaxAge</code>
+	 * of the datasets that may describe the resource, not counting
+	 * annotation providers. 0 means that caches have to revalidate.
+	 */
+	public int getCacheMaxAge(String absoluteIRI) {
+		int result = -1;
+		for (Dataset dataset: datasets) {
+			if (dataset.hasType(CONF.AnnotationProvider)) continue;
+			if (!dataset.getDataSource().canDescribe(absoluteIRI)) continue;
+			int maxAge = dataset.getCacheMaxAge();
+			if (result == -1 || maxAge < result) {
+				result = maxAge;
+			}
+		}
+		return Math.max(result, 0);
+	}
+
 	/**
 	 * The <code>conf:dataset</code> blocks.
 	 */
@@ -197,6 +377,13 @@ public class Configuration extends ResourceReader {
 		return prefixes;
 	}
 
+	/**
+	 * The same prefixes as {@link #getPrefixes()}, for fast lookup.
+	 */
+	public PrefixTrie getPrefixTrie() {
+		return prefixTrie;
+	}
+
 	public Collection<Property> getLabelProperties() {
 		return labelProperties;
 	}
@@ -241,6 +428,13 @@ public class Configuration extends ResourceReader {
 		return getBoolean(CONF.showLabels, true);
 	}
 
+	/**
+	 * Use the slower, more readable RDF writers for RDF documents?
+	 */
+	public boolean prettyPrintRDF() {
+		return getBoolean(CONF.prettyPrintRDF, false);
+	}
+
 	public VocabularyStore getVocabularyStore() {
 		return vocabularyStore;
 	}
@@ -257,9 +451,6 @@ public class Configuration extends ResourceReader {
 	}
 	
 	public boolean isBrowsable(String iri) {
-		for (String namespace: allBrowsableNamespaces) {
-			if (iri.startsWith(namespace)) return true;
-		}
-		return false;
+		return browsableNamespaceMatcher.matchesAny(iri);
 	}
 }
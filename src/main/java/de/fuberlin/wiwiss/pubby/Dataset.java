@@ -1,15 +1,26 @@
 package de.fuberlin.wiwiss.pubby;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.n3.IRIResolver;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.util.FileManager;
+import com.hp.hpl.jena.util.FileUtils;
 
 import de.fuberlin.wiwiss.pubby.sources.DataSource;
 import de.fuberlin.wiwiss.pubby.sources.FilteredDataSource;
@@ -24,14 +35,12 @@ import de.fuberlin.wiwiss.pubby.vocab.CONF;
 public class Dataset extends ResourceReader {
 	private final DataSource dataSource;
 	private final MetadataConfiguration metadata;
-	
-	// TODO: This is a rather dirty hack. We may need DataSource.getProvenance() or something
-	private RemoteSPARQLDataSource sparqlDataSource = null;
+	private Set<String> describableNamespaces = null;
 	
 	public Dataset(Resource dataset, Configuration configuration) {
 		super(dataset);
 		dataSource = buildDataSource(configuration);
-		metadata = new MetadataConfiguration(dataset, sparqlDataSource);
+		metadata = new MetadataConfiguration(dataset);
 	}
 
 	public DataSource getDataSource() {
@@ -54,6 +63,33 @@ public class Dataset extends ResourceReader {
 		return getBoolean(CONF.supportsSPARQL11, false);
 	}
 
+	/**
+	 * Is the data loaded from files (<code>conf:loadRDF</code>)?
+	 * Then it is static while Pubby is running.
+	 */
+	public boolean isFileBacked() {
+		return hasProperty(CONF.loadRDF);
+	}
+
+	/**
+	 * Number of seconds that caches may keep responses with data
+	 * from this dataset; 0 means they must revalidate.
+	 */
+	public int getCacheMaxAge() {
+		return getInt(CONF.cacheMaxAge, 0);
+	}
+
+	/**
+	 * The namespaces that all IRIs described by this dataset's data source
+	 * start with.
+	 * 
+	 * @return Namespace IRIs, or <code>null</code> if the data source is
+	 * 		not limited to any namespaces (annotation providers)
+	 */
+	public Set<String> getDescribableNamespaces() {
+		return describableNamespaces;
+	}
+
 	/**
 	 * Gets all values of <tt>conf:browsableNamespace</tt> declared on the
 	 * dataset resource. Does not include values inherited from the
@@ -75,7 +111,8 @@ public class Dataset extends ResourceReader {
 			// SPARQL data source
 			String endpointURL = getIRI(CONF.sparqlEndpoint);
 			String defaultGraphURI = getIRI(CONF.sparqlDefaultGraph);
-			sparqlDataSource = new RemoteSPARQLDataSource(
+			RemoteSPARQLDataSource sparqlDataSource = new RemoteSPARQLDataSource(
+					configuration.getHttpTransport(),
 					endpointURL,
 					defaultGraphURI,
 					supportsSPARQL11(),
@@ -86,6 +123,8 @@ public class Dataset extends ResourceReader {
 					getStrings(CONF.anonymousInversePropertyDescriptionQuery),
 					configuration.getVocabularyStore().getHighIndegreeProperties(),
 					configuration.getVocabularyStore().getHighOutdegreeProperties());
+			sparqlDataSource.setCombineQueries(getBoolean(CONF.combineQueries, true));
+			sparqlDataSource.setExecutor(configuration.getSourceExecutor());
 			if (hasProperty(CONF.contentType)) {
 				sparqlDataSource.setGraphContentType(getString(CONF.contentType));
 			}
@@ -100,31 +139,19 @@ public class Dataset extends ResourceReader {
 		} else {
 			
 			// File data source
-			Model data = ModelFactory.createDefaultModel();
-			for (String fileName: getIRIs(CONF.loadRDF)) {
-				// If the location is a local file, then use webBase as base URI
-				// to resolve relative URIs in the file. Having file:/// URIs in
-				// there would likely not be useful to anyone.
-				fileName = IRIResolver.resolveGlobal(fileName);
-				String base = (fileName.startsWith("file:/") ? 
-						configuration.getWebApplicationBaseURI() : fileName);
-
-				try {
-					Model m = FileManager.get().loadModel(fileName, base, null);
-					data.add(m);
-				
-					// We'd like to do simply data.setNsPrefix(m), but that leaves relative
-					// namespace URIs like <#> unresolved, so we do a big dance to make them
-					// absolute.
-					for (String prefix: m.getNsPrefixMap().keySet()) {
-						String uri = IRIResolver.resolve(m.getNsPrefixMap().get(prefix), base);
-						data.setNsPrefix(prefix, uri);
-					}
-				} catch (JenaException ex) {
-					throw new ConfigurationException("Error reading <" + fileName + ">: " + ex.getMessage());
-				}
+			String storage = getString(CONF.storage, "memory");
+			Model data;
+			if ("memory".equals(storage)) {
+				data = loadModel(configuration);
+			} else if ("compact".equals(storage)) {
+				data = ModelFactory.createModelForGraph(loadCompactGraph(configuration));
+			} else if ("snapshot".equals(storage)) {
+				data = ModelFactory.createModelForGraph(loadSnapshotGraph(configuration));
+			} else {
+				throw new ConfigurationException("Unknown conf:storage \"" + storage +
+						"\", must be \"memory\", \"compact\" or \"snapshot\"");
 			}
-			result = new ModelDataSource(data);
+			result = new ModelDataSource(data, configuration.getLabelProperties());
 		}
 
 		// If conf:datasetURIPattern is set, then filter the dataset accordingly.
@@ -159,7 +186,7 @@ public class Dataset extends ResourceReader {
 				result, rewriter, addSameAsStatements());
 
 		// Determine all browsable namespaces for this dataset
-		final Set<String> browsableNamespaces = new HashSet<String>();
+		Set<String> browsableNamespaces = new HashSet<String>();
 		browsableNamespaces.add(fullWebBase);
 		for (String iri: getBrowsableNamespaces()) {
 			browsableNamespaces.add(iri);
@@ -169,17 +196,111 @@ public class Dataset extends ResourceReader {
 		// Filter the dataset to keep only those resources in the datasetBase
 		// and in browsable namespaces, unless it's an annotation provider
 		if (!hasType(CONF.AnnotationProvider)) {
+			describableNamespaces = Collections.unmodifiableSet(browsableNamespaces);
+			final NamespaceMatcher matcher = new NamespaceMatcher(browsableNamespaces);
 			result = new FilteredDataSource(result) {
 				@Override
 				public boolean canDescribe(String absoluteIRI) {
-					for (String namespace: browsableNamespaces) {
-						if (absoluteIRI.startsWith(namespace)) return true;
-					}
-					return false;
+					return matcher.matchesAny(absoluteIRI);
 				}
 			};
 		}
 		
 		return result;
 	}
+
+	/**
+	 * Loads the <tt>conf:loadRDF</tt> files into a default in-memory model.
+	 */
+	private Model loadModel(Configuration configuration) {
+		Model data = null;
+		for (String fileName: getIRIs(CONF.loadRDF)) {
+			fileName = IRIResolver.resolveGlobal(fileName);
+			String base = getBaseForFile(fileName, configuration);
+			try {
+				Model m = FileManager.get().loadModel(fileName, base, null);
+				if (data == null) {
+					// Use the first model as is instead of copying it
+					data = m;
+				} else {
+					data.add(m);
+				}
+			
+				// We'd like to do simply data.setNsPrefix(m), but that leaves relative
+				// namespace URIs like <#> unresolved, so we do a big dance to make them
+				// absolute.
+				for (String prefix: m.getNsPrefixMap().keySet()) {
+					String uri = IRIResolver.resolve(m.getNsPrefixMap().get(prefix), base);
+					data.setNsPrefix(prefix, uri);
+				}
+			} catch (JenaException ex) {
+				throw new ConfigurationException("Error reading <" + fileName + ">: " + ex.getMessage());
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Streams the <tt>conf:loadRDF</tt> files into a {@link CompactGraph},
+	 * without building an intermediate model.
+	 */
+	private CompactGraph loadCompactGraph(Configuration configuration) {
+		final CompactGraph.Builder builder = new CompactGraph.Builder();
+		for (String fileName: getIRIs(CONF.loadRDF)) {
+			fileName = IRIResolver.resolveGlobal(fileName);
+			final String base = getBaseForFile(fileName, configuration);
+			try {
+				RDFDataMgr.parse(new StreamRDFBase() {
+					@Override
+					public void triple(Triple triple) {
+						builder.add(triple);
+					}
+					@Override
+					public void prefix(String prefix, String iri) {
+						builder.setNsPrefix(prefix, IRIResolver.resolve(iri, base));
+					}
+				}, fileName, base, (Lang) null, (Context) null);
+			} catch (JenaException ex) {
+				throw new ConfigurationException("Error reading <" + fileName + ">: " + ex.getMessage());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Maps a snapshot of the <tt>conf:loadRDF</tt> files into memory.
+	 * If there is no snapshot, or a source file has changed since it
+	 * was written, then the files are parsed and a new snapshot is
+	 * written next to the first file.
+	 */
+	private CompactGraph loadSnapshotGraph(Configuration configuration) {
+		List<File> files = new ArrayList<File>();
+		for (String fileName: getIRIs(CONF.loadRDF)) {
+			fileName = IRIResolver.resolveGlobal(fileName);
+			if (!fileName.startsWith("file:")) {
+				throw new ConfigurationException("conf:storage \"snapshot\" requires " +
+						"local files in conf:loadRDF, but found <" + fileName + ">");
+			}
+			files.add(new File(FileUtils.toFilename(fileName)));
+		}
+		GraphSnapshot snapshot = new GraphSnapshot(
+				new File(files.get(0).getPath() + ".snapshot"), files,
+				configuration.getWebApplicationBaseURI());
+		CompactGraph result = snapshot.load();
+		if (result == null) {
+			result = loadCompactGraph(configuration);
+			snapshot.save(result);
+		}
+		return result;
+	}
+
+	/**
+	 * If the location is a local file, then use webBase as base URI
+	 * to resolve relative URIs in the file. Having file:/// URIs in
+	 * there would likely not be useful to anyone.
+	 */
+	private String getBaseForFile(String fileName, Configuration configuration) {
+		return fileName.startsWith("file:/") ? 
+				configuration.getWebApplicationBaseURI() : fileName;
+	}
 }
@@ -0,0 +1,193 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary snapshot of a {@link CompactGraph} that was built from some
+ * local source files. The snapshot is mapped into memory when loaded,
+ * which is much faster than parsing the sources again.
+ *
+ * The snapshot records the size, modification time and SHA-1 hash of
+ * each source file, and the base IRI used for parsing. It is only
+ * loaded if these still match. A source file whose modification time
+ * has changed, but not its contents, is detected by its hash.
+ */
+public class GraphSnapshot {
+	private final static Logger log = LoggerFactory.getLogger(GraphSnapshot.class);
+	private final static String MAGIC = "Pubby graph snapshot";
+	private final static int VERSION = 1;
+
+	private final File file;
+	private final String base;
+	private final List<Source> sources = new ArrayList<Source>();
+
+	/**
+	 * The sizes and modification times of the source files are taken
+	 * when the instance is created, so it should be created before the
+	 * sources are parsed.
+	 */
+	public GraphSnapshot(File file, List<File> sourceFiles, String base) {
+		this.file = file;
+		this.base = base;
+		for (File sourceFile: sourceFiles) {
+			sources.add(new Source(sourceFile.getAbsolutePath(),
+					sourceFile.length(), sourceFile.lastModified()));
+		}
+	}
+
+	/**
+	 * @return The graph from the snapshot file, or <code>null</code> if
+	 * 		there is no snapshot, or if it is stale or unreadable
+	 */
+	public CompactGraph load() {
+		if (!file.exists()) return null;
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = in.getChannel();
+				if (!isCurrent(CompactGraph.readBlock(channel))) {
+					log.info("Snapshot " + file + " is out of date");
+					return null;
+				}
+				CompactGraph result = CompactGraph.map(channel);
+				log.info("Loaded " + result.size() + " triples from snapshot " + file);
+				return result;
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			log.warn("Ignoring unreadable snapshot " + file + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a graph to the snapshot file. The file is written under a
+	 * temporary name first, so that a partially written snapshot is
+	 * never loaded. Failure to write is logged but otherwise ignored.
+	 */
+	public void save(CompactGraph graph) {
+		File temp = null;
+		try {
+			temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			RandomAccessFile out = new RandomAccessFile(temp, "rw");
+			try {
+				FileChannel channel = out.getChannel();
+				CompactGraph.writeBlock(channel, createHeader());
+				graph.write(channel);
+				channel.force(false);
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Cannot replace existing file");
+			}
+			if (!temp.renameTo(file)) {
+				throw new IOException("Cannot rename " + temp);
+			}
+			temp = null;
+			log.info("Wrote snapshot " + file);
+		} catch (IOException ex) {
+			log.warn("Could not write snapshot " + file + ": " + ex.getMessage());
+		} finally {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	private byte[] createHeader() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeUTF(MAGIC);
+		header.writeInt(VERSION);
+		header.writeUTF(base);
+		header.writeInt(sources.size());
+		for (Source source: sources) {
+			header.writeUTF(source.path);
+			header.writeLong(source.size);
+			header.writeLong(source.lastModified);
+			header.write(source.getHash());
+		}
+		header.flush();
+		return bytes.toByteArray();
+	}
+
+	private boolean isCurrent(byte[] headerBytes) throws IOException {
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+		if (!MAGIC.equals(header.readUTF())) {
+			throw new IOException("Not a snapshot file");
+		}
+		if (header.readInt() != VERSION) return false;
+		if (!base.equals(header.readUTF())) return false;
+		if (header.readInt() != sources.size()) return false;
+		for (Source source: sources) {
+			String path = header.readUTF();
+			long size = header.readLong();
+			long lastModified = header.readLong();
+			byte[] hash = new byte[20];
+			header.readFully(hash);
+			if (!source.path.equals(path) || source.size != size) return false;
+			if (source.lastModified == lastModified) continue;
+			// Touched or copied, but possibly unchanged
+			if (!Arrays.equals(source.getHash(), hash)) return false;
+		}
+		return true;
+	}
+
+	private static class Source {
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private byte[] hash = null;
+
+		Source(String path, long size, long lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @return The SHA-1 hash of the file, computed on first use
+		 */
+		byte[] getHash() throws IOException {
+			if (hash != null) return hash;
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException ex) {
+				// Every Java platform is required to support SHA-1
+				throw new RuntimeException(ex);
+			}
+			InputStream in = new FileInputStream(path);
+			try {
+				byte[] buffer = new byte[1 << 16];
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+			hash = digest.digest();
+			return hash;
+		}
+	}
+}
@@ -3,10 +3,10 @@ package de.fuberlin.wiwiss.pubby;
 import java.net.URI;
 import java.net.URISyntaxException;
 
-import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
 
 import de.fuberlin.wiwiss.pubby.sources.DataSource;
+import de.fuberlin.wiwiss.pubby.sources.DescriptionResult;
 
 /**
  * The hypermedia interface to a specific resource. The resource may be
@@ -111,12 +111,9 @@ public class HypermediaControls {
 	 */
 	public ResourceDescription getResourceDescription() {
 		DataSource source = config.getDataSource();
-		Model model = source.describeResource(absoluteIRI);
-		if (model.isEmpty()) return null;
-		return new ResourceDescription(this, model, 
-				source.getHighIndegreeProperties(absoluteIRI), 
-				source.getHighOutdegreeProperties(absoluteIRI), 
-				config);
+		DescriptionResult description = source.getDescription(absoluteIRI);
+		if (description.isEmpty()) return null;
+		return new ResourceDescription(this, description, config);
 	}
 	
 	/**
@@ -151,14 +148,14 @@ public class HypermediaControls {
 	}
 	
 	private String getPathURL(String urlPrefix, Property property) {
-		if (config.getPrefixes().qnameFor(property.getURI()) == null) {
+		String qname = config.getPrefixTrie().qnameFor(property.getURI());
+		if (qname == null) {
 			String encoded = PubbyIRIEscaper.escapeSpecialCharacters(property.getURI());
 			return config.getWebApplicationBaseURI() + urlPrefix +
 					"!" + encoded + "///" +
 					getPubbyPath();
 		}
 		return config.getWebApplicationBaseURI() + urlPrefix +
-				config.getPrefixes().qnameFor(property.getURI()) + "/" +
-				getPubbyPath();
+				qname + "/" + getPubbyPath();
 	}
 }
@@ -1,14 +1,10 @@
 package de.fuberlin.wiwiss.pubby;
 
-import java.io.UnsupportedEncodingException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Implements the IRI-to-URI and URI-to-IRI conversions defined in
- * RFC 3987.
+ * RFC 3987. Both conversions work in a single pass over the string,
+ * and return the input itself if there is nothing to convert.
  * 
- * TODO: This really needs some unit tests
  * TODO: Make this an IRIRewriter?
  */
 public class IRIEncoder {
@@ -18,107 +14,129 @@ public class IRIEncoder {
 	 * of UTF-8 sequences.
 	 */
 	public static String toIRI(String uri) {
-		StringBuffer decoded = new StringBuffer();
-		Matcher matcher = percentEncoding.matcher(uri);
-		while (matcher.find()) {
-			matcher.appendReplacement(decoded, decode(matcher.group()));
-		}
-		matcher.appendTail(decoded);
-		return decoded.toString();
-	}
-	private static final Pattern percentEncoding = Pattern.compile("(%[0-9a-fA-F][0-9a-fA-F])+");
-	
-	/**
-	 * Converts an IRI to a URI by percent-encoding characters outside of
-	 * the US-ASCII range.
-	 */
-	public static String toURI(String iri) {
-		try {
-			StringBuffer encoded = new StringBuffer();
-			for (int i = 0; i < iri.length(); i++) {
-				if ((int) iri.charAt(i) <= 128) {
-					encoded.append(iri.charAt(i));
-					continue;
-				}
-				for (byte b: iri.substring(i, i + 1).getBytes("utf-8")) {
-					appendOctet(encoded, b);
-				}
+		int i = uri.indexOf('%');
+		if (i == -1) return uri;
+		int length = uri.length();
+		StringBuilder decoded = new StringBuilder(length);
+		decoded.append(uri, 0, i);
+		while (i < length) {
+			int octet = getOctet(uri, i);
+			if (octet == -1) {
+				decoded.append(uri.charAt(i));
+				i++;
+				continue;
 			}
-			return encoded.toString();
-		} catch (UnsupportedEncodingException ex) {
-			// Can't happen
-			return iri;
-		}
-	}
-	private static char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
-	
-	private static String decode(String percentEncoded) {
-		StringBuffer decoded = new StringBuffer();
-		int[] octets = toBytes(percentEncoded);
-		int i = 0;
-		while (i < octets.length) {
-			if (octets[i] <= 0x7F) {
+			if (octet <= 0x7F) {
 				// US-ASCII character. Decode, except if it's one of
 				// %, reserved, or not allowed in IRIs. In that case, re-encode.
-				if (isUnreservedASCII((char) octets[i])) {
-					decoded.append((char) octets[i]);
+				if (isUnreservedASCII((char) octet)) {
+					decoded.append((char) octet);
 				} else {
 					// FIXME: Strictly speaking, the spec says that the original
 					// percent-encoding remains unchanged, meaning lower-case
 					// hex digits would remain lower-case. We upper-case them
 					// here by re-encoding.
-					appendOctet(decoded, (byte) octets[i]);
+					appendOctet(decoded, octet);
 				}
-				i++;
-				continue;
-			}
-			if (isContinuationOctet(octets[i])) {
-				appendOctet(decoded, (byte) octets[i]);
-				i++;
-				continue;
-			}
-			int bytesInSequence = getBytesInSequence(octets[i]);
-			if (i + bytesInSequence > octets.length) {
-				// Not enough continuation bytes to complete the character.
-				// Re-encode one byte, then let the main loop eat the rest.
-				appendOctet(decoded, (byte) octets[i]);
-				i++;
+				i += 3;
 				continue;
 			}
-			// Next, check if the next n bytes are all continuation bytes.
-			boolean enoughContinuationBytes = true;
-			for (int j = 1; j < bytesInSequence; j++) {
-				if (!isContinuationOctet(octets[i + j])) {
-					// Nope
-					enoughContinuationBytes = false;
-					break;
-				}
-			}
-			if (!enoughContinuationBytes) {
+			int bytesInSequence = getBytesInSequence(octet);
+			int codePoint = decodeSequence(uri, i, bytesInSequence);
+			if (codePoint == -1) {
+				// Continuation octet, incomplete or invalid UTF-8 sequence.
 				// Re-encode one byte, and let the main loop eat the rest.
-				appendOctet(decoded, (byte) octets[i]);
-				i++;
+				appendOctet(decoded, octet);
+				i += 3;
 				continue;
 			}
-			// UTF-8 encoding looks fine. Decode to one character.
-
 			// FIXME: RFC 3987 says here:
 			//   4. Re-percent-encode all octets produced in step 3 that in UTF-8
 			//      represent characters that are not appropriate according to
 			//      sections 2.2, 4.1, and 6.1.
 			// This is about weird unicode characters that are inappropriate
 			// in IRIs for various reasons. We ignore this currently.
-			decoded.append(toCharacter(octets, i, bytesInSequence));
-			i += bytesInSequence;
+			decoded.appendCodePoint(codePoint);
+			i += bytesInSequence * 3;
 		}
 		return decoded.toString();
 	}
 
+	/**
+	 * Converts an IRI to a URI by percent-encoding characters outside of
+	 * the US-ASCII range.
+	 */
+	public static String toURI(String iri) {
+		int length = iri.length();
+		int i = 0;
+		while (i < length && iri.charAt(i) <= 0x7F) {
+			i++;
+		}
+		if (i == length) return iri;
+		StringBuilder encoded = new StringBuilder(length + 16);
+		encoded.append(iri, 0, i);
+		for (; i < length; i++) {
+			char c = iri.charAt(i);
+			if (c <= 0x7F) {
+				encoded.append(c);
+				continue;
+			}
+			int codePoint = c;
+			if (Character.isHighSurrogate(c) && i + 1 < length && 
+					Character.isLowSurrogate(iri.charAt(i + 1))) {
+				codePoint = Character.toCodePoint(c, iri.charAt(i + 1));
+				i++;
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				// Unpaired surrogate, can't be encoded in UTF-8
+				codePoint = 0xFFFD;
+			}
+			appendUTF8(encoded, codePoint);
+		}
+		return encoded.toString();
+	}
+	private static char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+	private static void appendUTF8(StringBuilder sb, int codePoint) {
+		if (codePoint < 0x800) {
+			appendOctet(sb, 0xC0 | (codePoint >> 6));
+		} else if (codePoint < 0x10000) {
+			appendOctet(sb, 0xE0 | (codePoint >> 12));
+			appendOctet(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+		} else {
+			appendOctet(sb, 0xF0 | (codePoint >> 18));
+			appendOctet(sb, 0x80 | ((codePoint >> 12) & 0x3F));
+			appendOctet(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+		}
+		appendOctet(sb, 0x80 | (codePoint & 0x3F));
+	}
+
+	/**
+	 * Decodes a percent-encoded UTF-8 sequence of the given length.
+	 * 
+	 * @return The code point, or -1 if the sequence is incomplete or
+	 * 		not valid UTF-8
+	 */
+	private static int decodeSequence(String s, int offset, int bytesInSequence) {
+		if (bytesInSequence < 2 || bytesInSequence > 4) return -1;
+		int codePoint = getOctet(s, offset) & (0xFF >> (bytesInSequence + 1));
+		for (int j = 1; j < bytesInSequence; j++) {
+			int octet = getOctet(s, offset + j * 3);
+			if (octet == -1 || !isContinuationOctet(octet)) return -1;
+			codePoint = (codePoint << 6) | (octet & 0x3F);
+		}
+		// Reject overlong encodings, surrogates, and values beyond Unicode
+		if (codePoint < MIN_CODE_POINT[bytesInSequence]) return -1;
+		if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) return -1;
+		if (codePoint > Character.MAX_CODE_POINT) return -1;
+		return codePoint;
+	}
+	private static final int[] MIN_CODE_POINT = {0, 0, 0x80, 0x800, 0x10000};
+
 	private static boolean isContinuationOctet(int octet) {
 		return (octet & 0xC0) == 0x80;
 	}
 	
-	private static void appendOctet(StringBuffer sb, byte octet) {
+	private static void appendOctet(StringBuilder sb, int octet) {
 		sb.append('%');
 		sb.append(hexDigits[(octet >> 4) & 0x0F]);
 		sb.append(hexDigits[octet & 0x0F]);
@@ -136,39 +154,25 @@ public class IRIEncoder {
 		return 0;	// Shouldn't happen
 	}
 	
-	private static char toCharacter(int[] octets, int offset, int length) {
-		byte[] bytes = new byte[length];
-		for (int i = 0; i < length; i++) {
-			bytes[i] = (byte) octets[offset + i];
-		}
-		try {
-			return new String(bytes, "utf-8").charAt(0);
-		} catch (UnsupportedEncodingException ex) {
-			// Can't happen
-			throw new RuntimeException(ex);
-		}
-	}
-	
 	private static boolean isUnreservedASCII(char c) {
 		// unreserved = ALPHA / DIGIT / "-" / "." / "_" / "~"
 		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
 				(c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
 	}
-	
-	private static int[] toBytes(String percentEncoded) {
-		int length = percentEncoded.length() / 3;
-		int[] result = new int[length];
-		for (int i = 0; i < length; i++) {
-			result[i] = toByte(percentEncoded.charAt(i * 3 + 1), percentEncoded.charAt(i * 3 + 2));
-		}
-		return result;
-	}
-	
-	private static int toByte(char hex1, char hex2) {
-		return (toByte(hex1) << 4) | toByte(hex2);
+
+	/**
+	 * @return The value of the percent-encoded octet at the offset,
+	 * 		or -1 if there is none
+	 */
+	private static int getOctet(String s, int offset) {
+		if (offset + 2 >= s.length() || s.charAt(offset) != '%') return -1;
+		int high = toHexValue(s.charAt(offset + 1));
+		int low = toHexValue(s.charAt(offset + 2));
+		if (high == -1 || low == -1) return -1;
+		return (high << 4) | low;
 	}
 	
-	private static int toByte(char hex) {
+	private static int toHexValue(char hex) {
 		if (hex >= '0' && hex <= '9') {
 			return hex - '0';
 		}
@@ -178,6 +182,6 @@ public class IRIEncoder {
 		if (hex >= 'A' && hex <= 'F') {
 			return hex - 'A' + 10;
 		}
-		throw new IllegalArgumentException("Not a hex digit: " + hex);
+		return -1;
 	}
 }
@@ -3,14 +3,14 @@ package de.fuberlin.wiwiss.pubby;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
-import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
 /**
  * Rewrites IRI in an 1:1 fashion. For any syntactically valid IRI
@@ -21,6 +21,11 @@ import com.hp.hpl.jena.rdf.model.StmtIterator;
  *   <li><code>unrewrite(rewrite(x)).equals(x)</code></li>
  *   <li><code>rewrite(unrewrite(x)).equals(x)</code></li>
  * </ul>
+ * 
+ * Whether an IRI can be rewritten or unrewritten can be checked without
+ * exceptions using {@link #isRewritten(String)}, {@link #isOriginal(String)}
+ * and {@link #tryUnrewrite(String)}. Subclasses should override these if
+ * the default implementation, which catches the exception, is too slow.
  */
 public abstract class IRIRewriter {
 
@@ -38,6 +43,22 @@ public abstract class IRIRewriter {
 			return absoluteIRI;
 		}
 		@Override
+		public boolean mayRewrite(String absoluteIRI) {
+			return false;
+		}
+		@Override
+		public String tryUnrewrite(String absoluteIRI) {
+			return absoluteIRI;
+		}
+		@Override
+		public boolean isOriginal(String absoluteIRI) {
+			return false;
+		}
+		@Override
+		public boolean isRewritten(String absoluteIRI) {
+			return false;
+		}
+		@Override
 		public Property rewrite(Property original) {
 			return original;
 		}
@@ -78,6 +99,52 @@ public abstract class IRIRewriter {
 	 */
 	public abstract String unrewrite(String absoluteIRI);
 
+	/**
+	 * Checks cheaply whether an IRI may be changed by rewriting. If this
+	 * returns <code>false</code>, then {@link #rewrite(String)} returns the
+	 * IRI unchanged. The default implementation always returns
+	 * <code>true</code>.
+	 */
+	public boolean mayRewrite(String absoluteIRI) {
+		return true;
+	}
+
+	/**
+	 * Unrewrites an IRI if possible.
+	 * 
+	 * @param absoluteIRI Any absolute IRI
+	 * @return The original form of the IRI, or <code>null</code> if the
+	 * 		IRI is already in original form and cannot be unrewritten
+	 */
+	public String tryUnrewrite(String absoluteIRI) {
+		try {
+			return unrewrite(absoluteIRI);
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the IRI is in original form and
+	 * 		{@link #unrewrite(String)} would reject it
+	 */
+	public boolean isOriginal(String absoluteIRI) {
+		return tryUnrewrite(absoluteIRI) == null;
+	}
+
+	/**
+	 * @return <code>true</code> if the IRI is in rewritten form and
+	 * 		{@link #rewrite(String)} would reject it
+	 */
+	public boolean isRewritten(String absoluteIRI) {
+		try {
+			rewrite(absoluteIRI);
+			return false;
+		} catch (IllegalArgumentException ex) {
+			return true;
+		}
+	}
+
 	public Property rewrite(Property original) {
 		String rewritten = rewrite(original.getURI());
 		if (rewritten.equals(original.getURI())) {
@@ -111,36 +178,49 @@ public abstract class IRIRewriter {
 	}
 	
 	/**
-	 * Rewrites the RDF graph in a Jena model by returning a new in-memory
-	 * model that contains all statements from the original with any IRIs
-	 * rewritten. It rewrites IRIs in subject, predicate, and object position.
-	 * Also rewrites the namespace prefix mappings, if any are present.
+	 * Rewrites the RDF graph in a Jena model. It rewrites IRIs in subject,
+	 * predicate, and object position. Also rewrites the namespace prefix
+	 * mappings, if any are present.
+	 * 
+	 * If no IRI in the model is affected by the rewriter, then the original
+	 * model itself is returned. Otherwise, the result is a
+	 * {@link RewrittenGraph} view that rewrites IRIs lazily, without copying
+	 * the original. Adding statements to the view does not modify the
+	 * original.
 	 * 
 	 * @param original An RDF graph in Jena model form
 	 * @return Rewritten version of the graph
 	 */
 	public Model rewrite(Model original) {
-		Model result = ModelFactory.createDefaultModel();
+		if (!mayRewrite(original)) return original;
+		Model result = ModelFactory.createModelForGraph(
+				new RewrittenGraph(original.getGraph(), this));
 		for (String prefix: original.getNsPrefixMap().keySet()) {
 			String uri = original.getNsPrefixURI(prefix);
 			result.setNsPrefix(prefix, rewrite(uri));
 		}
-		StmtIterator it = original.listStatements();
-		while (it.hasNext()) {
-			Statement stmt = it.nextStatement();
-			Resource s = stmt.getSubject();
-			if (s.isURIResource()) {
-				s = result.createResource(rewrite(s.getURI()));
-			}
-			Property p = result.createProperty(
-					rewrite(stmt.getPredicate().getURI()));
-			RDFNode o = stmt.getObject();
-			if (o.isURIResource()) {
-				o = result.createResource(rewrite(o.asResource().getURI()));
+		return result;
+	}
+
+	private boolean mayRewrite(Model model) {
+		for (String uri: model.getNsPrefixMap().values()) {
+			if (mayRewrite(uri)) return true;
+		}
+		ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+		try {
+			while (it.hasNext()) {
+				Triple t = it.next();
+				if (mayRewrite(t.getSubject()) || mayRewrite(t.getPredicate()) ||
+						mayRewrite(t.getObject())) return true;
 			}
-			result.add(s, p, o);
+		} finally {
+			it.close();
 		}
-		return result;
+		return false;
+	}
+
+	private boolean mayRewrite(Node node) {
+		return node.isURI() && mayRewrite(node.getURI());
 	}
 
 	public Map<Property, Integer> rewrite(Map<Property, Integer> original) {
@@ -204,6 +284,26 @@ public abstract class IRIRewriter {
 				}
 				return absoluteIRI;
 			}
+			@Override
+			public boolean mayRewrite(String absoluteIRI) {
+				// IRIs in the rewritten namespace are included so that
+				// rewrite(String) can reject them
+				return absoluteIRI.startsWith(originalNamespace) ||
+						absoluteIRI.startsWith(rewrittenNamespace);
+			}
+			@Override
+			public String tryUnrewrite(String absoluteIRI) {
+				if (absoluteIRI.startsWith(originalNamespace)) return null;
+				return unrewrite(absoluteIRI);
+			}
+			@Override
+			public boolean isOriginal(String absoluteIRI) {
+				return absoluteIRI.startsWith(originalNamespace);
+			}
+			@Override
+			public boolean isRewritten(String absoluteIRI) {
+				return absoluteIRI.startsWith(rewrittenNamespace);
+			}
 		};
 	}
 
@@ -223,6 +323,27 @@ public abstract class IRIRewriter {
 			public String unrewrite(String absoluteIRI) {
 				return rewriter1.unrewrite(rewriter2.unrewrite(absoluteIRI));
 			}
+			@Override
+			public boolean mayRewrite(String absoluteIRI) {
+				// If the first doesn't change the IRI, the second gets it as is
+				return rewriter1.mayRewrite(absoluteIRI) || 
+						rewriter2.mayRewrite(absoluteIRI);
+			}
+			@Override
+			public String tryUnrewrite(String absoluteIRI) {
+				String intermediate = rewriter2.tryUnrewrite(absoluteIRI);
+				if (intermediate == null) return null;
+				return rewriter1.tryUnrewrite(intermediate);
+			}
+			@Override
+			public boolean isOriginal(String absoluteIRI) {
+				return tryUnrewrite(absoluteIRI) == null;
+			}
+			@Override
+			public boolean isRewritten(String absoluteIRI) {
+				if (rewriter1.isRewritten(absoluteIRI)) return true;
+				return rewriter2.isRewritten(rewriter1.rewrite(absoluteIRI));
+			}
 		};
 	}
 }
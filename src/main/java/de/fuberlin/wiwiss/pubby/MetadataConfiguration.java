@@ -1,7 +1,12 @@
 package de.fuberlin.wiwiss.pubby;
 
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 
 import com.hp.hpl.jena.rdf.model.AnonId;
@@ -14,7 +19,7 @@ import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
 import com.hp.hpl.jena.util.FileManager;
 
-import de.fuberlin.wiwiss.pubby.sources.RemoteSPARQLDataSource;
+import de.fuberlin.wiwiss.pubby.sources.QueryRecord;
 import de.fuberlin.wiwiss.pubby.vocab.CONF;
 import de.fuberlin.wiwiss.pubby.vocab.META;
 
@@ -23,18 +28,14 @@ public class MetadataConfiguration extends ResourceReader {
 
 	private final Resource customTemplate;
 	private final String metadataTemplate;
-	private final RemoteSPARQLDataSource sparqlDataSource;
+	private final String sparqlEndpoint;
+	private volatile CompiledTemplate compiledTemplate = null;
 	
 	public MetadataConfiguration(Resource dataset) {
-		this(dataset, null);
-	}
-	
-	public MetadataConfiguration(Resource dataset, 
-			RemoteSPARQLDataSource sparqlDataSource) {
 		super(dataset);
 		this.customTemplate = getResource(CONF.rdfDocumentMetadata);
 		this.metadataTemplate = getIRI(CONF.metadataTemplate);
-		this.sparqlDataSource = sparqlDataSource;
+		this.sparqlEndpoint = getIRI(CONF.sparqlEndpoint);
 	}
 	
 	public void addCustomMetadata(Model document, Resource documentResource) {
@@ -54,7 +55,12 @@ public class MetadataConfiguration extends ResourceReader {
 		}
 	}
 	
-	public Resource addMetadataFromTemplate(Model document, HypermediaControls controller) {
+	/**
+	 * @param queries The queries that produced the document, for the
+	 * 		<tt>runtime:query</tt> placeholder
+	 */
+	public Resource addMetadataFromTemplate(Model document, HypermediaControls controller,
+			List<QueryRecord> queries) {
 		if (metadataTemplate == null) {
 			return null;
 		}
@@ -63,42 +69,18 @@ public class MetadataConfiguration extends ResourceReader {
 		Resource currentDocRepr;
 		currentTime = Calendar.getInstance();
 		
-		// add metadata from templates
-		Model tplModel = FileManager.get().loadModel(metadataTemplate);
-
-		// iterate over template statements to replace placeholders
+		// fill in the runtime placeholders of the template
 		Model metadata = ModelFactory.createDefaultModel();
 		currentDocRepr = metadata.createResource();
-		StmtIterator it = tplModel.listStatements();
-		while (it.hasNext()) {
-			Statement stmt = it.nextStatement();
-			Resource subj = stmt.getSubject();
-			Property pred = stmt.getPredicate();
-			RDFNode  obj  = stmt.getObject();
-			
-			try {
-				if (subj.toString().contains(metadataPlaceholderURIPrefix)){
-					subj = (Resource) parsePlaceholder(subj, controller, currentTime, currentDocRepr);
-					if (subj == null) {
-						// create a unique blank node with a fixed id.
-						subj = getModel().createResource(new AnonId(String.valueOf(stmt.getSubject().hashCode())));
-					}
-				}
-				
-				if (obj.toString().contains(metadataPlaceholderURIPrefix)){
-					obj = parsePlaceholder(obj, controller, currentTime, currentDocRepr);
-				}
-				
-				// only add statements with some objects
-				if (obj != null) {
-					stmt = metadata.createStatement(subj,pred,obj);
-					metadata.add(stmt);
-				}
-			} catch (Exception e) {
-				// something went wrong, oops - lets better remove the offending statement
-				metadata.remove(stmt);
-				e.printStackTrace();
+		for (TemplateStatement stmt: getCompiledTemplate().statements) {
+			RDFNode subj = stmt.subject.getValue(this, controller, queries, currentTime, currentDocRepr);
+			RDFNode obj = stmt.object.getValue(this, controller, queries, currentTime, currentDocRepr);
+			if (subj == null) {
+				subj = stmt.subject.fallback;
 			}
+			// only add statements with some objects
+			if (obj == null || !subj.isResource()) continue;
+			metadata.add((Resource) subj, stmt.predicate, obj);
 		}
 		
 		// remove blank nodes that don't have any properties
@@ -125,8 +107,171 @@ public class MetadataConfiguration extends ResourceReader {
 		return currentDocRepr;
 	}
 	
-	private RDFNode parsePlaceholder(RDFNode phRes, HypermediaControls controller, 
-			Calendar currentTime, Resource currentDocRepr) {
+	/**
+	 * Returns the parsed template, loading it on first use. If the
+	 * template is a local file, then it is loaded again when the file
+	 * has been modified.
+	 */
+	private CompiledTemplate getCompiledTemplate() {
+		CompiledTemplate result = compiledTemplate;
+		if (result != null && !result.isOutdated()) return result;
+		synchronized (this) {
+			if (compiledTemplate == null || compiledTemplate.isOutdated()) {
+				compiledTemplate = compileTemplate();
+			}
+			return compiledTemplate;
+		}
+	}
+	
+	private CompiledTemplate compileTemplate() {
+		File file = getLocalFile(metadataTemplate);
+		long lastModified = file == null ? 0 : file.lastModified();
+		Model tplModel = FileManager.get().loadModel(metadataTemplate);
+		List<TemplateStatement> statements = new ArrayList<TemplateStatement>();
+		StmtIterator it = tplModel.listStatements();
+		while (it.hasNext()) {
+			Statement stmt = it.nextStatement();
+			TemplateNode subj, obj;
+			try {
+				subj = compileNode(stmt.getSubject());
+				obj = compileNode(stmt.getObject());
+			} catch (Exception e) {
+				// something went wrong, oops - lets better skip the offending statement
+				e.printStackTrace();
+				continue;
+			}
+			// Placeholders that don't depend on the request are already
+			// resolved; drop statements that can never be added
+			if (!subj.isRuntime() && subj.value != null && !subj.value.isResource()) continue;
+			if (!obj.isRuntime() && obj.value == null) continue;
+			statements.add(new TemplateStatement(subj, stmt.getPredicate(), obj));
+		}
+		return new CompiledTemplate(statements, file, lastModified);
+	}
+	
+	private TemplateNode compileNode(RDFNode node) {
+		// create a unique blank node with a fixed id, for placeholder
+		// subjects that can't be resolved
+		Resource fallback = getModel().createResource(
+				new AnonId(String.valueOf(node.hashCode())));
+		if (!node.isURIResource() || 
+				!node.asNode().getURI().contains(metadataPlaceholderURIPrefix)) {
+			return new TemplateNode(node, null, fallback);
+		}
+		String phURI = node.asNode().getURI().replace(metadataPlaceholderURIPrefix, "");
+		if (phURI.startsWith("runtime:")) {
+			String phName = phURI.substring("runtime:".length());
+			if (RUNTIME_PLACEHOLDERS.contains(phName)) {
+				return new TemplateNode(null, phName, fallback);
+			}
+		}
+		return new TemplateNode(parsePlaceholder(node), null, fallback);
+	}
+	
+	private final static List<String> RUNTIME_PLACEHOLDERS = 
+			Arrays.asList("query", "time", "graph", "data", "resource");
+	
+	private RDFNode getRuntimeValue(String phName, HypermediaControls controller, 
+			List<QueryRecord> queries, Calendar currentTime, Resource currentDocRepr) {
+		// <about:metadata:runtime:query> - the SPARQL Query used to get the RDF Graph
+		if (phName.equals("query")) {
+			if (sparqlEndpoint == null) return null;
+			for (QueryRecord query: queries) {
+				// Skip the SELECT queries for high-degree property counts
+				if (!query.isGraphQuery()) continue;
+				if (!sparqlEndpoint.equals(query.getEndpointURL())) continue;
+				return getModel().createTypedLiteral(query.getQuery());
+			}
+			return null;
+		}
+		// <about:metadata:runtime:time> - the current time
+		if (phName.equals("time")) {
+			return getModel().createTypedLiteral(currentTime);
+		}
+		// <about:metadata:runtime:graph> - URI of the graph
+		if (phName.equals("graph")) {
+			// Replaced the commented line by the following one because the
+			// RDF graph we want to talk about is a specific representation
+			// of the data identified by the getDataURL() URI.
+			//                                       Olaf, May 28, 2010
+			// return model.createResource(describedResource.getDataURL());
+			return currentDocRepr;
+		}
+		// <about:metadata:runtime:data> - URI of the data
+		if (phName.equals("data")) {
+			return getModel().createResource(controller.getDataURL());
+		}
+		// <about:metadata:runtime:resource> - URI of the resource
+		return getModel().createResource(controller.getAbsoluteIRI());
+	}
+	
+	private static File getLocalFile(String iri) {
+		if (!iri.startsWith("file:")) return null;
+		try {
+			return new File(new URI(iri));
+		} catch (URISyntaxException ex) {
+			return null;
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * A parsed metadata template. Immutable.
+	 */
+	private static class CompiledTemplate {
+		final List<TemplateStatement> statements;
+		final File file;
+		final long lastModified;
+		CompiledTemplate(List<TemplateStatement> statements, File file, long lastModified) {
+			this.statements = Collections.unmodifiableList(statements);
+			this.file = file;
+			this.lastModified = lastModified;
+		}
+		boolean isOutdated() {
+			return file != null && file.lastModified() != lastModified;
+		}
+	}
+	
+	private static class TemplateStatement {
+		final TemplateNode subject;
+		final Property predicate;
+		final TemplateNode object;
+		TemplateStatement(TemplateNode subject, Property predicate, TemplateNode object) {
+			this.subject = subject;
+			this.predicate = predicate;
+			this.object = object;
+		}
+	}
+	
+	/**
+	 * Either a fixed value (possibly null), or a runtime placeholder
+	 * that is filled in for each request.
+	 */
+	private static class TemplateNode {
+		final RDFNode value;
+		final String runtimePlaceholder;
+		final Resource fallback;
+		TemplateNode(RDFNode value, String runtimePlaceholder, Resource fallback) {
+			this.value = value;
+			this.runtimePlaceholder = runtimePlaceholder;
+			this.fallback = fallback;
+		}
+		boolean isRuntime() {
+			return runtimePlaceholder != null;
+		}
+		RDFNode getValue(MetadataConfiguration config, HypermediaControls controller,
+				List<QueryRecord> queries, Calendar currentTime, Resource currentDocRepr) {
+			if (!isRuntime()) return value;
+			return config.getRuntimeValue(runtimePlaceholder, controller, 
+					queries, currentTime, currentDocRepr);
+		}
+	}
+	
+	/**
+	 * Resolves a placeholder that doesn't depend on the request.
+	 */
+	private RDFNode parsePlaceholder(RDFNode phRes) {
 		String phURI = phRes.asNode().getURI();
 		// get package name and placeholder name from placeholder URI
 		phURI = phURI.replace(metadataPlaceholderURIPrefix, "");
@@ -135,35 +280,6 @@ public class MetadataConfiguration extends ResourceReader {
 		phPackage = phPackage.replace(":", "");
 		Resource dataset = getSelf();
 		
-		if (phPackage.equals("runtime")) {
-			// <about:metadata:runtime:query> - the SPARQL Query used to get the RDF Graph
-			if (phName.equals("query")) {
-				if (sparqlDataSource == null) return null;
-				return getModel().createTypedLiteral(sparqlDataSource.getPreviousDescribeQuery());
-			}
-			// <about:metadata:runtime:time> - the current time
-			if (phName.equals("time")) {
-				return getModel().createTypedLiteral(currentTime);
-			}
-			// <about:metadata:runtime:graph> - URI of the graph
-			if (phName.equals("graph")) {
-				// Replaced the commented line by the following one because the
-				// RDF graph we want to talk about is a specific representation
-				// of the data identified by the getDataURL() URI.
-				//                                       Olaf, May 28, 2010
-				// return model.createResource(describedResource.getDataURL());
-				return currentDocRepr;
-			}
-			// <about:metadata:runtime:data> - URI of the data
-			if (phName.equals("data")) {
-				return getModel().createResource(controller.getDataURL());
-			}
-			// <about:metadata:runtime:resource> - URI of the resource
-			if (phName.equals("resource")) {
-				return getModel().createResource(controller.getAbsoluteIRI());
-			}
-		}
-		
 		// <about:metadata:config:*> - The configuration parameters
 		if (phPackage.equals("config")) {
 			// look for requested property in the dataset config
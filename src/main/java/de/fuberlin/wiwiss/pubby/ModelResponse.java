@@ -1,12 +1,17 @@
 package de.fuberlin.wiwiss.pubby;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.RDFWriter;
 import com.hp.hpl.jena.shared.JenaException;
@@ -14,6 +19,7 @@ import com.hp.hpl.jena.shared.JenaException;
 import de.fuberlin.wiwiss.pubby.negotiation.ContentTypeNegotiator;
 import de.fuberlin.wiwiss.pubby.negotiation.MediaRangeSpec;
 import de.fuberlin.wiwiss.pubby.negotiation.PubbyNegotiator;
+import de.fuberlin.wiwiss.pubby.servlets.CompressingOutputStream;
 import de.fuberlin.wiwiss.pubby.servlets.RequestParamHandler;
 
 /**
@@ -21,14 +27,26 @@ import de.fuberlin.wiwiss.pubby.servlets.RequestParamHandler;
  * content negotiation and all the other tricks supported by Joseki
  * for free. This has to be in the Joseki package because some
  * required methods are not visible.
+ * 
+ * By default, the model is written with streaming writers that output
+ * each triple as they go, without first analyzing the whole model. This
+ * is much faster for large models. The slower pretty-printing writers
+ * (abbreviated RDF/XML, nested Turtle) can be enabled instead.
  */
 public class ModelResponse {
 	private final Model model;
 	private final HttpServletRequest request;
 	private final HttpServletResponse response;
+	private final boolean prettyPrint;
+	private final MediaRangeSpec bestMatch;
 	
 	public ModelResponse(Model model, HttpServletRequest request, 
 			HttpServletResponse response) {
+		this(model, request, response, false);
+	}
+	
+	public ModelResponse(Model model, HttpServletRequest request, 
+			HttpServletResponse response, boolean prettyPrint) {
 
 		// Handle ?output=format request parameter
 		RequestParamHandler handler = new RequestParamHandler(request);
@@ -39,12 +57,40 @@ public class ModelResponse {
 		this.model = model;
 		this.request = request;
 		this.response = response;
+		this.prettyPrint = prettyPrint;
+
+		// Whatever we send, it depends on the Accept header
+		response.addHeader("Vary", "Accept");
+		ContentTypeNegotiator negotiator = PubbyNegotiator.getDataNegotiator();
+		bestMatch = negotiator.getBestMatch(
+				request.getHeader("Accept"), request.getHeader("User-Agent"));
+	}
+	
+	/**
+	 * Prepares a response whose model will be passed to {@link #serve(Model)}
+	 * later. Allows looking at the negotiated media type first.
+	 */
+	public ModelResponse(HttpServletRequest request, 
+			HttpServletResponse response, boolean prettyPrint) {
+		this(null, request, response, prettyPrint);
+	}
+	
+	/**
+	 * @return The media type that will be sent, or <code>null</code> if
+	 * 		none of the supported formats is acceptable to the client
+	 */
+	public String getMediaType() {
+		return bestMatch == null ? null : bestMatch.getMediaType();
 	}
 	
 	public void serve() {
+		serve(model);
+	}
+	
+	public void serve(Model model) {
 		// Error hendling is still quite a mess here.
 		try {
-			doResponseModel();
+			doResponseModel(model);
 		} catch (IOException ioEx) {
 			throw new RuntimeException(ioEx);
 		} catch (JenaException jEx) {
@@ -58,11 +104,7 @@ public class ModelResponse {
 		}
 	}
 	
-	private void doResponseModel() throws IOException {
-		response.addHeader("Vary", "Accept");
-		ContentTypeNegotiator negotiator = PubbyNegotiator.getDataNegotiator();
-		MediaRangeSpec bestMatch = negotiator.getBestMatch(
-				request.getHeader("Accept"), request.getHeader("User-Agent"));
+	private void doResponseModel(Model model) throws IOException {
 		if (bestMatch == null) {
 			response.setStatus(406);
 			response.setContentType("text/plain");
@@ -72,47 +114,58 @@ public class ModelResponse {
 			return;
 		}
 		response.setContentType(bestMatch.getMediaType());
-		getWriter(bestMatch.getMediaType()).write(model, response);
-		response.getOutputStream().flush();
+		OutputStream out = new BufferedOutputStream(
+				CompressingOutputStream.create(request, response), BUFFER_SIZE);
+		getWriter(bestMatch.getMediaType()).write(model, out);
+		out.close();
     }
 	
+	private final static int BUFFER_SIZE = 16 * 1024;
+	
 	private ModelWriter getWriter(String mediaType) {
 		if ("application/rdf+xml".equals(mediaType)) {
-			return new RDFXMLWriter();
+			return prettyPrint ? new RDFXMLWriter() : new StreamingWriter(RDFFormat.RDFXML_PLAIN);
 		}
-		if ("application/x-turtle".equals(mediaType)) {
-			return new TurtleWriter();
+		if ("application/x-turtle".equals(mediaType)
+				|| "text/rdf+n3;charset=utf-8".equals(mediaType)) {
+			return prettyPrint ? new TurtleWriter() : new StreamingWriter(RDFFormat.TURTLE_BLOCKS);
 		}
-		if ("text/rdf+n3;charset=utf-8".equals(mediaType)) {
-			return new TurtleWriter();
-		}
-		return new NTriplesWriter();
+		return new StreamingWriter(RDFFormat.NTRIPLES_UTF8);
 	}
 	
 	private interface ModelWriter {
-		void write(Model model, HttpServletResponse response) throws IOException;
+		void write(Model model, OutputStream out) throws IOException;
 	}
 	
-	private class NTriplesWriter implements ModelWriter {
-		public void write(Model model, HttpServletResponse response) throws IOException {
-			model.getWriter("N-TRIPLES").write(model, response.getOutputStream(), null);
+	/**
+	 * Writes triples one by one (or grouped by subject for Turtle)
+	 * without building any intermediate structures.
+	 */
+	private class StreamingWriter implements ModelWriter {
+		private final RDFFormat format;
+		StreamingWriter(RDFFormat format) {
+			this.format = format;
+		}
+		public void write(Model model, OutputStream out) throws IOException {
+			RDFDataMgr.write(out, model, format);
 		}
 	}
 	
 	private class TurtleWriter implements ModelWriter {
-		public void write(Model model, HttpServletResponse response) throws IOException {
-			model.getWriter("TURTLE").write(model, response.getOutputStream(), null);
+		public void write(Model model, OutputStream out) throws IOException {
+			model.getWriter("TURTLE").write(model, out, null);
 		}
 	}
 
 	private class RDFXMLWriter implements ModelWriter {
-		public void write(Model model, HttpServletResponse response) throws IOException {
+		public void write(Model model, OutputStream out) throws IOException {
 			RDFWriter writer = model.getWriter("RDF/XML-ABBREV");
 			writer.setProperty("showXmlDeclaration", "true");
 			// From Joseki -- workaround for the j.cook.up bug.
 			writer.setProperty("blockRules", "propertyAttr");
-			writer.write(model, 
-					new OutputStreamWriter(response.getOutputStream(), "utf-8"), null);
+			OutputStreamWriter w = new OutputStreamWriter(out, "utf-8");
+			writer.write(model, w, null);
+			w.flush();
 		}
 	}
 }
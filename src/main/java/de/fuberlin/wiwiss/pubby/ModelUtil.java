@@ -1,8 +1,21 @@
 package de.fuberlin.wiwiss.pubby;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
 import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
 
 public class ModelUtil {
 	public final static Model EMPTY_MODEL = ModelFactory.createDefaultModel();
@@ -34,6 +47,61 @@ public class ModelUtil {
 		m.setNsPrefix(prefix, uri);
 	}
 	
+	/**
+	 * The order of SPARQL's <tt>ORDER BY</tt>: blank nodes, then IRIs,
+	 * then literals. Property values are paged in this order.
+	 */
+	public final static Comparator<RDFNode> VALUE_ORDER = new Comparator<RDFNode>() {
+		public int compare(RDFNode n1, RDFNode n2) {
+			return NodeValue.compareAlways(
+					NodeValue.makeNode(n1.asNode()), NodeValue.makeNode(n2.asNode()));
+		}
+	};
+
+	/**
+	 * Lists the values of a property of a resource in {@link #VALUE_ORDER}.
+	 * For an inverse property, the values are the subjects of the arcs.
+	 */
+	public static List<RDFNode> listValues(Model model, Resource resource,
+			Property property, boolean isInverse) {
+		Set<RDFNode> values = new LinkedHashSet<RDFNode>();
+		StmtIterator it = isInverse
+				? model.listStatements(null, property, resource)
+				: model.listStatements(resource, property, (RDFNode) null);
+		while (it.hasNext()) {
+			Statement stmt = it.nextStatement();
+			values.add(isInverse ? stmt.getSubject() : stmt.getObject());
+		}
+		List<RDFNode> result = new ArrayList<RDFNode>(values);
+		Collections.sort(result, VALUE_ORDER);
+		return result;
+	}
+
+	/**
+	 * Removes all values of a property of a resource, except those from
+	 * <code>offset</code> to <code>offset + limit</code> in
+	 * {@link #VALUE_ORDER}, modifying the model in place. Statements
+	 * about the removed values, such as their labels, are removed as well.
+	 * @return The number of values before removal
+	 */
+	public static int sliceValues(Model model, Resource resource,
+			Property property, boolean isInverse, int offset, int limit) {
+		List<RDFNode> values = listValues(model, resource, property, isInverse);
+		for (int i = 0; i < values.size(); i++) {
+			if (i >= offset && i - offset < limit) continue;
+			RDFNode value = values.get(i);
+			if (isInverse) {
+				model.remove(value.asResource(), property, resource);
+			} else {
+				model.remove(resource, property, value);
+			}
+			if (value.isResource() && !value.equals(resource)) {
+				model.removeAll(value.asResource(), null, (RDFNode) null);
+			}
+		}
+		return values.size();
+	}
+
 	/**
 	 * Singleton; only public static methods
 	 */
@@ -0,0 +1,168 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * An immutable trie of namespace IRIs that finds the namespaces at the
+ * start of a given IRI in a single pass over the IRI, independently of
+ * the number of namespaces. Each namespace is registered with an
+ * integer ID, and several namespaces may share an ID (for example,
+ * all the namespaces of one dataset).
+ */
+public class NamespaceMatcher {
+	private final Node root;
+
+	/**
+	 * Creates a matcher where each namespace gets the ID 0.
+	 */
+	public NamespaceMatcher(Iterable<String> namespaces) {
+		this(createBuilder(namespaces));
+	}
+
+	private NamespaceMatcher(Builder builder) {
+		root = builder.root.build();
+	}
+
+	private static Builder createBuilder(Iterable<String> namespaces) {
+		Builder result = new Builder();
+		for (String namespace: namespaces) {
+			result.add(namespace, 0);
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if the IRI starts with any of the namespaces
+	 */
+	public boolean matchesAny(String iri) {
+		Node node = root;
+		for (int i = 0; node != null; i++) {
+			if (node.ids != null) return true;
+			if (i == iri.length()) return false;
+			node = node.getChild(iri.charAt(i));
+		}
+		return false;
+	}
+
+	/**
+	 * @return The IDs of all namespaces that the IRI starts with
+	 */
+	public BitSet findAll(String iri) {
+		BitSet result = new BitSet();
+		Node node = root;
+		for (int i = 0; node != null; i++) {
+			if (node.ids != null) {
+				for (int id: node.ids) {
+					result.set(id);
+				}
+			}
+			if (i == iri.length()) break;
+			node = node.getChild(iri.charAt(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return The ID of the longest namespace that the IRI starts with,
+	 * 		and the length of that namespace, or <code>null</code> if no
+	 * 		namespace matches. If several namespaces with different IDs are
+	 * 		equal, then the lowest ID is returned.
+	 */
+	public int[] findLongest(String iri) {
+		int[] result = null;
+		Node node = root;
+		for (int i = 0; node != null; i++) {
+			if (node.ids != null) {
+				result = new int[] {node.ids[0], i};
+			}
+			if (i == iri.length()) break;
+			node = node.getChild(iri.charAt(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Collects namespaces for a {@link NamespaceMatcher}.
+	 */
+	public static class Builder {
+		private final BuilderNode root = new BuilderNode();
+
+		public Builder add(String namespace, int id) {
+			BuilderNode node = root;
+			for (int i = 0; i < namespace.length(); i++) {
+				BuilderNode child = node.children.get(namespace.charAt(i));
+				if (child == null) {
+					child = new BuilderNode();
+					node.children.put(namespace.charAt(i), child);
+				}
+				node = child;
+			}
+			node.ids.set(id);
+			return this;
+		}
+
+		public NamespaceMatcher build() {
+			return new NamespaceMatcher(this);
+		}
+	}
+
+	private static class BuilderNode {
+		private final TreeMap<Character, BuilderNode> children = new TreeMap<Character, BuilderNode>();
+		private final BitSet ids = new BitSet();
+		Node build() {
+			char[] keys = new char[children.size()];
+			Node[] nodes = new Node[children.size()];
+			int i = 0;
+			for (Character c: children.keySet()) {
+				keys[i] = c;
+				nodes[i] = children.get(c).build();
+				i++;
+			}
+			int[] idArray = null;
+			if (!ids.isEmpty()) {
+				List<Integer> list = new ArrayList<Integer>();
+				for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+					list.add(id);
+				}
+				idArray = new int[list.size()];
+				for (int j = 0; j < idArray.length; j++) {
+					idArray[j] = list.get(j);
+				}
+			}
+			return new Node(keys, nodes, idArray);
+		}
+	}
+
+	/**
+	 * A trie node. Children are in arrays sorted by character, for
+	 * compactness and binary search.
+	 */
+	private static class Node {
+		private final char[] keys;
+		private final Node[] children;
+		private final int[] ids;
+		Node(char[] keys, Node[] children, int[] ids) {
+			this.keys = keys;
+			this.children = children;
+			this.ids = ids;
+		}
+		Node getChild(char c) {
+			int low = 0;
+			int high = keys.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid] < c) {
+					low = mid + 1;
+				} else if (keys[mid] > c) {
+					high = mid - 1;
+				} else {
+					return children[mid];
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/**
+ * A copy-on-write view of a graph. Triples can be added to and removed
+ * from the view, but the underlying graph is never modified, so it can
+ * be shared between threads and cached. Added triples are kept in a
+ * separate graph. Removed triples of the underlying graph are hidden
+ * by masks; removing all arcs of a property from a resource costs a
+ * single mask, regardless of the number of arcs.
+ *
+ * The view itself is not safe for concurrent modification. Each thread
+ * should create its own view.
+ */
+public class OverlayGraph extends GraphBase {
+
+	/**
+	 * @return A model over a new view of the given model's graph, with
+	 * 		a copy of its prefixes
+	 */
+	public static Model createModel(Model base) {
+		return ModelFactory.createModelForGraph(new OverlayGraph(base.getGraph()));
+	}
+
+	private final Graph base;
+	private final Graph added = Factory.createGraphMem();
+	// Patterns, possibly with wildcards, of hidden triples
+	private final List<Triple> masks = new ArrayList<Triple>();
+	// Individually deleted triples
+	private final Set<Triple> deleted = new HashSet<Triple>();
+	private final Filter<Triple> isHidden = new Filter<Triple>() {
+		@Override
+		public boolean accept(Triple t) {
+			return isHidden(t);
+		}
+	};
+
+	public OverlayGraph(Graph base) {
+		this.base = base;
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+		ExtendedIterator<Triple> result = base.find(m);
+		if (!masks.isEmpty() || !deleted.isEmpty()) {
+			result = result.filterDrop(isHidden);
+		}
+		if (added.isEmpty()) return result;
+		return result.andThen(added.find(m));
+	}
+
+	@Override
+	public void performAdd(Triple t) {
+		deleted.remove(t);
+		if (base.contains(t) && !isHidden(t)) return;
+		added.add(t);
+	}
+
+	@Override
+	public void performDelete(Triple t) {
+		added.delete(t);
+		if (base.contains(t)) {
+			deleted.add(t);
+		}
+	}
+
+	/**
+	 * Removes matching triples by masking, without finding and deleting
+	 * each triple of the underlying graph.
+	 */
+	@Override
+	public void remove(Node s, Node p, Node o) {
+		checkOpen();
+		Triple pattern = Triple.createMatch(s, p, o);
+		if (pattern.isConcrete()) {
+			delete(pattern);
+			return;
+		}
+		masks.add(pattern);
+		added.remove(s, p, o);
+		getEventManager().notifyEvent(this, GraphEvents.remove(s, p, o));
+	}
+
+	@Override
+	public void close() {
+		added.close();
+		super.close();
+	}
+
+	@Override
+	protected PrefixMapping createPrefixMapping() {
+		return new PrefixMappingImpl().setNsPrefixes(base.getPrefixMapping());
+	}
+
+	private boolean isHidden(Triple t) {
+		if (deleted.contains(t)) return true;
+		for (Triple mask: masks) {
+			if (mask.matches(t)) return true;
+		}
+		return false;
+	}
+}
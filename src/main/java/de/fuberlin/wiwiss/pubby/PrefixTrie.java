@@ -0,0 +1,149 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+/**
+ * An immutable set of prefix/namespace pairs that finds the longest
+ * namespace at the start of an IRI in time proportional to the length
+ * of the IRI, independently of the number of namespaces.
+ */
+public class PrefixTrie {
+	public final static PrefixTrie EMPTY =
+			new PrefixTrie(Collections.<String, String>emptyMap());
+
+	private final Map<String, String> prefixToNamespace;
+	private final Map<String, String> namespaceToPrefix;
+	private final List<String> namespaces = new ArrayList<String>();
+	private final NamespaceMatcher matcher;
+	private final PrefixTrie fallback;
+
+	public PrefixTrie(PrefixMapping prefixes) {
+		this(prefixes.getNsPrefixMap());
+	}
+
+	private PrefixTrie(Map<String, String> prefixToNamespace) {
+		this(prefixToNamespace, null);
+	}
+
+	private PrefixTrie(Map<String, String> prefixToNamespace, PrefixTrie fallback) {
+		this.fallback = fallback;
+		this.prefixToNamespace = Collections.unmodifiableMap(
+				new HashMap<String, String>(prefixToNamespace));
+		Map<String, String> namespaceToPrefix = new HashMap<String, String>();
+		NamespaceMatcher.Builder builder = new NamespaceMatcher.Builder();
+		for (String prefix: prefixToNamespace.keySet()) {
+			String namespace = prefixToNamespace.get(prefix);
+			if (namespaceToPrefix.containsKey(namespace)) {
+				// Several prefixes for one namespace; pick one consistently
+				if (namespaceToPrefix.get(namespace).compareTo(prefix) < 0) continue;
+			}
+			if (!namespaceToPrefix.containsKey(namespace)) {
+				builder.add(namespace, namespaces.size());
+				namespaces.add(namespace);
+			}
+			namespaceToPrefix.put(namespace, prefix);
+		}
+		this.namespaceToPrefix = Collections.unmodifiableMap(namespaceToPrefix);
+		this.matcher = builder.build();
+	}
+
+	/**
+	 * Returns a trie that contains the prefixes of this trie, plus
+	 * those from another mapping whose prefix and namespace are both
+	 * not yet used here. Returns this trie if nothing is added. This
+	 * trie is not copied; the additional prefixes go into a separate
+	 * small trie that is consulted as well.
+	 */
+	public PrefixTrie withFallback(PrefixMapping additional) {
+		Map<String, String> added = null;
+		Map<String, String> additionalMap = additional.getNsPrefixMap();
+		for (String prefix: additionalMap.keySet()) {
+			String namespace = additionalMap.get(prefix);
+			if (getNsPrefixURI(prefix) != null) continue;
+			if (getNsURIPrefix(namespace) != null) continue;
+			if (added == null) {
+				added = new HashMap<String, String>();
+			}
+			added.put(prefix, namespace);
+		}
+		return added == null ? this : new PrefixTrie(added, this);
+	}
+
+	/**
+	 * @return The longest namespace that the IRI starts with, or
+	 * 		<code>null</code> if there is none
+	 */
+	public String findNamespace(String iri) {
+		String result = findOwnNamespace(iri);
+		if (fallback == null) return result;
+		String other = fallback.findNamespace(iri);
+		if (result == null) return other;
+		if (other == null) return result;
+		return other.length() > result.length() ? other : result;
+	}
+
+	private String findOwnNamespace(String iri) {
+		int[] match = matcher.findLongest(iri);
+		return match == null ? null : namespaces.get(match[0]);
+	}
+
+	/**
+	 * @return The prefix for a namespace, or <code>null</code>
+	 */
+	public String getNsURIPrefix(String namespace) {
+		String result = namespaceToPrefix.get(namespace);
+		if (result != null || fallback == null) return result;
+		return fallback.getNsURIPrefix(namespace);
+	}
+
+	/**
+	 * @return The namespace for a prefix, or <code>null</code>
+	 */
+	public String getNsPrefixURI(String prefix) {
+		String result = prefixToNamespace.get(prefix);
+		if (result != null || fallback == null) return result;
+		return fallback.getNsPrefixURI(prefix);
+	}
+
+	/**
+	 * Abbreviates an IRI as a prefixed name, using the longest matching
+	 * namespace. Only succeeds if the local part is a non-empty name
+	 * made of letters, digits, and the characters <tt>_-.</tt>, starting
+	 * with a letter or underscore.
+	 *
+	 * @return The prefixed name, or <code>null</code> if not possible
+	 */
+	public String qnameFor(String iri) {
+		String namespace = findNamespace(iri);
+		if (namespace == null) return null;
+		String localName = iri.substring(namespace.length());
+		if (!isSimpleName(localName)) return null;
+		return getNsURIPrefix(namespace) + ":" + localName;
+	}
+
+	/**
+	 * @return The number of namespaces
+	 */
+	public int size() {
+		return namespaceToPrefix.size() + (fallback == null ? 0 : fallback.size());
+	}
+
+	private static boolean isSimpleName(String s) {
+		if ("".equals(s)) return false;
+		char first = s.charAt(0);
+		if (!Character.isLetter(first) && first != '_') return false;
+		for (int i = 1; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (Character.isLetterOrDigit(c)) continue;
+			if (c == '_' || c == '-' || c == '.') continue;
+			return false;
+		}
+		return true;
+	}
+}
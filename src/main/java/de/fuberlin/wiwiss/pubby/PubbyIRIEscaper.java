@@ -48,6 +48,35 @@ public class PubbyIRIEscaper extends IRIRewriter {
 		}
 		return absoluteIRI;
 	}
+
+	/**
+	 * Only IRIs in the namespace that contain characters to be escaped or,
+	 * when encoding URIs to IRIs, percent-encoded characters are changed.
+	 */
+	@Override
+	public boolean mayRewrite(String absoluteIRI) {
+		if (!absoluteIRI.startsWith(namespace)) return false;
+		if (encodeURIsToIRIs && absoluteIRI.indexOf('%') >= 0) return true;
+		return absoluteIRI.indexOf('#') >= 0 || absoluteIRI.indexOf('?') >= 0;
+	}
+
+	/**
+	 * Never fails, any IRI can be unrewritten.
+	 */
+	@Override
+	public String tryUnrewrite(String absoluteIRI) {
+		return unrewrite(absoluteIRI);
+	}
+
+	@Override
+	public boolean isOriginal(String absoluteIRI) {
+		return false;
+	}
+
+	@Override
+	public boolean isRewritten(String absoluteIRI) {
+		return false;
+	}
 	
 	/**
 	 * Escapes any characters that have special meaning in IRIs so that
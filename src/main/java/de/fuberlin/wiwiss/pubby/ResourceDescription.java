@@ -21,12 +21,12 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
-import com.hp.hpl.jena.shared.PrefixMapping;
-import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
 import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.XSD;
 
 import de.fuberlin.wiwiss.pubby.VocabularyStore.CachedPropertyCollection;
+import de.fuberlin.wiwiss.pubby.sources.DescriptionResult;
+import de.fuberlin.wiwiss.pubby.sources.QueryRecord;
 
 /**
  * A convenient interface to an RDF description of a resource.
@@ -44,33 +44,43 @@ public class ResourceDescription {
 	private final Configuration config;
 	private final Map<Property, Integer> highIndegreeProperties;
 	private final Map<Property, Integer> highOutdegreeProperties;
-	private PrefixMapping prefixes = null;
+	private final List<QueryRecord> queries;
+	private PrefixTrie prefixes = null;
 	private List<ResourceProperty> properties = null;
 	
 	public ResourceDescription(HypermediaControls controller, Model model, 
 			Configuration config) {
-		this(controller, model, null, null, config, false);
+		this(controller, model, null, null, null, config, false);
    	}
 
-	public ResourceDescription(HypermediaControls controller, Model model, 
-			Map<Property, Integer> highIndegreeProperties,
-			Map<Property, Integer> highOutdegreeProperties,
-			Configuration config) {
-		this(controller, model, highIndegreeProperties, highOutdegreeProperties, config, true);
+	public ResourceDescription(HypermediaControls controller, 
+			DescriptionResult description, Configuration config) {
+		this(controller, description.getModel(), 
+				description.getHighIndegreeProperties(), 
+				description.getHighOutdegreeProperties(), 
+				description.getQueries(), config, true);
 	}
 	
 	private ResourceDescription(HypermediaControls controller, Model model, 
 			Map<Property, Integer> highIndegreeProperties,
 			Map<Property, Integer> highOutdegreeProperties,
+			List<QueryRecord> queries,
 			Configuration config, boolean learnHighDegreeProps) {
 		this.hypermediaResource = controller;
-		this.model = model;
-		this.resource = model.getResource(controller.getAbsoluteIRI());
+		// A view, because learnHighDegreeProperties() and callers of
+		// getModel() may modify it, and the model may be shared
+		this.model = OverlayGraph.createModel(model);
+		this.resource = this.model.getResource(controller.getAbsoluteIRI());
 		this.config = config;
+		// Copies, because learnHighDegreeProperties() may add to them
 		this.highIndegreeProperties = highIndegreeProperties == null ?
-				Collections.<Property, Integer>emptyMap() : highIndegreeProperties;
+				new HashMap<Property, Integer>() : 
+				new HashMap<Property, Integer>(highIndegreeProperties);
 		this.highOutdegreeProperties = highOutdegreeProperties == null ?
-				Collections.<Property, Integer>emptyMap() : highOutdegreeProperties;
+				new HashMap<Property, Integer>() : 
+				new HashMap<Property, Integer>(highOutdegreeProperties);
+		this.queries = queries == null ? 
+				Collections.<QueryRecord>emptyList() : queries;
 		if (learnHighDegreeProps) {
 			learnHighDegreeProperties(true, HIGH_DEGREE_CUTOFF);
 			learnHighDegreeProperties(false, HIGH_DEGREE_CUTOFF);
@@ -84,6 +94,7 @@ public class ResourceDescription {
 		this.config = config;
 		this.highIndegreeProperties = Collections.<Property, Integer>emptyMap(); 
 		this.highOutdegreeProperties = Collections.<Property, Integer>emptyMap(); 
+		this.queries = Collections.<QueryRecord>emptyList();
 	}
 
 	public String getURI() {
@@ -93,6 +104,14 @@ public class ResourceDescription {
 	public Model getModel() {
 		return model;
 	}
+
+	/**
+	 * @return The queries that were sent to SPARQL endpoints to get
+	 * 		the description; never null
+	 */
+	public List<QueryRecord> getQueries() {
+		return queries;
+	}
 	
 	/**
 	 * If {@link #getLabel()} is non null, return the label. If it is null,
@@ -147,6 +166,17 @@ public class ResourceDescription {
 		return null;
 	}
 	
+	/**
+	 * Creates a property of this resource that has no values, e.g., for
+	 * a page of values past the last one.
+	 */
+	public ResourceProperty createEmptyProperty(Property property, boolean isInverse) {
+		return new ResourceProperty(property, isInverse,
+				Collections.<Value>emptyList(),
+				Collections.<ResourceDescription>emptyList(), 0,
+				config.getVocabularyStore());
+	}
+
 	public List<ResourceProperty> getProperties() {
 		if (properties == null) {
 			properties = buildProperties();
@@ -202,6 +232,19 @@ public class ResourceDescription {
 			}
 			propertyBuilders.get(key).addHighDegreeArcs(highOutdegreeProperties.get(p));
 		}
+		// Fetch labels, weights etc. of all properties and classes on the
+		// page in one go, rather than with one request each
+		Set<String> vocabularyIRIs = new HashSet<String>();
+		for (PropertyBuilder builder: propertyBuilders.values()) {
+			vocabularyIRIs.add(builder.predicate.getURI());
+		}
+		it = resource.listProperties(RDF.type);
+		while (it.hasNext()) {
+			RDFNode type = it.next().getObject();
+			if (!type.isURIResource()) continue;
+			vocabularyIRIs.add(type.asResource().getURI());
+		}
+		config.getVocabularyStore().prefetch(vocabularyIRIs);
 		List<ResourceProperty> results = new ArrayList<ResourceProperty>();
 		Iterator<PropertyBuilder> it2 = propertyBuilders.values().iterator();
 		while (it2.hasNext()) {
@@ -232,13 +275,9 @@ public class ResourceDescription {
 	 * Returns a prefix mapping containing all prefixes from the input model
 	 * and from the configuration, with the configuration taking precedence.
 	 */
-	private PrefixMapping getPrefixes() {
+	private PrefixTrie getPrefixes() {
 		if (prefixes == null) {
-			prefixes = new PrefixMappingImpl();
-			prefixes.setNsPrefixes(model);
-			for (String prefix: config.getPrefixes().getNsPrefixMap().keySet()) {
-				prefixes.setNsPrefix(prefix, config.getPrefixes().getNsPrefixURI(prefix));
-			}
+			prefixes = config.getPrefixTrie().withFallback(model);
 		}
 		return prefixes;
 	}
@@ -141,6 +141,21 @@ public abstract class ResourceReader {
 		return false;
 	}
 
+	public int getInt(Property p, int defaultValue) {
+		if (!resource.hasProperty(p)) {
+			return defaultValue;
+		}
+		assertHasOneValue(p);
+		assertLiteralValue(p);
+		Literal value = resource.getProperty(p).getLiteral();
+		try {
+			return Integer.parseInt(value.getLexicalForm().trim());
+		} catch (NumberFormatException ex) {
+			raiseUnexpectedDatatype("xsd:integer", resource.getProperty(p));
+			return 0;
+		}
+	}
+
 	public void requireExactlyOneOf(Property... properties) {
 		Property found = null;
 		boolean first = true;
@@ -0,0 +1,113 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Map1;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/**
+ * A view of a graph with all IRIs rewritten by an {@link IRIRewriter}.
+ * The underlying graph is not copied; its triples are rewritten when they
+ * are iterated over. Rewritten IRIs are remembered, so each IRI is
+ * rewritten only once.
+ *
+ * Triples added to the view are kept separately and don't modify
+ * the underlying graph. Triples cannot be deleted.
+ */
+public class RewrittenGraph extends GraphBase {
+	private final Graph original;
+	private final IRIRewriter rewriter;
+	private final Graph added = Factory.createGraphMem();
+	private final Map<Node, Node> rewrittenNodes = new ConcurrentHashMap<Node, Node>();
+	private final Map1<Triple, Triple> rewriteTriple = new Map1<Triple, Triple>() {
+		public Triple map1(Triple t) {
+			return rewrite(t);
+		}
+	};
+
+	public RewrittenGraph(Graph original, IRIRewriter rewriter) {
+		this.original = original;
+		this.rewriter = rewriter;
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+		Node s = m.getMatchSubject();
+		Node p = m.getMatchPredicate();
+		Node o = m.getMatchObject();
+		ExtendedIterator<Triple> result;
+		if ((s != null && !hasOriginal(s)) || (p != null && !hasOriginal(p)) ||
+				(o != null && !hasOriginal(o))) {
+			// A node that is not in the rewritten graph
+			result = NullIterator.instance();
+		} else {
+			result = original.find(unrewrite(s), unrewrite(p), unrewrite(o))
+					.mapWith(rewriteTriple);
+		}
+		if (added.isEmpty()) return result;
+		return result.andThen(added.find(m.asTriple()));
+	}
+
+	@Override
+	public void performAdd(Triple t) {
+		if (graphBaseContains(t)) return;
+		added.add(t);
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		// Rewriting is 1:1, and added triples are not in the original
+		return original.size() + added.size();
+	}
+
+	@Override
+	public void close() {
+		added.close();
+		super.close();
+	}
+
+	private Triple rewrite(Triple t) {
+		Node s = rewrite(t.getSubject());
+		Node p = rewrite(t.getPredicate());
+		Node o = rewrite(t.getObject());
+		if (s == t.getSubject() && p == t.getPredicate() && o == t.getObject()) {
+			return t;
+		}
+		return Triple.create(s, p, o);
+	}
+
+	private Node rewrite(Node node) {
+		if (!node.isURI() || !rewriter.mayRewrite(node.getURI())) return node;
+		Node result = rewrittenNodes.get(node);
+		if (result == null) {
+			result = NodeFactory.createURI(rewriter.rewrite(node.getURI()));
+			rewrittenNodes.put(node, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if some node of the original graph is
+	 * 		rewritten to this node
+	 */
+	private boolean hasOriginal(Node rewritten) {
+		if (!rewritten.isURI()) return true;
+		String original = rewriter.tryUnrewrite(rewritten.getURI());
+		return original != null && rewriter.rewrite(original).equals(rewritten.getURI());
+	}
+
+	private Node unrewrite(Node rewritten) {
+		if (rewritten == null) return Node.ANY;
+		if (!rewritten.isURI()) return rewritten;
+		return NodeFactory.createURI(rewriter.unrewrite(rewritten.getURI()));
+	}
+}
@@ -1,41 +1,38 @@
 package de.fuberlin.wiwiss.pubby;
 
-import java.util.Iterator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
-import com.hp.hpl.jena.shared.PrefixMapping;
 
 /**
  * Helper class that splits URIs into prefix and local name
- * according to a Jena PrefixMapping.
+ * according to a {@link PrefixTrie}. The longest matching
+ * namespace is used.
  */
 public class URIPrefixer {
+	private final static Pattern LOCAL_NAME_PATTERN = Pattern.compile("([^#/:?]+)[#/:?]*$");
+	
 	private final Resource resource;
 	private final String prefix;
 	private final String localName;
 
-	public URIPrefixer(String uri, PrefixMapping prefixes) {
+	public URIPrefixer(String uri, PrefixTrie prefixes) {
 		this(ResourceFactory.createResource(uri), prefixes);
 	}
 	
-	public URIPrefixer(Resource resource, PrefixMapping prefixes) {
+	public URIPrefixer(Resource resource, PrefixTrie prefixes) {
 		this.resource = resource;
 		String uri = resource.getURI();
-		Iterator<String> it = prefixes.getNsPrefixMap().keySet().iterator();
-		while (it.hasNext() && uri != null) {
-			String entryPrefix = it.next();
-			String entryURI = prefixes.getNsPrefixURI(entryPrefix);
-			if (uri.startsWith(entryURI)) {
-				prefix = entryPrefix;
-				localName = uri.substring(entryURI.length());
-				return;
-			}
+		String namespace = uri == null ? null : prefixes.findNamespace(uri);
+		if (namespace == null) {
+			prefix = null;
+			localName = null;
+		} else {
+			prefix = prefixes.getNsURIPrefix(namespace);
+			localName = uri.substring(namespace.length());
 		}
-		prefix = null;
-		localName = null;
 	}
 	
 	public boolean hasPrefix() {
@@ -49,7 +46,7 @@ public class URIPrefixer {
 	public String getLocalName() {
 		if (resource.isAnon()) return null;
 		if (localName == null) {
-			Matcher matcher = Pattern.compile("([^#/:?]+)[#/:?]*$").matcher(resource.getURI());
+			Matcher matcher = LOCAL_NAME_PATTERN.matcher(resource.getURI());
 			if (matcher.find()) {
 				return matcher.group(1);
 			}
@@ -3,10 +3,10 @@ package de.fuberlin.wiwiss.pubby;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.Model;
@@ -26,9 +26,26 @@ import de.fuberlin.wiwiss.pubby.vocab.CONF;
 /**
  * A store for labels, descriptions and other metadata of classes and
  * properties. Values are retrieved from a {@link DataSource} and
- * cached.
+ * cached. The store is safe for use by concurrent request threads.
  */
 public class VocabularyStore {
+	/**
+	 * Maximum number of IRIs whose values are cached, per kind of value
+	 */
+	public final static int MAX_CACHE_SIZE = 10000;
+
+	/**
+	 * Time after which a cached "no value" answer expires, so that
+	 * values which show up later in the data sources will be found
+	 */
+	public final static long NEGATIVE_TTL_MILLIS = 10 * 60 * 1000;
+
+	/**
+	 * Maximum number of properties that will be remembered as
+	 * high-indegree or high-outdegree properties
+	 */
+	public final static int MAX_HIGH_DEGREE_PROPERTIES = 1000;
+
 	private DataSource dataSource;
 	private String defaultLanguage = "en";
 	
@@ -75,10 +92,10 @@ public class VocabularyStore {
 	 */
 	public Literal getCachedLabel(String iri, boolean preferPlural) {
 		if (preferPlural) {
-			Literal pluralLabel = pluralLabels.getCached(iri, defaultLanguage);
+			Literal pluralLabel = pluralLabels.getIfPresent(iri, defaultLanguage);
 			return pluralLabel == null ? getCachedLabel(iri, false) : pluralLabel;
 		}
-		return labels.getCached(iri, defaultLanguage);
+		return labels.getIfPresent(iri, defaultLanguage);
 	}
 	
 	public Literal getInverseLabel(String iri, boolean preferPlural) {
@@ -116,6 +133,32 @@ public class VocabularyStore {
 		return result == null ? 0 : result.intValue();
 	}
 
+	/**
+	 * Loads labels, descriptions and weights for many IRIs at once,
+	 * using a single {@link DataSource#describeResources(Collection)}
+	 * request for all IRIs that are not yet cached. Intended to be
+	 * called before rendering a page that will need these values.
+	 */
+	public void prefetch(Collection<String> iris) {
+		if (dataSource == null) return;
+		Set<String> missing = new HashSet<String>();
+		for (String iri: iris) {
+			if (missing.contains(iri)) continue;
+			for (ValueCache<?> cache: allValueCaches()) {
+				if (cache.isCached(iri)) continue;
+				if (dataSource.canDescribe(iri)) {
+					missing.add(iri);
+				}
+				break;
+			}
+		}
+		if (missing.isEmpty()) return;
+		Model m = dataSource.describeResources(missing);
+		for (ValueCache<?> cache: allValueCaches()) {
+			cache.addAll(m, missing);
+		}
+	}
+
 	public CachedPropertyCollection getHighIndegreeProperties() {
 		return highIndegreeProperties;
 	}
@@ -124,54 +167,128 @@ public class VocabularyStore {
 		return highOutdegreeProperties;
 	}
 
+	/**
+	 * @return Number of lookups answered from the caches
+	 */
+	public long getCacheHitCount() {
+		long result = 0;
+		for (ValueCache<?> cache: allValueCaches()) {
+			result += cache.cache.getHitCount();
+		}
+		return result;
+	}
+
+	/**
+	 * @return Number of lookups that required a request to the data source
+	 */
+	public long getCacheMissCount() {
+		long result = 0;
+		for (ValueCache<?> cache: allValueCaches()) {
+			result += cache.cache.getMissCount();
+		}
+		return result;
+	}
+
+	/**
+	 * @return Number of cached values dropped because a cache was full
+	 * 		or because they had expired
+	 */
+	public long getCacheEvictionCount() {
+		long result = 0;
+		for (ValueCache<?> cache: allValueCaches()) {
+			result += cache.cache.getEvictionCount();
+		}
+		return result;
+	}
+
+	private ValueCache<?>[] allValueCaches() {
+		return new ValueCache<?>[] {labels, pluralLabels, inverseLabels, 
+				inversePluralLabels, descriptions, weights, inverseWeights};
+	}
+
+	/**
+	 * The properties that are declared to have a given type in the data
+	 * source, plus any properties that have been reported at runtime.
+	 * The collection is loaded on first access, is safe for concurrent
+	 * use, and stops growing at {@link #MAX_HIGH_DEGREE_PROPERTIES}.
+	 */
 	public class CachedPropertyCollection {
 		private final Resource type;
-		private Collection<Property> cache = null;
+		private volatile Set<Property> cache = null;
 		CachedPropertyCollection(Resource type) {
 			this.type = type;
 		}
 		public Collection<Property> get() {
 			if (dataSource == null) return Collections.emptyList();
-			if (cache != null) return cache;
-			cache = new ArrayList<Property>();
-			Model result = dataSource.listPropertyValues(type.getURI(), RDF.type, true);
-			StmtIterator it = result.listStatements(null, RDF.type, type);
-			while (it.hasNext()) {
-				Resource r = it.next().getSubject();
-				if (!r.isURIResource()) continue;
-				cache.add(r.as(Property.class));
+			Set<Property> result = cache;
+			if (result != null) return Collections.unmodifiableSet(result);
+			synchronized (this) {
+				if (cache == null) {
+					cache = load();
+				}
+				return Collections.unmodifiableSet(cache);
 			}
-			return cache;
 		}
 		public void reportAdditional(Property p) {
+			if (dataSource == null) return;
 			if (cache == null) get();
-			if (cache.contains(p)) return;
+			if (cache.size() >= MAX_HIGH_DEGREE_PROPERTIES) return;
 			cache.add(p);
 		}
+		private Set<Property> load() {
+			Set<Property> result = Collections.newSetFromMap(
+					new ConcurrentHashMap<Property, Boolean>());
+			Model m = dataSource.listPropertyValues(type.getURI(), RDF.type, true,
+					0, MAX_HIGH_DEGREE_PROPERTIES);
+			StmtIterator it = m.listStatements(null, RDF.type, type);
+			while (it.hasNext() && result.size() < MAX_HIGH_DEGREE_PROPERTIES) {
+				Resource r = it.next().getSubject();
+				if (!r.isURIResource()) continue;
+				result.add(r.as(Property.class));
+			}
+			return result;
+		}
 	}
 	
 	private abstract class ValueCache<K> {
 		private final Property property;
 		private final boolean inverse;
-		private final Map<String, K> cache = new HashMap<String, K>();
+		private final BoundedCache<String, K> cache = 
+				new BoundedCache<String, K>(MAX_CACHE_SIZE, 0, NEGATIVE_TTL_MILLIS);
 		ValueCache(Property property, boolean inverse) {
 			this.property = property;
 			this.inverse = inverse;
 		}
+		/**
+		 * @return The best value, or <code>null</code> if there is none
+		 */
 		abstract K pickBestValue(Set<RDFNode> candidates);
-		K get(String iri) {
-			if (cache.containsKey(iri)) {
-				return cache.get(iri);
-			}
-			K best = null;
-			if (dataSource.canDescribe(iri)) {
-				best = pickBestFromModel(dataSource.describeResource(iri), iri);
-			}
-			cache.put(iri, best);
-			return best;
+		K get(final String iri) {
+			return cache.get(iri, new Callable<K>() {
+				public K call() {
+					if (!dataSource.canDescribe(iri)) return null;
+					return pickBestFromModel(dataSource.describeResource(iri), iri);
+				}
+			});
+		}
+		K getIfPresent(String iri) {
+			return cache.getIfPresent(iri);
 		}
-		K getCached(String iri) {
-			return cache.get(iri);
+		boolean isCached(String iri) {
+			return cache.containsKey(iri);
+		}
+		/**
+		 * Caches values for the IRIs from a model containing at least
+		 * their outgoing arcs.
+		 */
+		void addAll(Model m, Collection<String> iris) {
+			for (String iri: iris) {
+				if (cache.containsKey(iri)) continue;
+				// Inverse values are attached to other resources that
+				// may not be in the model; leave those for get()
+				if (inverse && m.getResource(iri).hasProperty(OWL.inverseOf)) continue;
+				cache.put(iri, pickBestFromModel(m, iri));
+			}
 		}
 		private K pickBestFromModel(Model m, String iri) {
 			Resource r = m.getResource(iri);
@@ -225,8 +342,8 @@ public class VocabularyStore {
 		Literal get(String iri, String preferredLang) {
 			return getBestMatch(get(iri), preferredLang);
 		}
-		Literal getCached(String iri, String preferredLang) {
-			return getBestMatch(getCached(iri), preferredLang);
+		Literal getIfPresent(String iri, String preferredLang) {
+			return getBestMatch(getIfPresent(iri), preferredLang);
 		}
 		private Literal getBestMatch(Collection<Literal> candidates, String preferredLang) {
 			if (candidates == null) return null;
@@ -264,7 +381,7 @@ public class VocabularyStore {
 					result.add(l);
 				}
 			}
-			return result;
+			return result.isEmpty() ? null : result;
 		}
 	}
 	
@@ -4,9 +4,21 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
+import de.fuberlin.wiwiss.pubby.BoundedCache;
+
+/**
+ * Chooses the best variant for a request, based on its <tt>Accept</tt> and
+ * <tt>User-Agent</tt> headers. Results are cached, as clients tend to send
+ * the same few combinations of headers over and over. The negotiator must
+ * be fully set up before it is used from multiple threads.
+ */
 public class ContentTypeNegotiator {
+	private final static int CACHE_SIZE = 1000;
+	private final BoundedCache<String, MediaRangeSpec> bestMatches =
+			new BoundedCache<String, MediaRangeSpec>(CACHE_SIZE, 0);
 	private List<VariantSpec> variantSpecs = new ArrayList<VariantSpec>();
 	private List<MediaRangeSpec> defaultAcceptRanges = 
 		Collections.singletonList(MediaRangeSpec.parseRange("*/*"));
@@ -16,6 +28,7 @@ public class ContentTypeNegotiator {
 	public VariantSpec addVariant(String mediaType) {
 		VariantSpec result = new VariantSpec(mediaType);
 		variantSpecs.add(result);
+		bestMatches.clear();
 		return result;
 	}
 	
@@ -26,6 +39,7 @@ public class ContentTypeNegotiator {
 	 */
 	public void setDefaultAccept(String accept) {
 		this.defaultAcceptRanges = MediaRangeSpec.parseAccept(accept);
+		bestMatches.clear();
 	}
 	
 	/**
@@ -42,13 +56,24 @@ public class ContentTypeNegotiator {
 			String originalAcceptHeader, String newAcceptHeader) {
 		this.userAgentOverrides.add(new AcceptHeaderOverride(
 				userAgentString, originalAcceptHeader, newAcceptHeader));
+		bestMatches.clear();
 	}
 	
 	public MediaRangeSpec getBestMatch(String accept) {
 		return getBestMatch(accept, null);
 	}
 	
-	public MediaRangeSpec getBestMatch(String accept, String userAgent) {
+	public MediaRangeSpec getBestMatch(final String accept, final String userAgent) {
+		// Header values can't contain line breaks, so the key is unambiguous
+		String key = (accept == null ? "-" : "+" + accept) + "\n" + userAgent;
+		return bestMatches.get(key, new Callable<MediaRangeSpec>() {
+			public MediaRangeSpec call() {
+				return negotiate(accept, userAgent);
+			}
+		});
+	}
+	
+	private MediaRangeSpec negotiate(String accept, String userAgent) {
 		if (userAgent == null) {
 			userAgent = "";
 		}
@@ -83,10 +108,12 @@ public class ContentTypeNegotiator {
 		}
 		public VariantSpec addAliasMediaType(String mediaType) {
 			aliases.add(MediaRangeSpec.parseType(mediaType));
+			bestMatches.clear();
 			return this;
 		}
 		public void makeDefault() {
 			isDefault = true;
+			bestMatches.clear();
 		}
 		public MediaRangeSpec getMediaType() {
 			return type;
@@ -4,34 +4,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * A media type or media range, with parameters and quality value, as used
+ * in HTTP <tt>Accept</tt> headers. The parser is hand-written rather than
+ * regex-based because it runs on every request.
+ */
 public class MediaRangeSpec {
-	private final static Pattern tokenPattern;
-	private final static Pattern parameterPattern;
-	private final static Pattern mediaRangePattern;
-	private final static Pattern qValuePattern;
-	static {
-		// See RFC 2616, section 2.2
-		String token = "[\\x20-\\x7E&&[^()<>@,;:\\\"/\\[\\]?={} ]]+";
-		String quotedString = "\"((?:[\\x20-\\x7E\\n\\r\\t&&[^\"\\\\]]|\\\\[\\x00-\\x7F])*)\"";
-		// See RFC 2616, section 3.6
-		String parameter = ";\\s*(?!q\\s*=)(" + token + ")=(?:(" + token + ")|" + quotedString + ")";
-		// See RFC 2616, section 3.9
-		String qualityValue = "(?:0(?:\\.\\d{0,3})?|1(?:\\.0{0,3})?)";
-		// See RFC 2616, sections 14.1 
-		String quality = ";\\s*q\\s*=\\s*([^;,]*)";
-		// See RFC 2616, section 3.7
-		String regex = "(" + token + ")/(" + token + ")" + 
-				"((?:\\s*" + parameter + ")*)" +
-				"(?:\\s*" + quality + ")?" +
-				"((?:\\s*" + parameter + ")*)";
-		tokenPattern = Pattern.compile(token);
-		parameterPattern = Pattern.compile(parameter);
-		mediaRangePattern = Pattern.compile(regex);
-		qValuePattern = Pattern.compile(qualityValue);
-	}
 
 	/**
 	 * Parses a media type from a string such as <tt>text/html;charset=utf-8;q=0.9</tt>.
@@ -49,58 +28,245 @@ public class MediaRangeSpec {
 	 * Unlike simple media types, media ranges may include wildcards.
 	 */
 	public static MediaRangeSpec parseRange(String mediaRange) {
-		Matcher m = mediaRangePattern.matcher(mediaRange);
-		if (!m.matches()) {
-			return null;
-		}
-		String type = m.group(1).toLowerCase();
-		String subtype = m.group(2).toLowerCase();
-		String unparsedParameters = m.group(3);
-		String qValue = m.group(7);
-		m = parameterPattern.matcher(unparsedParameters);
-		if ("*".equals(type) && !"*".equals(subtype)) {
-			return null;
-		}
-		List<String> parameterNames = new ArrayList<String>();
-		List<String> parameterValues = new ArrayList<String>();
-		while (m.find()) {
-			String name = m.group(1).toLowerCase();
-			String value = (m.group(3) == null) ? m.group(2) : unescape(m.group(3));
-			parameterNames.add(name);
-			parameterValues.add(value);
-		}
-		double quality = 1.0;		
-		if (qValue != null && qValuePattern.matcher(qValue).matches()) {
-			try {
-				quality = Double.parseDouble(qValue);
-			} catch (NumberFormatException ex) {
-				// quality stays at default value
-			}
-		}
-		return new MediaRangeSpec(type, subtype, parameterNames, parameterValues, quality);
+		Parser parser = new Parser(mediaRange);
+		MediaRangeSpec result = parser.parseRange();
+		if (!parser.isAtEnd()) return null;
+		return result;
 	}
 	
 	/**
-	 * Parses an HTTP Accept header into a List of MediaRangeSpecs
+	 * Parses an HTTP Accept header into a List of MediaRangeSpecs.
+	 * Elements that cannot be parsed are skipped, as is anything
+	 * following a valid media range up to the next comma. Media ranges
+	 * separated by semicolons instead of commas are accepted as well.
 	 * @return A List of MediaRangeSpecs 
 	 */
 	public static List<MediaRangeSpec> parseAccept(String s) {
 		List<MediaRangeSpec> result = new ArrayList<MediaRangeSpec>();
-		Matcher m = mediaRangePattern.matcher(s);
-		while (m.find()) {
-			result.add(parseRange(m.group()));
+		Parser parser = new Parser(s);
+		while (true) {
+			parser.skipSeparators();
+			if (parser.isAtEnd()) break;
+			MediaRangeSpec range = parser.parseRange();
+			if (range != null) {
+				result.add(range);
+			}
+			parser.skipToNextSeparator();
 		}
 		return result;
 	}
-	
-	private static String unescape(String s) {
-		return s.replaceAll("\\\\(.)", "$1");
+
+	private static boolean isToken(String s) {
+		if (s.length() == 0) return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (!isTokenChar(s.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	// See RFC 2616, section 2.2
+	private static boolean isTokenChar(char c) {
+		return c > 0x20 && c <= 0x7E && "()<>@,;:\\\"/[]?={}".indexOf(c) == -1;
 	}
 	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+	}
+
+	// See RFC 2616, section 3.9
+	private static boolean isQualityValue(String s) {
+		if (s.length() == 0 || s.length() > 5) return false;
+		char first = s.charAt(0);
+		if (first != '0' && first != '1') return false;
+		if (s.length() == 1) return true;
+		if (s.charAt(1) != '.') return false;
+		for (int i = 2; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (first == '1' ? c != '0' : (c < '0' || c > '9')) return false;
+		}
+		return true;
+	}
+
 	private static String escape(String s) {
-		return s.replaceAll("[\\\\\"]", "\\\\$0");
+		StringBuilder result = new StringBuilder(s.length() + 4);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' || c == '"') {
+				result.append('\\');
+			}
+			result.append(c);
+		}
+		return result.toString();
 	}
-	
+
+	/**
+	 * Reads media ranges from a string. Follows RFC 2616, section 3.7
+	 * and 14.1, with parameters after the quality value being ignored.
+	 */
+	private static class Parser {
+		private final String s;
+		private int pos = 0;
+
+		Parser(String s) {
+			this.s = s;
+		}
+
+		boolean isAtEnd() {
+			return pos == s.length();
+		}
+
+		/**
+		 * Reads the longest valid media range starting at the current position.
+		 * @return The media range, or <code>null</code> if there is none
+		 */
+		MediaRangeSpec parseRange() {
+			String type = parseToken();
+			if (type == null || !consume('/')) return null;
+			String subtype = parseToken();
+			if (subtype == null) return null;
+			type = type.toLowerCase();
+			subtype = subtype.toLowerCase();
+			List<String> parameterNames = new ArrayList<String>();
+			List<String> parameterValues = new ArrayList<String>();
+			double quality = 1.0;
+			boolean hasQuality = false;
+			while (true) {
+				int start = pos;
+				skipWhitespace();
+				if (!consume(';')) {
+					pos = start;
+					break;
+				}
+				skipWhitespace();
+				if (consumeQualityName()) {
+					if (hasQuality) {
+						pos = start;
+						break;
+					}
+					hasQuality = true;
+					quality = parseQuality();
+					continue;
+				}
+				String name = parseToken();
+				String value = null;
+				if (name != null && consume('=')) {
+					value = parseParameterValue();
+				}
+				if (value == null) {
+					pos = start;
+					break;
+				}
+				if (!hasQuality) {
+					parameterNames.add(name.toLowerCase());
+					parameterValues.add(value);
+				}
+			}
+			if ("*".equals(type) && !"*".equals(subtype)) {
+				return null;
+			}
+			return new MediaRangeSpec(type, subtype, parameterNames, parameterValues, quality);
+		}
+
+		void skipSeparators() {
+			while (pos < s.length() && (s.charAt(pos) == ',' || 
+					s.charAt(pos) == ';' || isWhitespace(s.charAt(pos)))) {
+				pos++;
+			}
+		}
+
+		void skipToNextSeparator() {
+			boolean inQuotes = false;
+			while (pos < s.length()) {
+				char c = s.charAt(pos);
+				if ((c == ',' || c == ';') && !inQuotes) return;
+				if (c == '"') {
+					inQuotes = !inQuotes;
+				} else if (c == '\\' && inQuotes) {
+					pos++;
+				}
+				pos++;
+			}
+			pos = s.length();
+		}
+
+		private void skipWhitespace() {
+			while (pos < s.length() && isWhitespace(s.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean consume(char c) {
+			if (pos == s.length() || s.charAt(pos) != c) return false;
+			pos++;
+			return true;
+		}
+
+		private String parseToken() {
+			int start = pos;
+			while (pos < s.length() && isTokenChar(s.charAt(pos))) {
+				pos++;
+			}
+			return pos == start ? null : s.substring(start, pos);
+		}
+
+		/**
+		 * Consumes <tt>q=</tt>, with optional whitespace around the
+		 * equals sign, if present.
+		 */
+		private boolean consumeQualityName() {
+			if (!consume('q')) return false;
+			int afterQ = pos;
+			skipWhitespace();
+			if (consume('=')) {
+				skipWhitespace();
+				return true;
+			}
+			pos = afterQ - 1;
+			return false;
+		}
+
+		/**
+		 * Reads the quality value up to the next parameter or media
+		 * range. Invalid values are read but count as 1.
+		 */
+		private double parseQuality() {
+			int start = pos;
+			while (pos < s.length() && s.charAt(pos) != ';' && s.charAt(pos) != ',') {
+				pos++;
+			}
+			int end = pos;
+			while (end > start && isWhitespace(s.charAt(end - 1))) {
+				end--;
+			}
+			String value = s.substring(start, end);
+			if (!isQualityValue(value)) return 1.0;
+			return Double.parseDouble(value);
+		}
+
+		private String parseParameterValue() {
+			if (!consume('"')) return parseToken();
+			// See RFC 2616, section 2.2
+			StringBuilder result = new StringBuilder();
+			int start = pos - 1;
+			while (pos < s.length()) {
+				char c = s.charAt(pos);
+				pos++;
+				if (c == '"') return result.toString();
+				if (c == '\\') {
+					if (pos == s.length() || s.charAt(pos) > 0x7F) break;
+					result.append(s.charAt(pos));
+					pos++;
+				} else if ((c >= 0x20 && c <= 0x7E) || c == '\n' || c == '\r' || c == '\t') {
+					result.append(c);
+				} else {
+					break;
+				}
+			}
+			pos = start;
+			return null;
+		}
+	}
+
 	private final String type;
 	private final String subtype;
 	private final List<String> parameterNames;
@@ -120,7 +286,7 @@ public class MediaRangeSpec {
 	}
 	
 	private String buildMediaType() {
-		StringBuffer result = new StringBuffer();
+		StringBuilder result = new StringBuilder();
 		result.append(type);
 		result.append("/");
 		result.append(subtype);
@@ -129,7 +295,7 @@ public class MediaRangeSpec {
 			result.append(parameterNames.get(i));
 			result.append("=");
 			String value = (String) parameterValues.get(i);
-			if (tokenPattern.matcher(value).matches()) {
+			if (isToken(value)) {
 				result.append(value);
 			} else {
 				result.append("\"");
@@ -1,8 +1,12 @@
 package de.fuberlin.wiwiss.pubby.servlets;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -22,6 +26,7 @@ import de.fuberlin.wiwiss.pubby.Dataset;
 import de.fuberlin.wiwiss.pubby.HypermediaControls;
 import de.fuberlin.wiwiss.pubby.MetadataConfiguration;
 import de.fuberlin.wiwiss.pubby.ModelUtil;
+import de.fuberlin.wiwiss.pubby.sources.QueryRecord;
 
 /**
  * An abstract base servlet for servlets that manage a namespace of resources.
@@ -44,7 +49,7 @@ public abstract class BaseServlet extends HttpServlet {
 	
 	// TODO: This should be somewhere else, doesn't fit here
 	protected void addDocumentMetadata(Model model, HypermediaControls controller,
-			String documentURL, String title) {
+			String documentURL, String title, List<QueryRecord> queries) {
 		ModelUtil.addNSIfUndefined(model, "foaf", FOAF.getURI());
 		ModelUtil.addNSIfUndefined(model, "rdfs", RDFS.getURI());
 
@@ -58,18 +63,20 @@ public abstract class BaseServlet extends HttpServlet {
 		for (Dataset dataset: config.getDatasets()) {
 			MetadataConfiguration metadata = dataset.getMetadataConfiguration();
 			metadata.addCustomMetadata(model, document);
-			metadata.addMetadataFromTemplate(model, controller);
+			metadata.addMetadataFromTemplate(model, controller, queries);
 		}
 	}
 
 	// TODO: This should be somewhere else, doesn't fit here
 	protected void addPageMetadata(Context context, 
-			HypermediaControls controller, PrefixMapping prefixes) {
+			HypermediaControls controller, PrefixMapping prefixes,
+			List<QueryRecord> queries) {
 		try {
 			Model metadataModel = ModelFactory.createDefaultModel();
 			for (Dataset dataset: config.getDatasets()) {
 				MetadataConfiguration metadata = dataset.getMetadataConfiguration();
-				Resource document = metadata.addMetadataFromTemplate(metadataModel, controller);
+				Resource document = metadata.addMetadataFromTemplate(
+						metadataModel, controller, queries);
 				// Replaced the commented line by the following one because the
 				// RDF graph we want to talk about is a specific representation
 				// of the data identified by the getDataURL() URI.
@@ -88,18 +95,114 @@ public abstract class BaseServlet extends HttpServlet {
 		}
 	}
 	
+	/**
+	 * Checks whether the client already has the current version of a
+	 * response that depends on the given models, and sends 304 if so.
+	 * If the data has a version (see {@link Configuration#getDataVersion()}),
+	 * then the entity tag is computed from the version. Otherwise, it is
+	 * computed from the contents of the models. Must only be called once
+	 * the resource is known to exist, as <code>If-None-Match: *</code>
+	 * matches any entity tag.
+	 * 
+	 * @param conditional The conditional GET for the response
+	 * @param variant Distinguishes different representations from the same URL
+	 * @param models The data that the response is built from
+	 * @return <code>true</code> if a 304 has been sent
+	 */
+	protected boolean isNotModified(ConditionalGet conditional, String variant, 
+			Model... models) {
+		String version = config.getDataVersion();
+		if (version != null) {
+			return conditional.isNotModified(
+					ConditionalGet.createETag(version, variant), 
+					config.getDataLastModified());
+		}
+		if (models.length == 0) return false;
+		String[] parts = new String[models.length + 1];
+		parts[0] = variant;
+		for (int i = 0; i < models.length; i++) {
+			parts[i + 1] = ConditionalGet.hash(models[i]);
+		}
+		return conditional.isNotModified(ConditionalGet.createETag(parts), -1);
+	}
+	
 	protected abstract boolean doGet(
 			String relativeURI,
 			HttpServletRequest request,
 			HttpServletResponse response,
 			Configuration config) throws IOException, ServletException;
 	
+	/**
+	 * Servlets that wait for data sources return <code>true</code>. If a
+	 * request executor is configured (see
+	 * {@link Configuration#getRequestExecutor()}), their requests are
+	 * handled asynchronously on its threads, so that the container's
+	 * thread is released while waiting.
+	 */
+	protected boolean isBlocking() {
+		return false;
+	}
+	
 	public void doGet(HttpServletRequest request,
 			HttpServletResponse response) throws IOException, ServletException {
 		if (initError != null) {
 			sendInitialization500(response, initError);
 			return;
 		}
+		// HEAD is handled synchronously, because HttpServlet.doHead()
+		// finishes the response as soon as this method returns
+		if (!isBlocking() || config.getRequestExecutor() == null || 
+				!request.isAsyncSupported() || !"GET".equals(request.getMethod())) {
+			handle(request, response);
+			return;
+		}
+		final AsyncContext async = request.startAsync();
+		// Data sources have their own timeouts
+		async.setTimeout(0);
+		FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+			public void run() {
+				HttpServletRequest request = (HttpServletRequest) async.getRequest();
+				HttpServletResponse response = (HttpServletResponse) async.getResponse();
+				try {
+					handle(request, response);
+				} catch (Exception ex) {
+					// No container thread to report it to
+					getServletContext().log("Error handling " + request.getRequestURI(), ex);
+					if (!response.isCommitted()) {
+						try {
+							response.sendError(500);
+						} catch (IOException ignore) {
+							// Client is gone
+						}
+					}
+				} finally {
+					async.complete();
+				}
+			}
+		}, null) {
+			@Override
+			protected void done() {
+				// Cancelled before it ran, because the executor was shut down
+				if (!isCancelled()) return;
+				try {
+					((HttpServletResponse) async.getResponse()).sendError(503);
+				} catch (IOException ignore) {
+					// Client is gone
+				} finally {
+					async.complete();
+				}
+			}
+		};
+		try {
+			config.getRequestExecutor().execute(task);
+		} catch (RejectedExecutionException ex) {
+			// All threads busy and queue full; fall back to this thread
+			task.run();
+		}
+	}
+	
+	private void handle(HttpServletRequest request,
+			HttpServletResponse response) throws IOException, ServletException {
 		String relativeURI = request.getRequestURI().substring(
 				request.getContextPath().length() + request.getServletPath().length());
 		// Some servlet containers keep the leading slash, some don't
@@ -0,0 +1,144 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An output stream for a servlet response body that is gzip-compressed
+ * if the client accepts it. Small responses are sent uncompressed,
+ * because compression doesn't pay off for them. To find out, the
+ * first bytes are held back until the threshold is reached; after
+ * that, the output is compressed as it is written.
+ *
+ * The stream must be closed to complete the response.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+	/**
+	 * Responses smaller than this are not compressed
+	 */
+	public final static int DEFAULT_THRESHOLD = 1024;
+
+	private final static int GZIP_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Returns a stream for writing the response body. It compresses
+	 * the output if the request's <tt>Accept-Encoding</tt> header allows
+	 * it. Also adds the <tt>Vary</tt> header to the response.
+	 */
+	public static OutputStream create(HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		response.addHeader("Vary", "Accept-Encoding");
+		if (!acceptsGzip(request.getHeader("Accept-Encoding"))) {
+			return response.getOutputStream();
+		}
+		return new CompressingOutputStream(response, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Checks an <tt>Accept-Encoding</tt> header value for gzip
+	 * with a non-zero quality.
+	 */
+	public static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) return false;
+		boolean wildcardAccepted = false;
+		for (String coding: acceptEncoding.split(",")) {
+			String name = coding;
+			double q = 1;
+			int semicolon = coding.indexOf(';');
+			if (semicolon != -1) {
+				name = coding.substring(0, semicolon);
+				q = getQuality(coding.substring(semicolon + 1));
+			}
+			name = name.trim().toLowerCase();
+			if ("gzip".equals(name) || "x-gzip".equals(name)) {
+				return q > 0;
+			}
+			if ("*".equals(name)) {
+				wildcardAccepted = q > 0;
+			}
+		}
+		return wildcardAccepted;
+	}
+
+	private static double getQuality(String params) {
+		for (String param: params.split(";")) {
+			param = param.trim();
+			if (!param.startsWith("q=") && !param.startsWith("Q=")) continue;
+			try {
+				return Double.parseDouble(param.substring(2).trim());
+			} catch (NumberFormatException ex) {
+				return 0;
+			}
+		}
+		return 1;
+	}
+
+	private final HttpServletResponse response;
+	private final byte[] buffer;
+	private int count = 0;
+	private OutputStream out = null;
+	private boolean closed = false;
+
+	public CompressingOutputStream(HttpServletResponse response, int threshold) {
+		this.response = response;
+		this.buffer = new byte[threshold];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (out == null && count < buffer.length) {
+			buffer[count++] = (byte) b;
+			return;
+		}
+		startCompressing();
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (out == null && count + len <= buffer.length) {
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+			return;
+		}
+		startCompressing();
+		out.write(b, off, len);
+	}
+
+	/**
+	 * Has no effect while output is still held back, because it would
+	 * commit the response before we know whether to compress.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		if (out == null) {
+			// Below threshold; send as is
+			OutputStream raw = response.getOutputStream();
+			raw.write(buffer, 0, count);
+			raw.close();
+		} else {
+			out.close();
+		}
+	}
+
+	private void startCompressing() throws IOException {
+		if (out != null) return;
+		response.setHeader("Content-Encoding", "gzip");
+		out = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE);
+		out.write(buffer, 0, count);
+	}
+}
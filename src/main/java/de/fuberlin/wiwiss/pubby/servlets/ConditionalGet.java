@@ -0,0 +1,163 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Supports HTTP conditional GET for a single response. Checks the
+ * request's <tt>If-None-Match</tt> and <tt>If-Modified-Since</tt>
+ * headers against the current entity tag and modification date,
+ * and sets the <tt>ETag</tt>, <tt>Last-Modified</tt> and
+ * <tt>Cache-Control</tt> response headers.
+ *
+ * Entity tags are weak, because the same data may be serialized
+ * differently from one response to the next.
+ */
+public class ConditionalGet {
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final int maxAgeSeconds;
+	private String etag = null;
+	private long lastModified = -1;
+
+	/**
+	 * @param maxAgeSeconds Number of seconds that caches may use the response
+	 * 		without revalidation; 0 means they must always revalidate
+	 */
+	public ConditionalGet(HttpServletRequest request,
+			HttpServletResponse response, int maxAgeSeconds) {
+		this.request = request;
+		this.response = response;
+		this.maxAgeSeconds = maxAgeSeconds;
+	}
+
+	/**
+	 * Checks whether the client already has the current version of the
+	 * response. If so, a 304 response is sent.
+	 *
+	 * @param etag The entity tag of the current version
+	 * @param lastModified Modification date in milliseconds, or -1 if unknown
+	 * @return <code>true</code> if a 304 was sent and nothing else needs to be done
+	 */
+	public boolean isNotModified(String etag, long lastModified) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		boolean notModified;
+		if (ifNoneMatch != null) {
+			// If-Modified-Since must be ignored if If-None-Match is present
+			notModified = matchesAny(ifNoneMatch);
+		} else {
+			notModified = isUnmodifiedSince(getIfModifiedSince());
+		}
+		if (!notModified) return false;
+		setHeaders();
+		// A full response would have been compressed if possible
+		response.addHeader("Vary", "Accept-Encoding");
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		return true;
+	}
+
+	/**
+	 * Sets the caching headers for a full response. Must be called
+	 * before the response body is written.
+	 */
+	public void setHeaders() {
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+		}
+		if (lastModified >= 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		response.setHeader("Cache-Control",
+				maxAgeSeconds > 0 ? "max-age=" + maxAgeSeconds : "no-cache");
+	}
+
+	private boolean matchesAny(String ifNoneMatch) {
+		if (etag == null) return false;
+		String opaqueTag = stripWeakness(etag);
+		for (String candidate: ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if ("*".equals(candidate)) return true;
+			// Weak comparison, as required for GET
+			if (opaqueTag.equals(stripWeakness(candidate))) return true;
+		}
+		return false;
+	}
+
+	private long getIfModifiedSince() {
+		try {
+			return request.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException ex) {
+			// Not a valid date
+			return -1;
+		}
+	}
+
+	private boolean isUnmodifiedSince(long date) {
+		if (date < 0 || lastModified < 0) return false;
+		// HTTP dates have a resolution of one second
+		return lastModified / 1000 <= date / 1000;
+	}
+
+	private static String stripWeakness(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * Creates a weak entity tag from one or more strings that together
+	 * identify a version of a response.
+	 */
+	public static String createETag(String... parts) {
+		long hash = FNV_OFFSET_BASIS;
+		for (String part: parts) {
+			hash = hash(hash, part == null ? "" : part);
+			hash = hash(hash, "\u0000");
+		}
+		return "W/\"" + Long.toHexString(hash) + "\"";
+	}
+
+	/**
+	 * Computes a hash of the statements of a model, independently of
+	 * statement order. Blank node labels are ignored because they may
+	 * differ each time the data is retrieved.
+	 */
+	public static String hash(Model model) {
+		long result = 0;
+		ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+		try {
+			while (it.hasNext()) {
+				Triple t = it.next();
+				long h = FNV_OFFSET_BASIS;
+				h = hash(h, t.getSubject());
+				h = hash(h, t.getPredicate());
+				h = hash(h, t.getObject());
+				result += h;
+			}
+		} finally {
+			it.close();
+		}
+		return Long.toHexString(result);
+	}
+
+	private static long hash(long hash, Node node) {
+		return hash(hash, node.isBlank() ? "_:" : node.toString(null, true));
+	}
+
+	// 64-bit FNV-1a
+	private final static long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private final static long FNV_PRIME = 0x100000001b3L;
+
+	private static long hash(long hash, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			hash ^= s.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
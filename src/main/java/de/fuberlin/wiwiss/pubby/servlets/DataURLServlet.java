@@ -22,6 +22,11 @@ import de.fuberlin.wiwiss.pubby.ResourceDescription;
  */
 public class DataURLServlet extends BaseServlet {
 	
+	@Override
+	protected boolean isBlocking() {
+		return true;
+	}
+
 	@Override
 	protected boolean doGet(String relativeURI,
 			HttpServletRequest request, 
@@ -29,6 +34,11 @@ public class DataURLServlet extends BaseServlet {
 			Configuration config) throws IOException {
 		HypermediaControls controller = config.getControls(relativeURI, false);
 
+		ModelResponse server = new ModelResponse(request, response,
+				config.prettyPrintRDF());
+		ConditionalGet conditional = controller == null ? null : new ConditionalGet(
+				request, response, config.getCacheMaxAge(controller.getAbsoluteIRI()));
+		
 		ResourceDescription description = controller == null ? 
 				null : controller.getResourceDescription();
 		// Check if resource exists in dataset
@@ -39,15 +49,19 @@ public class DataURLServlet extends BaseServlet {
 			return true;
 		}
 		Model model = description.getModel();
+		if (isNotModified(conditional, server.getMediaType(), model)) {
+			return true;
+		}
 		
 		addHighDegreePropertyLinks(model, controller);
 		
 		addDocumentMetadata(model, controller, 
 				addQueryString(controller.getDataURL(), request),
-				"RDF description of " + description.getTitle());
+				"RDF description of " + description.getTitle(),
+				description.getQueries());
 		
-		ModelResponse server = new ModelResponse(model, request, response);
-		server.serve();
+		conditional.setHeaders();
+		server.serve(model);
 		return true;
 	}
 	
@@ -17,6 +17,11 @@ import de.fuberlin.wiwiss.pubby.ResourceDescription;
  */
 public class PageURLServlet extends BaseServlet {
 
+	@Override
+	protected boolean isBlocking() {
+		return true;
+	}
+
 	public boolean doGet(String relativeURI,
 			HttpServletRequest request,
 			HttpServletResponse response,
@@ -24,10 +29,13 @@ public class PageURLServlet extends BaseServlet {
 
 		HypermediaControls controller = config.getControls(relativeURI, false);
 		if (controller == null) return false;
+		ConditionalGet conditional = new ConditionalGet(request, response, 
+				config.getCacheMaxAge(controller.getAbsoluteIRI()));
 		ResourceDescription description = controller.getResourceDescription();
 		if (description == null) return false;
+		if (isNotModified(conditional, "page", description.getModel())) return true;
 		
-		VelocityHelper template = new VelocityHelper(getServletContext(), response);
+		VelocityHelper template = new VelocityHelper(getServletContext(), request, response);
 		Context context = template.getVelocityContext();
 		context.put("project_name", config.getProjectName());
 		context.put("project_link", config.getProjectLink());
@@ -40,8 +48,10 @@ public class PageURLServlet extends BaseServlet {
 		context.put("properties", description.getProperties());
 		context.put("showLabels", config.showLabels());
 
-		addPageMetadata(context, controller, description.getModel());
+		addPageMetadata(context, controller, description.getModel(),
+				description.getQueries());
 	
+		conditional.setHeaders();
 		template.renderXHTML("page.vm");
 		return true;
 	}
@@ -3,6 +3,7 @@ package de.fuberlin.wiwiss.pubby.servlets;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Vector;
 
 import javax.servlet.http.HttpServletRequest;
@@ -77,7 +78,6 @@ public class RequestParamHandler {
 		return null;
 	}
 	
-	@SuppressWarnings("rawtypes")	// The API uses raw types
 	private class WrappedRequest extends HttpServletRequestWrapper {
 		WrappedRequest() {
 			super(request);
@@ -91,28 +91,31 @@ public class RequestParamHandler {
 			return super.getHeader(name);
 		}
 		@Override
-		public Enumeration getHeaderNames() {
-			final Enumeration realHeaders = super.getHeaderNames();
-			return new Enumeration() {
+		public Enumeration<String> getHeaderNames() {
+			final Enumeration<String> realHeaders = super.getHeaderNames();
+			return new Enumeration<String>() {
 				private String prefetched = null;
 				public boolean hasMoreElements() {
 					while (prefetched == null && realHeaders.hasMoreElements()) {
-						String next = (String) realHeaders.nextElement();
+						String next = realHeaders.nextElement();
 						if (!"accept".equals(next.toLowerCase())) {
 							prefetched = next;
 						}
 					}
 					return (prefetched != null);
 				}
-				public Object nextElement() {
-					return prefetched;
+				public String nextElement() {
+					if (!hasMoreElements()) throw new NoSuchElementException();
+					String result = prefetched;
+					prefetched = null;
+					return result;
 				}
 			};
 		}
 		@Override
-		public Enumeration getHeaders(String name) {
+		public Enumeration<String> getHeaders(String name) {
 			if ("accept".equals(name.toLowerCase())) {
-				Vector<Object> v = new Vector<Object>();
+				Vector<String> v = new Vector<String>();
 				v.add(getHeader(name));
 				return v.elements();
 			}
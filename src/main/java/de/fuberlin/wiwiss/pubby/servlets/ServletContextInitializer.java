@@ -22,6 +22,8 @@ public class ServletContextInitializer implements ServletContextListener {
 	@Override
 	public void contextInitialized(ServletContextEvent sce) {
 		ServletContext context = sce.getServletContext();
+		// Needed even if the configuration fails, for the error page
+		VelocityHelper.initVelocityEngine(context);
 		try {
 			String configFileName = context.getInitParameter("config-file");
 			if (configFileName == null) {
@@ -48,7 +50,10 @@ public class ServletContextInitializer implements ServletContextListener {
 
 	@Override
 	public void contextDestroyed(ServletContextEvent sce) {
-		// Do nothing special.
+		Object conf = sce.getServletContext().getAttribute(SERVER_CONFIGURATION);
+		if (conf instanceof Configuration) {
+			((Configuration) conf).shutdown();
+		}
 	}
 	
 	private void log(Exception ex, ServletContext context) {
@@ -7,13 +7,17 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
 
 import de.fuberlin.wiwiss.pubby.Configuration;
 import de.fuberlin.wiwiss.pubby.HypermediaControls;
 import de.fuberlin.wiwiss.pubby.IRIEncoder;
+import de.fuberlin.wiwiss.pubby.ModelUtil;
 import de.fuberlin.wiwiss.pubby.PubbyIRIEscaper;
+import de.fuberlin.wiwiss.pubby.sources.DataSource;
 
 /**
  * Abstract base servlet for servlets that handle a property of a given
@@ -21,11 +25,21 @@ import de.fuberlin.wiwiss.pubby.PubbyIRIEscaper;
  * and the property's URI from the requested URL, and mapping everything to
  * the data sources. Concrete subclasses then take care of generating the
  * response.
+ * 
+ * Values are listed a page at a time. The page is selected with the
+ * <tt>offset</tt> and <tt>limit</tt> query parameters; the limit is
+ * capped at {@link DataSource#MAX_VALUES_PAGE_SIZE}. A page past the
+ * last value is empty rather than missing.
  */
 public abstract class ValuesBaseServlet extends BaseServlet {
 	private static Pattern prefixedNamePattern = Pattern.compile("(-?)([^!:/]*):([^:/]*)/(.*)");
 	private static Pattern fullIRIPattern = Pattern.compile("(-?)!(.*?)///(.*)");
 
+	@Override
+	protected boolean isBlocking() {
+		return true;
+	}
+
 	public abstract boolean doGet(HypermediaControls controller,
 			Property property, boolean isInverse,
 			HttpServletRequest request,
@@ -67,5 +81,97 @@ public abstract class ValuesBaseServlet extends BaseServlet {
 		return doGet(controller, property, isInverse, request, response, config);
 	}
 
+	/**
+	 * @return Number of values to skip, from the <tt>offset</tt> parameter
+	 */
+	protected int getOffset(HttpServletRequest request) {
+		return Math.max(0, getIntParameter(request, "offset", 0));
+	}
+
+	/**
+	 * @return Number of values on the page, from the <tt>limit</tt> parameter
+	 */
+	protected int getLimit(HttpServletRequest request) {
+		int limit = getIntParameter(request, "limit", DataSource.DEFAULT_VALUES_PAGE_SIZE);
+		return Math.max(1, Math.min(limit, DataSource.MAX_VALUES_PAGE_SIZE));
+	}
+
+	/**
+	 * Lists a page of values, plus the first value of the next page if
+	 * there is one. The extra value is removed by
+	 * {@link #trimPage(Model, HypermediaControls, Property, boolean, int)}.
+	 */
+	protected Model listPropertyValues(Configuration config,
+			HypermediaControls controller, Property property, boolean isInverse,
+			int offset, int limit) {
+		return config.getDataSource().listPropertyValues(
+				controller.getAbsoluteIRI(), property, isInverse, offset, limit + 1);
+	}
+
+	/**
+	 * A page has a successor if the data source returned more values
+	 * than the limit.
+	 */
+	protected boolean hasNextPage(Model values, HypermediaControls controller,
+			Property property, boolean isInverse, int limit) {
+		return ModelUtil.listValues(values, values.getResource(
+				controller.getAbsoluteIRI()), property, isInverse).size() > limit;
+	}
+
+	/**
+	 * @return A copy of the values with only the first <code>limit</code>
+	 * 		values
+	 */
+	protected Model trimPage(Model values, HypermediaControls controller,
+			Property property, boolean isInverse, int limit) {
+		Model result = ModelFactory.createDefaultModel();
+		result.setNsPrefixes(values);
+		result.add(values);
+		ModelUtil.sliceValues(result, result.getResource(
+				controller.getAbsoluteIRI()), property, isInverse, 0, limit);
+		return result;
+	}
+
+	/**
+	 * @return The URL of another page of values, with the offset and
+	 * 		limit appended to any existing query string
+	 */
+	protected String getPageURL(String url, int offset, int limit) {
+		StringBuilder result = new StringBuilder(url);
+		char separator = url.indexOf('?') == -1 ? '?' : '&';
+		if (offset > 0) {
+			result.append(separator).append("offset=").append(offset);
+			separator = '&';
+		}
+		if (limit != DataSource.DEFAULT_VALUES_PAGE_SIZE) {
+			result.append(separator).append("limit=").append(limit);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Adds HTTP <tt>Link</tt> headers for the next and previous pages.
+	 * Either may be <code>null</code>.
+	 */
+	protected void setPageLinkHeaders(HttpServletResponse response,
+			String nextPageURL, String previousPageURL) {
+		if (nextPageURL != null) {
+			response.addHeader("Link", "<" + nextPageURL + ">; rel=\"next\"");
+		}
+		if (previousPageURL != null) {
+			response.addHeader("Link", "<" + previousPageURL + ">; rel=\"prev\"");
+		}
+	}
+
+	private int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+		String value = request.getParameter(name);
+		if (value == null) return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException ex) {
+			return defaultValue;
+		}
+	}
+
 	private static final long serialVersionUID = 7393467141233996715L;
 }
\ No newline at end of file
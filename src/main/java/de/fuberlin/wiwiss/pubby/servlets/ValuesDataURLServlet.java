@@ -12,6 +12,7 @@ import de.fuberlin.wiwiss.pubby.HypermediaControls;
 import de.fuberlin.wiwiss.pubby.ModelResponse;
 import de.fuberlin.wiwiss.pubby.ResourceDescription;
 import de.fuberlin.wiwiss.pubby.ResourceDescription.ResourceProperty;
+import de.fuberlin.wiwiss.pubby.vocab.XHV;
 
 /**
  * A servlet for serving an RDF document describing resources
@@ -28,26 +29,64 @@ public class ValuesDataURLServlet extends ValuesBaseServlet {
 		// TODO: If no data ("return false"), respond with plain text like the PageURLServlet, not with HTML
 		
 		// TODO: Good bit of duplication with ValuesURLServlet here
+		ModelResponse server = new ModelResponse(request, response, 
+				config.prettyPrintRDF());
+		ConditionalGet conditional = new ConditionalGet(request, response, 
+				config.getCacheMaxAge(controller.getAbsoluteIRI()));
 		ResourceDescription resource = controller.getResourceDescription();
 		if (resource == null) return false;
 
-		Model descriptions = config.getDataSource().listPropertyValues(
-				controller.getAbsoluteIRI(), predicate, isInverse);
-		if (descriptions.isEmpty()) return false;
-		ResourceProperty property = new ResourceDescription(
-				controller, descriptions, config).getProperty(predicate, isInverse);
+		int offset = getOffset(request);
+		int limit = getLimit(request);
+		Model descriptions = listPropertyValues(
+				config, controller, predicate, isInverse, offset, limit);
+		boolean hasNextPage = hasNextPage(
+				descriptions, controller, predicate, isInverse, limit);
+		if (hasNextPage) {
+			descriptions = trimPage(descriptions, controller, predicate, isInverse, limit);
+		}
+		// Past the last value, the page is empty but still exists
+		boolean isEmptyPage = descriptions.isEmpty();
+		if (isEmptyPage && offset == 0) return false;
+		if (isNotModified(conditional, server.getMediaType(), 
+				resource.getModel(), descriptions)) {
+			return true;
+		}
+		// The description's model is a view that we can add metadata to
+		ResourceDescription description = new ResourceDescription(
+				controller, descriptions, config);
+		descriptions = description.getModel();
+		ResourceProperty property = isEmptyPage
+				? description.createEmptyProperty(predicate, isInverse)
+				: description.getProperty(predicate, isInverse);
 		if (property == null) return false;	// Can happen if prefix is declared in URI space of a data source rather than in web space
 
-		addDocumentMetadata(descriptions, controller, 
-				addQueryString(
-						isInverse 
-								? controller.getInverseValuesDataURL(predicate) 
-								: controller.getValuesDataURL(predicate),
-						request),
+		String dataURL = addQueryString(
+				isInverse 
+						? controller.getInverseValuesDataURL(predicate) 
+						: controller.getValuesDataURL(predicate),
+				request);
+		String documentURL = getPageURL(dataURL, offset, limit);
+		addDocumentMetadata(descriptions, controller, documentURL,
 				getDocumentTitle(
-						resource.getTitle(), property.getCompleteLabel(), isInverse));
+						resource.getTitle(), property.getCompleteLabel(), isInverse),
+				resource.getQueries());
+		String nextPageURL = null;
+		if (hasNextPage) {
+			nextPageURL = getPageURL(dataURL, offset + limit, limit);
+			descriptions.getResource(documentURL).addProperty(XHV.next,
+					descriptions.getResource(nextPageURL));
+		}
+		String previousPageURL = null;
+		if (offset > 0) {
+			previousPageURL = getPageURL(dataURL, Math.max(0, offset - limit), limit);
+			descriptions.getResource(documentURL).addProperty(XHV.prev,
+					descriptions.getResource(previousPageURL));
+		}
 		
-		new ModelResponse(descriptions, request, response).serve();
+		conditional.setHeaders();
+		setPageLinkHeaders(response, nextPageURL, previousPageURL);
+		server.serve(descriptions);
 		return true;
 	}
 
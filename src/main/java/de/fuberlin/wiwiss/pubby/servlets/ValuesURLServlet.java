@@ -27,17 +27,45 @@ public class ValuesURLServlet extends ValuesBaseServlet {
 			HttpServletRequest request,
 			HttpServletResponse response,
 			Configuration config) throws IOException {		
+		ConditionalGet conditional = new ConditionalGet(request, response, 
+				config.getCacheMaxAge(controller.getAbsoluteIRI()));
 		ResourceDescription resource = controller.getResourceDescription();
 		if (resource == null) return false;
 
-		Model descriptions = config.getDataSource().listPropertyValues(
-				controller.getAbsoluteIRI(), predicate, isInverse);
-		if (descriptions.isEmpty()) return false;
-		ResourceProperty property = new ResourceDescription(
-				controller, descriptions, config).getProperty(predicate, isInverse);
+		int offset = getOffset(request);
+		int limit = getLimit(request);
+		Model descriptions = listPropertyValues(
+				config, controller, predicate, isInverse, offset, limit);
+		boolean hasNextPage = hasNextPage(
+				descriptions, controller, predicate, isInverse, limit);
+		if (hasNextPage) {
+			descriptions = trimPage(descriptions, controller, predicate, isInverse, limit);
+		}
+		// Past the last value, the page is empty but still exists
+		boolean isEmptyPage = descriptions.isEmpty();
+		if (isEmptyPage && offset == 0) return false;
+		if (isNotModified(conditional, "values", resource.getModel(), descriptions)) {
+			return true;
+		}
+		ResourceDescription description = new ResourceDescription(
+				controller, descriptions, config);
+		ResourceProperty property = isEmptyPage
+				? description.createEmptyProperty(predicate, isInverse)
+				: description.getProperty(predicate, isInverse);
 		if (property == null) return false;	// Can happen if prefix is declared in URI space of a data source rather than in web space
+
+		String pageURL = isInverse 
+				? controller.getInverseValuesPageURL(predicate) 
+				: controller.getValuesPageURL(predicate);
+		String dataURL = isInverse 
+				? controller.getInverseValuesDataURL(predicate) 
+				: controller.getValuesDataURL(predicate);
+		String nextPageURL = hasNextPage
+				? getPageURL(pageURL, offset + limit, limit) : null;
+		String previousPageURL = offset > 0
+				? getPageURL(pageURL, Math.max(0, offset - limit), limit) : null;
 		
-		VelocityHelper template = new VelocityHelper(getServletContext(), response);
+		VelocityHelper template = new VelocityHelper(getServletContext(), request, response);
 		Context context = template.getVelocityContext();
 		context.put("project_name", config.getProjectName());
 		context.put("project_link", config.getProjectLink());
@@ -48,11 +76,20 @@ public class ValuesURLServlet extends ValuesBaseServlet {
 		context.put("property", property);
 		context.put("back_uri", controller.getBrowsableURL());
 		context.put("back_label", resource.getTitle());
-		context.put("rdf_link", isInverse ? controller.getInverseValuesDataURL(predicate) : controller.getValuesDataURL(predicate));
+		context.put("rdf_link", getPageURL(dataURL, offset, limit));
+		if (nextPageURL != null) {
+			context.put("next_page_link", nextPageURL);
+		}
+		if (previousPageURL != null) {
+			context.put("previous_page_link", previousPageURL);
+		}
 		context.put("showLabels", config.showLabels());
 
-		addPageMetadata(context, controller, resource.getModel());
+		addPageMetadata(context, controller, resource.getModel(),
+				resource.getQueries());
 		
+		conditional.setHeaders();
+		setPageLinkHeaders(response, nextPageURL, previousPageURL);
 		template.renderXHTML("valuespage.vm");
 		return true;
 	}
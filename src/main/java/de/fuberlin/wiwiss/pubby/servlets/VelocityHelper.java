@@ -1,10 +1,15 @@
 package de.fuberlin.wiwiss.pubby.servlets;
 
+import java.io.BufferedWriter;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.app.event.implement.EscapeXmlReference;
@@ -16,17 +21,60 @@ import org.apache.velocity.context.Context;
  * VelocityEngine instance, its storage in the servlet
  * context, and the rendering of templates into the
  * servlet response output stream.
+ * 
+ * The engine is created when the web application starts (see
+ * {@link #initVelocityEngine(ServletContext)}), and the main templates
+ * are parsed at that point. Templates are never reloaded.
  */
 public class VelocityHelper {
 	private final static String VELOCITY_ENGINE = 
 		VelocityHelper.class.getName() + ".VELOCITY_ENGINE";
 	
-	private final ServletContext servletContext;
+	/**
+	 * Templates that are parsed on startup. Templates included with
+	 * <tt>#parse</tt> are only parsed when first rendered, so they
+	 * are listed here as well.
+	 */
+	private final static String[] PRELOADED_TEMPLATES = {
+		"page.vm", "valuespage.vm", "404.vm", "500init.vm",
+		"header.vm", "footer.vm", "proptable.vm", "values.vm",
+		"property-name.vm", "metadatatable.vm"
+	};
+	
+	private final static int BUFFER_SIZE = 8 * 1024;
+	
+	/**
+	 * Creates the Velocity engine, loads the templates, and stores the
+	 * engine in the servlet context. To be called once on startup.
+	 */
+	public static void initVelocityEngine(ServletContext servletContext) {
+		VelocityEngine engine = createVelocityEngine(servletContext);
+		try {
+			for (String templateName: PRELOADED_TEMPLATES) {
+				engine.getTemplate(templateName);
+			}
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+		servletContext.setAttribute(VELOCITY_ENGINE, engine);
+	}
+	
+	private final VelocityEngine engine;
+	private final HttpServletRequest request;
 	private final HttpServletResponse response;
 	private final Context velocityContext;
 	
 	public VelocityHelper(ServletContext servletContext, HttpServletResponse response) {
-		this.servletContext = servletContext;
+		this(servletContext, null, response);
+	}
+	
+	/**
+	 * With a request, the output is compressed if the client supports it.
+	 */
+	public VelocityHelper(ServletContext servletContext, HttpServletRequest request,
+			HttpServletResponse response) {
+		this.engine = getVelocityEngine(servletContext);
+		this.request = request;
 		this.response = response;
 		this.velocityContext = new VelocityContext();
 	}
@@ -43,28 +91,35 @@ public class VelocityHelper {
 	 */
 	public void renderXHTML(String templateName) {
 		response.addHeader("Content-Type", "text/html; charset=utf-8");
-		response.addHeader("Cache-Control", "no-cache");
-		response.addHeader("Pragma", "no-cache");
+		// Servlets that support conditional GET set their own caching headers
+		if (!response.containsHeader("Cache-Control")) {
+			response.addHeader("Cache-Control", "no-cache");
+			response.addHeader("Pragma", "no-cache");
+		}
 		try {
-			OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), "utf-8");
-			getVelocityEngine().mergeTemplate(templateName, velocityContext, 
-					writer);
+			Template template = engine.getTemplate(templateName);
+			OutputStream out = request == null ? response.getOutputStream()
+					: CompressingOutputStream.create(request, response);
+			Writer writer = new BufferedWriter(
+					new OutputStreamWriter(out, "utf-8"), BUFFER_SIZE);
+			template.merge(velocityContext, writer);
 			writer.close();
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
 		}
 	}
 	
-	private VelocityEngine getVelocityEngine() {
-		synchronized (servletContext) {
-			if (servletContext.getAttribute(VELOCITY_ENGINE) == null) {
-				servletContext.setAttribute(VELOCITY_ENGINE, createVelocityEngine());
-			}
-			return (VelocityEngine) servletContext.getAttribute(VELOCITY_ENGINE);
-		}
+	private static VelocityEngine getVelocityEngine(ServletContext servletContext) {
+		VelocityEngine result = (VelocityEngine) servletContext.getAttribute(VELOCITY_ENGINE);
+		if (result != null) return result;
+		// Not initialized on startup; this can only happen if the
+		// context listener is missing from web.xml. A race here at
+		// worst creates an extra engine.
+		initVelocityEngine(servletContext);
+		return (VelocityEngine) servletContext.getAttribute(VELOCITY_ENGINE);
 	}
 	
-	private VelocityEngine createVelocityEngine() {
+	private static VelocityEngine createVelocityEngine(ServletContext servletContext) {
 		try {
 			VelocityEngine result = new VelocityEngine();
 			result.setProperty("output.encoding", "utf-8");
@@ -79,8 +134,9 @@ public class VelocityHelper {
 			// XML-escape *all* references inserted into templates
 			result.setProperty("eventhandler.referenceinsertion.class", EscapeXmlReference.class.getName());
 			
-			// Enable caching
+			// Enable caching, and never check template files for changes
 			result.setProperty("file.resource.loader.cache", true);
+			result.setProperty("file.resource.loader.modificationCheckInterval", 0);
 			
 			result.init();
 			return result;
@@ -0,0 +1,175 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+import de.fuberlin.wiwiss.pubby.BoundedCache;
+import de.fuberlin.wiwiss.pubby.ModelUtil;
+import de.fuberlin.wiwiss.pubby.OverlayGraph;
+
+/**
+ * A {@link DataSource} that wraps another data source and caches
+ * its answers in memory. The number of cached answers is bounded,
+ * and answers can optionally expire after some time. Concurrent requests
+ * for the same resource result in only one request to the wrapped
+ * data source.
+ *
+ * Callers tend to modify the models they get from a data source, so
+ * each call returns a copy-on-write view of the cached model, which
+ * is cheap to create and leaves the cached model untouched.
+ */
+public class CachingDataSource implements DataSource {
+	private final DataSource wrapped;
+	private final BoundedCache<String, Model> descriptions;
+	private final BoundedCache<String, DescriptionResult> fullDescriptions;
+	private final BoundedCache<String, Model> propertyValues;
+
+	/**
+	 * @param wrapped The data source whose answers are to be cached
+	 * @param maxSize Maximum number of answers kept for each kind of request
+	 * @param ttlMillis Time after which cached answers expire, in
+	 * 		milliseconds; 0 means answers don't expire
+	 */
+	public CachingDataSource(DataSource wrapped, int maxSize, long ttlMillis) {
+		this.wrapped = wrapped;
+		descriptions = new BoundedCache<String, Model>(maxSize, ttlMillis);
+		fullDescriptions = new BoundedCache<String, DescriptionResult>(maxSize, ttlMillis);
+		propertyValues = new BoundedCache<String, Model>(maxSize, ttlMillis);
+	}
+
+	@Override
+	public boolean canDescribe(String absoluteIRI) {
+		return wrapped.canDescribe(absoluteIRI);
+	}
+
+	@Override
+	public Model describeResource(final String absoluteIRI) {
+		return view(descriptions.get(absoluteIRI, new Callable<Model>() {
+			public Model call() {
+				return wrapped.describeResource(absoluteIRI);
+			}
+		}));
+	}
+
+	/**
+	 * Uses cached descriptions where available, and asks the wrapped data
+	 * source for the others in a single request. Batch results are not
+	 * cached, as they may be less complete than individual descriptions.
+	 */
+	@Override
+	public Model describeResources(Collection<String> absoluteIRIs) {
+		Model result = ModelFactory.createDefaultModel();
+		List<String> uncached = new ArrayList<String>(absoluteIRIs.size());
+		for (String iri: absoluteIRIs) {
+			Model cached = descriptions.getIfPresent(iri);
+			if (cached == null) {
+				uncached.add(iri);
+			} else {
+				ModelUtil.mergeModels(result, cached);
+			}
+		}
+		if (!uncached.isEmpty()) {
+			ModelUtil.mergeModels(result, wrapped.describeResources(uncached));
+		}
+		return result;
+	}
+
+	/**
+	 * Types are not cached; they are only asked for when building the
+	 * index.
+	 */
+	@Override
+	public Model getTypes(Collection<String> absoluteIRIs) {
+		return wrapped.getTypes(absoluteIRIs);
+	}
+
+	@Override
+	public DescriptionResult getDescription(final String absoluteIRI) {
+		DescriptionResult cached = fullDescriptions.get(absoluteIRI,
+				new Callable<DescriptionResult>() {
+			public DescriptionResult call() {
+				return wrapped.getDescription(absoluteIRI);
+			}
+		});
+		return new DescriptionResult(view(cached.getModel()),
+				copy(cached.getHighIndegreeProperties()),
+				copy(cached.getHighOutdegreeProperties()),
+				cached.getQueries());
+	}
+
+	@Override
+	public Model listPropertyValues(final String resourceIRI,
+			final Property property, final boolean isInverse,
+			final int offset, final int limit) {
+		String key = (isInverse ? "<=" : "=>") + property.getURI() + " " + 
+				offset + "+" + limit + " " + resourceIRI;
+		return view(propertyValues.get(key, new Callable<Model>() {
+			public Model call() {
+				return wrapped.listPropertyValues(resourceIRI, property, isInverse,
+						offset, limit);
+			}
+		}));
+	}
+
+	/**
+	 * The index is not cached; it is usually handled by an
+	 * {@link IndexDataSource} wrapped by this data source.
+	 */
+	@Override
+	public List<Resource> getIndex(int limit) {
+		return wrapped.getIndex(limit);
+	}
+
+	/**
+	 * Discards all cached answers.
+	 */
+	public void clear() {
+		descriptions.clear();
+		fullDescriptions.clear();
+		propertyValues.clear();
+	}
+
+	/**
+	 * @return Number of requests answered from the cache
+	 */
+	public long getHitCount() {
+		return descriptions.getHitCount() + fullDescriptions.getHitCount() +
+				propertyValues.getHitCount();
+	}
+
+	/**
+	 * @return Number of requests passed on to the wrapped data source
+	 */
+	public long getMissCount() {
+		return descriptions.getMissCount() + fullDescriptions.getMissCount() +
+				propertyValues.getMissCount();
+	}
+
+	/**
+	 * @return Number of answers dropped because the cache was full or
+	 * 		because they had expired
+	 */
+	public long getEvictionCount() {
+		return descriptions.getEvictionCount() + fullDescriptions.getEvictionCount() +
+				propertyValues.getEvictionCount();
+	}
+
+	private Model view(Model model) {
+		if (model.isEmpty()) return ModelUtil.EMPTY_MODEL;
+		return OverlayGraph.createModel(model);
+	}
+
+	private Map<Property, Integer> copy(Map<Property, Integer> map) {
+		if (map == null) return null;
+		return new HashMap<Property, Integer>(map);
+	}
+}
@@ -1,7 +1,7 @@
 package de.fuberlin.wiwiss.pubby.sources;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
@@ -10,11 +10,21 @@ import com.hp.hpl.jena.rdf.model.Resource;
 /**
  * A source of RDF data intended for publication through
  * the server.
- * 
- * TODO: describeResource and getHighXxxdegreeProperties should be combined into a single method with a complex result so that implementations can better mess with the high-degree stuff while keeping responses consistent between methods
  */
 public interface DataSource {
 	static final int MAX_INDEX_SIZE = 100;
+
+	/**
+	 * Number of values of a property shown on one page, if the client
+	 * doesn't ask for a different number
+	 */
+	static final int DEFAULT_VALUES_PAGE_SIZE = 100;
+
+	/**
+	 * Maximum number of values of a property that are fetched for a
+	 * single request
+	 */
+	static final int MAX_VALUES_PAGE_SIZE = 1000;
 	
 	/**
 	 * Indicates whether this data source may have some information about
@@ -45,46 +55,59 @@ public interface DataSource {
 	Model describeResource(String absoluteIRI);
 
 	/**
-	 * If {@link #describeResource(String)} omits properties of
-	 * high indegree, then those properties must be returned here with
-	 * the count of arcs. If high-indegree properties are not omitted,
-	 * or the resource doesn't have any, then an empty map or null may be
-	 * returned. Entries with value 0 will be ignored.
-	 * @param resourceIRI The IRI of the resource to be described
-	 * @return A map containing high-indegree properties with number of arcs
-	 * 		for the resource
+	 * Returns a subgraph of the data source describing several resources
+	 * at once. For each resource, the result must contain the outgoing
+	 * arcs that {@link #describeResource(String)} would return; other
+	 * statements may or may not be included. This allows implementations
+	 * to answer with fewer requests than one per resource.
+	 * @param absoluteIRIs The IRIs of the resources to be described
+	 * @return A subgraph of the data source describing the resources
 	 */
-	Map<Property, Integer> getHighIndegreeProperties(String resourceIRI);
-	
+	Model describeResources(Collection<String> absoluteIRIs);
+
+	/**
+	 * Returns the <tt>rdf:type</tt> arcs of several resources. This is
+	 * much cheaper than {@link #describeResources(Collection)} if only
+	 * the types are needed, as when building an index.
+	 * @param absoluteIRIs The IRIs of the resources
+	 * @return A subgraph of the data source with the resources' types
+	 */
+	Model getTypes(Collection<String> absoluteIRIs);
+
 	/**
-	 * If {@link #describeResource(String)} omits properties of
-	 * high outdegree, then those properties must be returned here with
-	 * the count of arcs. If high-outdegree properties are not omitted,
-	 * or the resource doesn't have any, then an empty map or null may be
-	 * returned. Entries with value 0 will be ignored.
-	 * @param resourceIRI The IRI of the resource to be described
-	 * @return A map containing high-outdegree properties with number of arcs
-	 * 		for the resource
+	 * Describes a resource for display. The result contains the same
+	 * subgraph as {@link #describeResource(String)}, plus the number of
+	 * arcs of any high-indegree and high-outdegree properties that were
+	 * omitted from the subgraph. Implementations should compute both
+	 * together, so that they are consistent with each other.
+	 * @param absoluteIRI The IRI of the resource to be described
+	 * @return The description; never null
 	 */
-	Map<Property, Integer> getHighOutdegreeProperties(String resourceIRI);
+	DescriptionResult getDescription(String absoluteIRI);
 	
 	/**
-	 * Returns a subgraph of the data source. It lists the values of a
-	 * particular property of a particular resource. Where values are blank
-	 * nodes, a complete description of these anonymous resources must be
-	 * included.
+	 * Returns a subgraph of the data source. It lists one page of the
+	 * values of a particular property of a particular resource. Where
+	 * values are blank nodes, a complete description of these anonymous
+	 * resources must be included. Values should be ordered by
+	 * {@link de.fuberlin.wiwiss.pubby.ModelUtil#VALUE_ORDER}, the order
+	 * of SPARQL's <tt>ORDER BY</tt>, so that all values can be listed
+	 * page by page, and pages from several sources can be merged.
 	 * @param resourceIRI The resource to be examined
 	 * @param property The property we're interested in
 	 * @param isInverse Are we interested in outgoing arcs (<tt>false</tt>) or incoming (<tt>true</tt>)?
+	 * @param offset Number of values to skip
+	 * @param limit Maximum number of values to return
 	 * @return A subgraph of the data source. 
 	 */
 	Model listPropertyValues(String resourceIRI, Property property, 
-			boolean isInverse);
+			boolean isInverse, int offset, int limit);
 	
 	/**
 	 * A list of IRI resources described in this data source. Ordering is
 	 * implementation-defined. Usually a reasonable limit should be applied
 	 * to the number of resources returned.
+	 * @param limit Maximum number of resources to return
 	 */
-	List<Resource> getIndex();
+	List<Resource> getIndex(int limit);
 }
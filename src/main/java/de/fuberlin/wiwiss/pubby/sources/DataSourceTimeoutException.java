@@ -0,0 +1,13 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+/**
+ * Thrown when a {@link DataSource} takes too long to answer a request.
+ */
+public class DataSourceTimeoutException extends RuntimeException {
+
+	public DataSourceTimeoutException(String message) {
+		super(message);
+	}
+
+	private static final long serialVersionUID = 4718034275362291385L;
+}
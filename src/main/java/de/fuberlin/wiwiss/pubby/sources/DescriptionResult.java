@@ -0,0 +1,107 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+
+import de.fuberlin.wiwiss.pubby.ModelUtil;
+
+/**
+ * The answer of a {@link DataSource} to a request for the description
+ * of a resource: a subgraph describing the resource, plus the number of
+ * arcs for any high-degree properties that were left out of the subgraph.
+ * Returning them together allows data sources to keep the counts
+ * consistent with the graph. The result also records the queries that
+ * were sent to SPARQL endpoints to produce it.
+ */
+public class DescriptionResult {
+	public final static DescriptionResult EMPTY = new DescriptionResult(
+			ModelUtil.EMPTY_MODEL, null, null);
+
+	private final Model model;
+	private final Map<Property, Integer> highIndegreeProperties;
+	private final Map<Property, Integer> highOutdegreeProperties;
+	private final List<QueryRecord> queries;
+
+	public DescriptionResult(Model model) {
+		this(model, null, null);
+	}
+
+	/**
+	 * @param model A subgraph of the data source describing the resource
+	 * @param highIndegreeProperties Properties of high indegree that were
+	 * 		omitted from the model, with the count of arcs; may be null
+	 * @param highOutdegreeProperties Properties of high outdegree that were
+	 * 		omitted from the model, with the count of arcs; may be null
+	 */
+	public DescriptionResult(Model model,
+			Map<Property, Integer> highIndegreeProperties,
+			Map<Property, Integer> highOutdegreeProperties) {
+		this(model, highIndegreeProperties, highOutdegreeProperties, null);
+	}
+
+	/**
+	 * @param queries The queries that produced the description; may be null
+	 */
+	public DescriptionResult(Model model,
+			Map<Property, Integer> highIndegreeProperties,
+			Map<Property, Integer> highOutdegreeProperties,
+			List<QueryRecord> queries) {
+		this.model = model;
+		this.highIndegreeProperties = highIndegreeProperties == null
+				? Collections.<Property, Integer>emptyMap() : highIndegreeProperties;
+		this.highOutdegreeProperties = highOutdegreeProperties == null
+				? Collections.<Property, Integer>emptyMap() : highOutdegreeProperties;
+		this.queries = queries == null
+				? Collections.<QueryRecord>emptyList()
+				: Collections.unmodifiableList(queries);
+	}
+
+	/**
+	 * A subgraph of the data source describing the resource. This should
+	 * include both incoming and outgoing triples, but exclude arcs of the
+	 * high-degree properties. If labels for other resources are included,
+	 * then they will be used.
+	 */
+	public Model getModel() {
+		return model;
+	}
+
+	/**
+	 * Properties of high indegree that are omitted from the model, with
+	 * the number of arcs for the resource. Entries with value 0 will be
+	 * ignored. Never null.
+	 */
+	public Map<Property, Integer> getHighIndegreeProperties() {
+		return highIndegreeProperties;
+	}
+
+	/**
+	 * Properties of high outdegree that are omitted from the model, with
+	 * the number of arcs for the resource. Entries with value 0 will be
+	 * ignored. Never null.
+	 */
+	public Map<Property, Integer> getHighOutdegreeProperties() {
+		return highOutdegreeProperties;
+	}
+
+	/**
+	 * The queries that were sent to SPARQL endpoints to produce this
+	 * description, in no particular order. Empty if the description
+	 * didn't come from a SPARQL endpoint. Never null.
+	 */
+	public List<QueryRecord> getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return <code>true</code> if the data source knows nothing about
+	 * 		the resource
+	 */
+	public boolean isEmpty() {
+		return model.isEmpty();
+	}
+}
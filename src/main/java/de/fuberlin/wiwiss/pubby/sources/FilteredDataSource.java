@@ -1,8 +1,8 @@
 package de.fuberlin.wiwiss.pubby.sources;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
@@ -40,28 +40,47 @@ public abstract class FilteredDataSource implements DataSource {
 	}
 
 	@Override
-	public Map<Property, Integer> getHighIndegreeProperties(String resourceIRI) {
-		if (!canDescribe(resourceIRI)) return null;
-		return wrapped.getHighIndegreeProperties(resourceIRI);
+	public Model describeResources(Collection<String> absoluteIRIs) {
+		List<String> describable = new ArrayList<String>(absoluteIRIs.size());
+		for (String iri: absoluteIRIs) {
+			if (canDescribe(iri)) {
+				describable.add(iri);
+			}
+		}
+		if (describable.isEmpty()) return ModelUtil.EMPTY_MODEL;
+		return wrapped.describeResources(describable);
+	}
+
+	@Override
+	public Model getTypes(Collection<String> absoluteIRIs) {
+		List<String> describable = new ArrayList<String>(absoluteIRIs.size());
+		for (String iri: absoluteIRIs) {
+			if (canDescribe(iri)) {
+				describable.add(iri);
+			}
+		}
+		if (describable.isEmpty()) return ModelUtil.EMPTY_MODEL;
+		return wrapped.getTypes(describable);
 	}
 
 	@Override
-	public Map<Property, Integer> getHighOutdegreeProperties(String resourceIRI) {
-		if (!canDescribe(resourceIRI)) return null;
-		return wrapped.getHighOutdegreeProperties(resourceIRI);
+	public DescriptionResult getDescription(String absoluteIRI) {
+		if (!canDescribe(absoluteIRI)) return DescriptionResult.EMPTY;
+		return wrapped.getDescription(absoluteIRI);
 	}
 
 	@Override
 	public Model listPropertyValues(String resourceIRI, Property property,
-			boolean isInverse) {
+			boolean isInverse, int offset, int limit) {
 		if (!canDescribe(resourceIRI)) return ModelUtil.EMPTY_MODEL;
-		return wrapped.listPropertyValues(resourceIRI, property, isInverse);
+		return wrapped.listPropertyValues(resourceIRI, property, isInverse,
+				offset, limit);
 	}
 
 	@Override
-	public List<Resource> getIndex() {
+	public List<Resource> getIndex(int limit) {
 		List<Resource> result = new ArrayList<Resource>();
-		for (Resource r: wrapped.getIndex()) {
+		for (Resource r: wrapped.getIndex(limit)) {
 			if (canDescribe(r.getURI())) {
 				result.add(r);
 			}
@@ -0,0 +1,205 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+
+/**
+ * HTTP transport for talking to remote SPARQL endpoints. Intended to be
+ * shared by all {@link RemoteSPARQLDataSource}s. Keeps a pool of
+ * persistent connections, applies connect and read timeouts, accepts
+ * gzip- and deflate-compressed responses, and retries requests that
+ * failed due to I/O errors.
+ *
+ * Retries are budgeted: across all requests, at most one retry is made
+ * for every ten requests (plus a small initial allowance), so that a
+ * failing endpoint doesn't receive a multiple of the normal load.
+ */
+public class HttpTransport {
+	public final static int DEFAULT_MAX_CONNECTIONS = 50;
+	public final static int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 10;
+	public final static int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+	public final static int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+	public final static int DEFAULT_MAX_RETRIES = 2;
+
+	/**
+	 * Requests with longer URLs are sent as POST
+	 */
+	private final static int MAX_GET_URL_LENGTH = 2048;
+
+	private final static int RETRY_COST = 10;
+	private final static int MAX_RETRY_TOKENS = 10 * RETRY_COST;
+
+	private final PoolingClientConnectionManager connectionManager;
+	private final HttpClient client;
+	private final int maxRetries;
+	private final AtomicInteger retryTokens = new AtomicInteger(MAX_RETRY_TOKENS);
+
+	public HttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT,
+				DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS,
+				DEFAULT_MAX_RETRIES);
+	}
+
+	/**
+	 * @param maxConnections Maximum number of open connections
+	 * @param maxConnectionsPerEndpoint Maximum number of open connections
+	 * 		to the same host and port
+	 * @param connectTimeoutMillis Timeout for establishing a connection;
+	 * 		0 means no limit
+	 * @param readTimeoutMillis Timeout for waiting for data from an
+	 * 		established connection; 0 means no limit
+	 * @param maxRetries Maximum number of times a failed request is retried
+	 */
+	public HttpTransport(int maxConnections, int maxConnectionsPerEndpoint,
+			int connectTimeoutMillis, int readTimeoutMillis, int maxRetries) {
+		this.maxRetries = maxRetries;
+		connectionManager = new PoolingClientConnectionManager(
+				SchemeRegistryFactory.createDefault());
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerEndpoint);
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeoutMillis);
+		HttpConnectionParams.setSoTimeout(params, readTimeoutMillis);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		DefaultHttpClient defaultClient = new DefaultHttpClient(connectionManager, params);
+		defaultClient.setHttpRequestRetryHandler(new BudgetedRetryHandler());
+		client = new DecompressingHttpClient(defaultClient);
+	}
+
+	/**
+	 * Sends a request to an HTTP endpoint, and passes the response to a
+	 * handler if it has a 2xx status code. The connection is returned to
+	 * the pool when the handler is done.
+	 *
+	 * @param url The endpoint URL
+	 * @param params Query parameters
+	 * @param accept Value of the Accept header
+	 * @param handler Reads the response
+	 * @return The result of the handler
+	 * @throws QueryExceptionHTTP On I/O errors and non-2xx responses
+	 */
+	public <T> T execute(String url, List<NameValuePair> params, String accept,
+			final ResponseHandler<T> handler) {
+		HttpUriRequest request = createRequest(url, params);
+		request.setHeader("Accept", accept);
+		try {
+			T result = client.execute(request, new ResponseHandler<T>() {
+				public T handleResponse(HttpResponse response) throws IOException {
+					int status = response.getStatusLine().getStatusCode();
+					if (status < 200 || status >= 300) {
+						throw new QueryExceptionHTTP(status,
+								response.getStatusLine().getReasonPhrase());
+					}
+					return handler.handleResponse(response);
+				}
+			});
+			depositRetryToken();
+			return result;
+		} catch (IOException ex) {
+			request.abort();
+			throw new QueryExceptionHTTP("Error talking to <" + url + ">: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Closes all connections. The transport can't be used afterwards.
+	 */
+	public void shutdown() {
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * Returns the media type from the Content-Type header of a response,
+	 * without any parameters, or <code>null</code> if there is none.
+	 */
+	public static String getMediaType(HttpResponse response) {
+		Header header = response.getFirstHeader("Content-Type");
+		if (header == null) return null;
+		String value = header.getValue();
+		int semicolon = value.indexOf(';');
+		if (semicolon != -1) {
+			value = value.substring(0, semicolon);
+		}
+		value = value.trim().toLowerCase();
+		return "".equals(value) ? null : value;
+	}
+
+	private HttpUriRequest createRequest(String url, List<NameValuePair> params) {
+		String query = URLEncodedUtils.format(params, "UTF-8");
+		String getURL = url + (url.indexOf('?') == -1 ? '?' : '&') + query;
+		if (getURL.length() <= MAX_GET_URL_LENGTH) {
+			return new HttpGet(getURL);
+		}
+		HttpPost post = new HttpPost(url);
+		try {
+			post.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+		} catch (UnsupportedEncodingException ex) {
+			// Can't happen, UTF-8 is always supported
+			throw new RuntimeException(ex);
+		}
+		return post;
+	}
+
+	private void depositRetryToken() {
+		int tokens;
+		do {
+			tokens = retryTokens.get();
+			if (tokens >= MAX_RETRY_TOKENS) return;
+		} while (!retryTokens.compareAndSet(tokens, tokens + 1));
+	}
+
+	private boolean withdrawRetryTokens() {
+		int tokens;
+		do {
+			tokens = retryTokens.get();
+			if (tokens < RETRY_COST) return false;
+		} while (!retryTokens.compareAndSet(tokens, tokens - RETRY_COST));
+		return true;
+	}
+
+	/**
+	 * Retries requests that failed with an I/O error, unless the error
+	 * won't go away by trying again (timeouts, unknown hosts, SSL
+	 * problems) or the retry budget is used up. SPARQL queries have no
+	 * side effects, so it is safe to retry even if the request was
+	 * already sent.
+	 */
+	private class BudgetedRetryHandler implements HttpRequestRetryHandler {
+		public boolean retryRequest(IOException exception, int executionCount,
+				HttpContext context) {
+			if (executionCount > maxRetries) return false;
+			if (exception instanceof InterruptedIOException) return false;
+			if (exception instanceof UnknownHostException) return false;
+			if (exception instanceof SSLException) return false;
+			return withdrawRetryTokens();
+		}
+	}
+}
@@ -1,7 +1,20 @@
 package de.fuberlin.wiwiss.pubby.sources;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -10,52 +23,220 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
+import de.fuberlin.wiwiss.pubby.ModelUtil;
+import de.fuberlin.wiwiss.pubby.vocab.XHV;
+
 /**
  * A {@link DataSource} that wraps another data source and adds an
  * index of the resources in that data source.
+ *
+ * The index is built from the wrapped data source's
+ * {@link DataSource#getIndex(int)}, sorted alphabetically by IRI, and
+ * kept in memory, so that serving it doesn't involve the wrapped data
+ * source. It is split into pages, linked with <tt>xhv:next</tt>.
+ * The first page is the index resource itself, and later pages are at
+ * <tt>index/2</tt>, <tt>index/3</tt> etc. relative to it. There is also
+ * an index of the resources of each type (<tt>rdf:type</tt>) at
+ * <tt>index/types/1</tt> etc., paged the same way as the main index.
+ * Only the IRIs of pages that actually exist are handled here; any
+ * other IRI, such as <tt>index/foo</tt>, is passed to the wrapped data
+ * source.
+ *
+ * The index is built on first use, or with {@link #refresh()}. With
+ * {@link #startBackgroundRefresh(long)}, it is built in a background
+ * thread instead, and can be rebuilt periodically; until the first build
+ * has finished, the index resource says that the index is being built.
+ * Types are found with {@link DataSource#getTypes(Collection)}, which
+ * is much cheaper than describing every resource.
  */
 public class IndexDataSource implements DataSource {
+	private final static Logger log = LoggerFactory.getLogger(IndexDataSource.class);
+	public final static int DEFAULT_SIZE = 10000;
+	/**
+	 * Default for data that doesn't come only from files, where each
+	 * resource in the index costs queries against SPARQL endpoints
+	 */
+	public final static int DEFAULT_REMOTE_SIZE = 1000;
+	public final static int DEFAULT_PAGE_SIZE = DataSource.MAX_INDEX_SIZE;
+
 	private final String indexIRI;
+	private final String pagePrefix;
+	private final String typePrefix;
 	private final DataSource wrapped;
-	
+	private final int maxSize;
+	private final int pageSize;
+	private volatile Index index = null;
+	private volatile boolean isBuildingInBackground = false;
+	private ScheduledExecutorService refresher = null;
+	private final Object firstBuildLock = new Object();
+
 	public IndexDataSource(String indexIRI, DataSource wrapped) {
+		this(indexIRI, wrapped, DEFAULT_SIZE, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * @param maxSize Maximum number of resources in the index
+	 * @param pageSize Number of resources on each page of the index
+	 */
+	public IndexDataSource(String indexIRI, DataSource wrapped, int maxSize, int pageSize) {
 		this.indexIRI = indexIRI;
+		this.pagePrefix = indexIRI + "index/";
+		this.typePrefix = pagePrefix + "types/";
 		this.wrapped = wrapped;
+		this.maxSize = maxSize;
+		this.pageSize = Math.max(1, pageSize);
+	}
+
+	/**
+	 * Builds the index in the calling thread. If building fails, the
+	 * previous index is kept.
+	 */
+	public void refresh() {
+		index = buildIndex();
 	}
-	
+
+	/**
+	 * Builds the index in a background thread. If an interval is given,
+	 * the index is rebuilt after that delay whenever a build has
+	 * finished, and the current index is served until the rebuild has
+	 * finished.
+	 * @param intervalSeconds Delay between builds, or 0 to build only once
+	 */
+	public synchronized void startBackgroundRefresh(long intervalSeconds) {
+		if (refresher != null) return;
+		refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread result = new Thread(r, "pubby-index");
+				result.setDaemon(true);
+				return result;
+			}
+		});
+		Runnable task = new Runnable() {
+			public void run() {
+				try {
+					refresh();
+				} catch (RuntimeException ex) {
+					// Keep the old index, and keep the task scheduled
+					log.warn("Failed to build the index: " + ex.getMessage(), ex);
+				} finally {
+					// If the first build failed, the next request tries again
+					isBuildingInBackground = false;
+				}
+			}
+		};
+		if (index == null) {
+			isBuildingInBackground = true;
+		}
+		if (intervalSeconds > 0) {
+			refresher.scheduleWithFixedDelay(task, 0, intervalSeconds, TimeUnit.SECONDS);
+		} else {
+			refresher.execute(task);
+		}
+	}
+
+	/**
+	 * Stops the background thread, if any.
+	 */
+	public synchronized void shutdown() {
+		if (refresher == null) return;
+		refresher.shutdownNow();
+		refresher = null;
+	}
+
 	@Override
 	public boolean canDescribe(String absoluteIRI) {
-		return indexIRI.equals(absoluteIRI) || wrapped.canDescribe(absoluteIRI);
+		return isIndexIRI(absoluteIRI) || wrapped.canDescribe(absoluteIRI);
 	}
-	
+
 	@Override
 	public Model describeResource(String iri) {
-		if (!indexIRI.equals(iri)) return wrapped.describeResource(iri);
+		if (!indexIRI.equals(iri) && !iri.startsWith(pagePrefix)) {
+			return wrapped.describeResource(iri);
+		}
+		Index current = currentIndex();
+		int[] found = findPage(iri, current);
+		if (found == null) return wrapped.describeResource(iri);
+		int type = found[0];
+		int number = found[1];
 		Model result = ModelFactory.createDefaultModel();
 		result.setNsPrefix("sioc", SIOC_NS);
 		result.setNsPrefix("rdfs", RDFS.getURI());
-		Resource index = result.createResource(indexIRI);
-		// TODO: Get label from the vocabulary store, and make it i18nable
-		index.addProperty(RDFS.label, "Index of Resources", "en");
-		for (Resource r: wrapped.getIndex()) {
-			index.addProperty(siocContainerOf, r);
+		Resource page = result.createResource(iri);
+		if (type == 0 && number == 1) {
+			// TODO: Get label from the vocabulary store, and make it i18nable
+			page.addProperty(RDFS.label, "Index of Resources", "en");
+			if (current == PLACEHOLDER) {
+				page.addProperty(RDFS.comment,
+						"The index is being built. Please try again later.", "en");
+			}
+			addPage(page, current.resources, 1, pagePrefix);
+			for (int i = 0; i < current.types.size(); i++) {
+				Resource typeIndex = result.createResource(typePrefix + (i + 1));
+				page.addProperty(siocParentOf, typeIndex);
+				addTypeIndexLabel(typeIndex, current.types.get(i));
+			}
+			return result;
+		}
+		if (type > 0) {
+			Resource typeResource = current.types.get(type - 1);
+			addTypeIndexLabel(page, typeResource);
+			page.addProperty(siocTopic, typeResource);
+			page.addProperty(siocHasParent, result.createResource(indexIRI));
+			addPage(page, current.instances.get(typeResource), number,
+					typePrefix + type + "/");
+			return result;
 		}
+		page.addProperty(RDFS.label, "Index of Resources (page " + number + ")", "en");
+		page.addProperty(siocHasParent, result.createResource(indexIRI));
+		addPage(page, current.resources, number, pagePrefix);
 		return result;
 	}
-	private final static String SIOC_NS = "http://rdfs.org/sioc/ns#";
-	private final static Property siocContainerOf = 
-			ResourceFactory.createProperty(SIOC_NS + "container_of");
 
 	@Override
-	public Map<Property, Integer> getHighIndegreeProperties(String resourceIRI) {
-		return wrapped.getHighIndegreeProperties(resourceIRI);
+	public Model describeResources(Collection<String> absoluteIRIs) {
+		List<String> others = new ArrayList<String>(absoluteIRIs.size());
+		Model result = ModelFactory.createDefaultModel();
+		for (String iri: absoluteIRIs) {
+			if (isIndexIRI(iri)) {
+				ModelUtil.mergeModels(result, describeResource(iri));
+			} else {
+				others.add(iri);
+			}
+		}
+		if (others.size() == absoluteIRIs.size()) {
+			return wrapped.describeResources(absoluteIRIs);
+		}
+		if (!others.isEmpty()) {
+			ModelUtil.mergeModels(result, wrapped.describeResources(others));
+		}
+		return result;
+	}
+
+	/**
+	 * Index pages have no types.
+	 */
+	@Override
+	public Model getTypes(Collection<String> absoluteIRIs) {
+		return wrapped.getTypes(absoluteIRIs);
 	}
 
+	private final static String SIOC_NS = "http://rdfs.org/sioc/ns#";
+	private final static Property siocContainerOf =
+			ResourceFactory.createProperty(SIOC_NS + "container_of");
+	private final static Property siocParentOf =
+			ResourceFactory.createProperty(SIOC_NS + "parent_of");
+	private final static Property siocHasParent =
+			ResourceFactory.createProperty(SIOC_NS + "has_parent");
+	private final static Property siocTopic =
+			ResourceFactory.createProperty(SIOC_NS + "topic");
+
 	@Override
-	public Map<Property, Integer> getHighOutdegreeProperties(String resourceIRI) {
-		return wrapped.getHighOutdegreeProperties(resourceIRI);
+	public DescriptionResult getDescription(String absoluteIRI) {
+		if (!isIndexIRI(absoluteIRI)) return wrapped.getDescription(absoluteIRI);
+		return new DescriptionResult(describeResource(absoluteIRI));
 	}
 
 	/**
@@ -64,28 +245,168 @@ public class IndexDataSource implements DataSource {
 	 */
 	@Override
 	public Model listPropertyValues(String resourceIRI,
-			Property property, boolean isInverse) {
-		if (!indexIRI.equals(resourceIRI)) {
-			return wrapped.listPropertyValues(resourceIRI, property, isInverse);
+			Property property, boolean isInverse, int offset, int limit) {
+		if (!isIndexIRI(resourceIRI)) {
+			return wrapped.listPropertyValues(resourceIRI, property, isInverse,
+					offset, limit);
 		}
 		Model all = describeResource(resourceIRI);
 		Resource r = all.getResource(resourceIRI);
-		StmtIterator it = isInverse
-				? all.listStatements(null, property, r)
-				: all.listStatements(r, property, (RDFNode) null);
 		Model result = ModelFactory.createDefaultModel();
-		while (it.hasNext()) {
-			result.add(it.next());
-		}
+		result.add(isInverse
+				? all.listStatements(null, property, r)
+				: all.listStatements(r, property, (RDFNode) null));
+		ModelUtil.sliceValues(result, r, property, isInverse, offset, limit);
 		return result;
 	}
 
 	@Override
-	public List<Resource> getIndex() {
+	public List<Resource> getIndex(int limit) {
 		// We could add the indexIRI as an additional resource here, but we
 		// don't want it to show up in the list of resources generated in
 		// describeResource(), and we don't want it turn an otherwise
-		// empty dataset into a non-empty one. 
-		return wrapped.getIndex();
+		// empty dataset into a non-empty one.
+		return wrapped.getIndex(limit);
+	}
+
+	private boolean isIndexIRI(String iri) {
+		if (indexIRI.equals(iri)) return true;
+		return iri.startsWith(pagePrefix) && findPage(iri, currentIndex()) != null;
+	}
+
+	/**
+	 * @return The type number (0 for the main index) and the page
+	 * 		number, or <code>null</code> if the IRI is not a page
+	 * 		of the given index
+	 */
+	private int[] findPage(String iri, Index current) {
+		if (indexIRI.equals(iri)) return new int[] {0, 1};
+		if (!iri.startsWith(pagePrefix)) return null;
+		if (iri.startsWith(typePrefix)) {
+			String[] parts = iri.substring(typePrefix.length()).split("/", -1);
+			if (parts.length > 2) return null;
+			int type = parseNumber(parts[0]);
+			int number = parts.length == 1 ? 1 : parseNumber(parts[1]);
+			if (type < 1 || type > current.types.size()) return null;
+			if (parts.length == 2 && number < 2) return null;
+			List<Resource> instances = current.instances.get(current.types.get(type - 1));
+			return hasPage(instances, number) ? new int[] {type, number} : null;
+		}
+		int number = parseNumber(iri.substring(pagePrefix.length()));
+		if (number < 2) return null;
+		return hasPage(current.resources, number) ? new int[] {0, number} : null;
+	}
+
+	private boolean hasPage(List<Resource> resources, int number) {
+		return number == 1 || (number - 1) * pageSize < resources.size();
+	}
+
+	/**
+	 * Adds the resources on one page, and a link to the next page.
+	 * @param number Page number, starting at 1
+	 * @param nextPagePrefix IRI of later pages, without the number
+	 */
+	private void addPage(Resource page, List<Resource> resources, int number,
+			String nextPagePrefix) {
+		int from = (number - 1) * pageSize;
+		int to = Math.min(from + pageSize, resources.size());
+		for (Resource r: resources.subList(from, to)) {
+			page.addProperty(siocContainerOf, r);
+		}
+		if (to < resources.size()) {
+			page.addProperty(XHV.next,
+					page.getModel().createResource(nextPagePrefix + (number + 1)));
+		}
+	}
+
+	private void addTypeIndexLabel(Resource typeIndex, Resource type) {
+		typeIndex.addProperty(RDFS.label,
+				"Index of Resources of Type " + type.getLocalName(), "en");
+	}
+
+	/**
+	 * @return The number, or -1 if the string is not a positive
+	 * 		decimal number without leading zeros
+	 */
+	private static int parseNumber(String s) {
+		if (s.length() == 0 || s.length() > 9 || s.charAt(0) == '0') return -1;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) < '0' || s.charAt(i) > '9') return -1;
+		}
+		return Integer.parseInt(s);
+	}
+
+	private Index currentIndex() {
+		Index result = index;
+		if (result != null) return result;
+		if (isBuildingInBackground) return PLACEHOLDER;
+		// Build on first use; concurrent first requests wait for one build
+		synchronized (firstBuildLock) {
+			if (index == null) refresh();
+			return index;
+		}
+	}
+
+	private Index buildIndex() {
+		long start = System.currentTimeMillis();
+		// The wrapped data source may list a resource more than once
+		LinkedHashSet<Resource> distinct = new LinkedHashSet<Resource>();
+		for (Resource r: wrapped.getIndex(maxSize)) {
+			if (r.isURIResource()) distinct.add(r);
+		}
+		List<Resource> resources = new ArrayList<Resource>(distinct);
+		Collections.sort(resources, BY_IRI);
+		// Find types, asking the wrapped data source about all resources at once
+		List<String> iris = new ArrayList<String>(resources.size());
+		for (Resource r: resources) {
+			iris.add(r.getURI());
+		}
+		Model types = wrapped.getTypes(iris);
+		Map<Resource, List<Resource>> instances =
+				new TreeMap<Resource, List<Resource>>(BY_IRI);
+		for (Resource r: resources) {
+			StmtIterator it = types.listStatements(r, RDF.type, (RDFNode) null);
+			while (it.hasNext()) {
+				RDFNode type = it.next().getObject();
+				if (!type.isURIResource()) continue;
+				if (!instances.containsKey(type)) {
+					instances.put(type.asResource(), new ArrayList<Resource>());
+				}
+				instances.get(type).add(r);
+			}
+		}
+		log.info("Built index of " + resources.size() + " resources and " +
+				instances.size() + " types in " +
+				(System.currentTimeMillis() - start) + " ms");
+		return new Index(resources, instances);
+	}
+
+	private final static Comparator<Resource> BY_IRI = new Comparator<Resource>() {
+		public int compare(Resource r1, Resource r2) {
+			return r1.getURI().compareTo(r2.getURI());
+		}
+	};
+
+	/**
+	 * Served until the first background build has finished
+	 */
+	private final static Index PLACEHOLDER = new Index(
+			Collections.<Resource>emptyList(),
+			Collections.<Resource, List<Resource>>emptyMap());
+
+	/**
+	 * An immutable snapshot of the index.
+	 */
+	private static class Index {
+		// All indexed resources, sorted by IRI
+		final List<Resource> resources;
+		// All types, sorted by IRI
+		final List<Resource> types;
+		final Map<Resource, List<Resource>> instances;
+		Index(List<Resource> resources, Map<Resource, List<Resource>> instances) {
+			this.resources = resources;
+			this.types = new ArrayList<Resource>(instances.keySet());
+			this.instances = instances;
+		}
 	}
 }
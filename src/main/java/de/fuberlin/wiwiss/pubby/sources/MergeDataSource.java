@@ -2,10 +2,21 @@ package de.fuberlin.wiwiss.pubby.sources;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -15,44 +26,195 @@ import com.hp.hpl.jena.shared.PrefixMapping;
 import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
 
 import de.fuberlin.wiwiss.pubby.ModelUtil;
+import de.fuberlin.wiwiss.pubby.NamespaceMatcher;
 
 /**
  * A {@link DataSource} that presents an RDF merge of multiple other
  * data sources. Can also be initialized with a prefix mapping that will
  * be guaranteed to be defined on all result models.
+ *
+ * If an executor is provided, then the data sources are queried in
+ * parallel, and the time taken by a request is the time taken by the
+ * slowest source rather than the sum. A timeout can be set; sources
+ * that don't answer in time (or can't be started because the executor
+ * is saturated) are either left out of the result, or cause a
+ * {@link DataSourceTimeoutException}.
+ *
+ * If the namespaces of the sources are known, then sources that cannot
+ * describe an IRI are skipped without asking them.
  */
 public class MergeDataSource implements DataSource {
-	private final Collection<DataSource> sources;
+	private final List<DataSource> sources;
 	private final PrefixMapping mustHavePrefixes;
-	
+	private final ExecutorService executor;
+	private final long timeoutMillis;
+	private final boolean skipSlowSources;
+	private NamespaceMatcher namespaceIndex = null;
+	private BitSet unrestrictedSources = null;
+
 	public MergeDataSource(DataSource... sources) {
 		this(Arrays.asList(sources));
 	}
-	
+
 	public MergeDataSource(Collection<DataSource> sources) {
 		this(sources, new PrefixMappingImpl());
 	}
-	
+
 	public MergeDataSource(Collection<DataSource> sources, PrefixMapping mustHavePrefixes) {
-		this.sources = sources;
+		this(sources, mustHavePrefixes, null, 0, false);
+	}
+
+	/**
+	 * @param sources The data sources to be merged
+	 * @param mustHavePrefixes Prefixes to be defined on all result models
+	 * @param executor Executor for querying the sources in parallel;
+	 * 		if <code>null</code>, they will be queried one after another
+	 * @param timeoutMillis Maximum time to wait for the sources, in
+	 * 		milliseconds; 0 means no limit. Only applies if there is an
+	 * 		executor.
+	 * @param skipSlowSources If <code>true</code>, sources that time out
+	 * 		are left out of the result; if <code>false</code>, a timeout
+	 * 		causes a {@link DataSourceTimeoutException}
+	 */
+	public MergeDataSource(Collection<DataSource> sources, PrefixMapping mustHavePrefixes,
+			ExecutorService executor, long timeoutMillis, boolean skipSlowSources) {
+		this.sources = new ArrayList<DataSource>(sources);
 		this.mustHavePrefixes = mustHavePrefixes;
+		this.executor = executor;
+		this.timeoutMillis = timeoutMillis;
+		this.skipSlowSources = skipSlowSources;
+	}
+
+	/**
+	 * Declares the namespaces of the sources' IRIs. A source will only be
+	 * asked about IRIs in its namespaces. Must be called before the data
+	 * source is used.
+	 * 
+	 * @param namespaces For each source, in the order of the sources, the
+	 * 		namespaces that all IRIs described by the source start with,
+	 * 		or <code>null</code> if the source is not limited to any namespaces
+	 */
+	public void setSourceNamespaces(List<Set<String>> namespaces) {
+		if (namespaces.size() != sources.size()) {
+			throw new IllegalArgumentException(
+					"Expected namespaces for " + sources.size() + " sources");
+		}
+		NamespaceMatcher.Builder builder = new NamespaceMatcher.Builder();
+		BitSet unrestricted = new BitSet();
+		for (int i = 0; i < sources.size(); i++) {
+			if (namespaces.get(i) == null) {
+				unrestricted.set(i);
+				continue;
+			}
+			for (String namespace: namespaces.get(i)) {
+				builder.add(namespace, i);
+			}
+		}
+		namespaceIndex = builder.build();
+		unrestrictedSources = unrestricted;
+	}
+
+	/**
+	 * @return The sources that may be able to describe the IRI, in order.
+	 * 		Their {@link DataSource#canDescribe} still has to be checked.
+	 */
+	private List<DataSource> getCandidateSources(String iri) {
+		if (namespaceIndex == null) return sources;
+		BitSet candidates = namespaceIndex.findAll(iri);
+		candidates.or(unrestrictedSources);
+		List<DataSource> result = new ArrayList<DataSource>(candidates.cardinality());
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+			result.add(sources.get(i));
+		}
+		return result;
+	}
+
+	private List<DataSource> getDescribingSources(String iri) {
+		List<DataSource> candidates = getCandidateSources(iri);
+		List<DataSource> result = new ArrayList<DataSource>(candidates.size());
+		for (DataSource source: candidates) {
+			if (!source.canDescribe(iri)) continue;
+			result.add(source);
+		}
+		return result;
 	}
-	
+
 	@Override
 	public boolean canDescribe(String absoluteIRI) {
-		for (DataSource source: sources) {
+		for (DataSource source: getCandidateSources(absoluteIRI)) {
 			if (source.canDescribe(absoluteIRI)) return true;
 		}
 		return false;
 	}
-	
+
+	@Override
+	public Model describeResource(final String iri) {
+		List<DataSource> describing = getDescribingSources(iri);
+		Model result = ModelFactory.createDefaultModel();
+		for (Model m: callAll(describing, new SourceCall<Model>() {
+			public Model call(DataSource source) {
+				return source.describeResource(iri);
+			}
+		})) {
+			ModelUtil.mergeModels(result, m);
+		}
+		setMustHavePrefixes(result);
+		return result;
+	}
+
+	@Override
+	public Model describeResources(Collection<String> absoluteIRIs) {
+		final Map<DataSource, List<String>> describable = getDescribable(absoluteIRIs);
+		Model result = ModelFactory.createDefaultModel();
+		for (Model m: callAll(describable.keySet(), new SourceCall<Model>() {
+			public Model call(DataSource source) {
+				return source.describeResources(describable.get(source));
+			}
+		})) {
+			ModelUtil.mergeModels(result, m);
+		}
+		setMustHavePrefixes(result);
+		return result;
+	}
+
 	@Override
-	public Model describeResource(String iri) {
+	public Model getTypes(Collection<String> absoluteIRIs) {
+		final Map<DataSource, List<String>> describable = getDescribable(absoluteIRIs);
 		Model result = ModelFactory.createDefaultModel();
+		for (Model m: callAll(describable.keySet(), new SourceCall<Model>() {
+			public Model call(DataSource source) {
+				return source.getTypes(describable.get(source));
+			}
+		})) {
+			ModelUtil.mergeModels(result, m);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The IRIs that each source can describe, leaving out
+	 * 		sources that can describe none of them
+	 */
+	private Map<DataSource, List<String>> getDescribable(Collection<String> absoluteIRIs) {
+		Map<DataSource, List<String>> result =
+				new LinkedHashMap<DataSource, List<String>>();
+		// Pre-populate in source order, so the merge order doesn't
+		// depend on the order of the IRIs
 		for (DataSource source: sources) {
-			if (!source.canDescribe(iri)) continue;
-			ModelUtil.mergeModels(result, source.describeResource(iri));
+			result.put(source, new ArrayList<String>());
+		}
+		for (String iri: absoluteIRIs) {
+			for (DataSource source: getDescribingSources(iri)) {
+				result.get(source).add(iri);
+			}
 		}
+		for (Iterator<List<String>> it = result.values().iterator(); it.hasNext();) {
+			if (it.next().isEmpty()) it.remove();
+		}
+		return result;
+	}
+
+	private void setMustHavePrefixes(Model result) {
 		// Remove any other prefixes that may already be defined for the must-have namespaces
 		for (String prefix: mustHavePrefixes.getNsPrefixMap().keySet()) {
 			String ns = mustHavePrefixes.getNsPrefixURI(prefix);
@@ -62,46 +224,68 @@ public class MergeDataSource implements DataSource {
 		}
 		// Set all the must-have prefix/namespace pairs
 		ModelUtil.mergePrefixes(result, mustHavePrefixes);
-		return result;
 	}
 
 	@Override
-	public Map<Property, Integer> getHighIndegreeProperties(String resourceIRI) {
-		Map<Property, Integer> result = new HashMap<Property, Integer>();
-		for (DataSource source: sources) {
-			result = addIntegerMaps(result, 
-					source.getHighIndegreeProperties(resourceIRI));
-		}
-		return result;
-	}
-
-	@Override
-	public Map<Property, Integer> getHighOutdegreeProperties(String resourceIRI) {
-		Map<Property, Integer> result = new HashMap<Property, Integer>();
-		for (DataSource source: sources) {
-			result = addIntegerMaps(result, 
-					source.getHighOutdegreeProperties(resourceIRI));
+	public DescriptionResult getDescription(final String absoluteIRI) {
+		List<DataSource> describing = getDescribingSources(absoluteIRI);
+		Model model = ModelFactory.createDefaultModel();
+		Map<Property, Integer> highIndegree = new HashMap<Property, Integer>();
+		Map<Property, Integer> highOutdegree = new HashMap<Property, Integer>();
+		List<QueryRecord> queries = new ArrayList<QueryRecord>();
+		for (DescriptionResult description: callAll(describing,
+				new SourceCall<DescriptionResult>() {
+			public DescriptionResult call(DataSource source) {
+				return source.getDescription(absoluteIRI);
+			}
+		})) {
+			ModelUtil.mergeModels(model, description.getModel());
+			addIntegerMaps(highIndegree, description.getHighIndegreeProperties());
+			addIntegerMaps(highOutdegree, description.getHighOutdegreeProperties());
+			queries.addAll(description.getQueries());
 		}
-		return result;
+		setMustHavePrefixes(model);
+		return new DescriptionResult(model, highIndegree, highOutdegree, queries);
 	}
 
+	/**
+	 * With several sources, each is asked for its first
+	 * <code>offset + limit</code> values, and the requested page is cut
+	 * from the merged values. This keeps the page within the limit, and
+	 * pages line up with each other no matter how the values are spread
+	 * over the sources.
+	 */
 	@Override
-	public Model listPropertyValues(String resourceIRI, Property property,
-			boolean isInverse) {
+	public Model listPropertyValues(final String resourceIRI, final Property property,
+			final boolean isInverse, final int offset, final int limit) {
+		final boolean isMerged = sources.size() > 1;
+		final int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
 		Model result = ModelFactory.createDefaultModel();
-		for (DataSource source: sources) {
-			ModelUtil.mergeModels(result, 
-					source.listPropertyValues(resourceIRI, property, isInverse));
+		for (Model m: callAll(sources, new SourceCall<Model>() {
+			public Model call(DataSource source) {
+				return source.listPropertyValues(resourceIRI, property, isInverse,
+						isMerged ? 0 : offset, isMerged ? end : limit);
+			}
+		})) {
+			ModelUtil.mergeModels(result, m);
+		}
+		if (isMerged) {
+			ModelUtil.sliceValues(result, result.getResource(resourceIRI),
+					property, isInverse, offset, limit);
 		}
 		ModelUtil.mergePrefixes(result, mustHavePrefixes);
 		return result;
 	}
 
 	@Override
-	public List<Resource> getIndex() {
+	public List<Resource> getIndex(final int limit) {
 		List<Resource> result = new ArrayList<Resource>();
-		for (DataSource source: sources) {
-			result.addAll(source.getIndex());
+		for (List<Resource> index: callAll(sources, new SourceCall<List<Resource>>() {
+			public List<Resource> call(DataSource source) {
+				return source.getIndex(limit);
+			}
+		})) {
+			result.addAll(index.subList(0, Math.min(index.size(), limit - result.size())));
 		}
 		return result;
 	}
@@ -116,4 +300,82 @@ public class MergeDataSource implements DataSource {
 		}
 		return map1;
 	}
+
+	private interface SourceCall<T> {
+		T call(DataSource source);
+	}
+
+	/**
+	 * Performs a call on each source and returns the results, in the
+	 * order of the sources. Results from skipped sources are missing.
+	 * Exceptions thrown by a source are passed on.
+	 */
+	private <T> List<T> callAll(Collection<DataSource> sources, final SourceCall<T> call) {
+		List<T> results = new ArrayList<T>(sources.size());
+		if (executor == null || sources.size() < 2) {
+			for (DataSource source: sources) {
+				results.add(call.call(source));
+			}
+			return results;
+		}
+		List<Future<T>> futures = new ArrayList<Future<T>>(sources.size());
+		for (final DataSource source: sources) {
+			try {
+				futures.add(executor.submit(new Callable<T>() {
+					public T call() {
+						return call.call(source);
+					}
+				}));
+			} catch (RejectedExecutionException ex) {
+				futures.add(null);
+			}
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		try {
+			for (Future<T> future: futures) {
+				if (future == null) {
+					handleSlowSource("No thread available to query data source");
+					continue;
+				}
+				try {
+					if (timeoutMillis == 0) {
+						results.add(future.get());
+					} else {
+						results.add(future.get(
+								Math.max(0, deadline - System.currentTimeMillis()),
+								TimeUnit.MILLISECONDS));
+					}
+				} catch (TimeoutException ex) {
+					future.cancel(true);
+					handleSlowSource("Data source did not answer within " +
+							timeoutMillis + "ms");
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new DataSourceTimeoutException("Interrupted while waiting for data sources");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		} finally {
+			// Don't leave anything running if we are bailing out early
+			for (Future<T> future: futures) {
+				if (future != null) {
+					future.cancel(true);
+				}
+			}
+		}
+		return results;
+	}
+
+	private void handleSlowSource(String message) {
+		if (!skipSlowSources) {
+			throw new DataSourceTimeoutException(message);
+		}
+	}
 }
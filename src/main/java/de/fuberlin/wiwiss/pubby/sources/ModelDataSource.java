@@ -1,27 +1,56 @@
 package de.fuberlin.wiwiss.pubby.sources;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.NodeIterator;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.ResIterator;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
 
 import de.fuberlin.wiwiss.pubby.ModelUtil;
 
 /**
  * A data source backed by a Jena model.
+ *
+ * Descriptions are extracted from the model rather than returning the
+ * model itself. A description contains the outgoing and incoming arcs
+ * of the resource, the complete descriptions of any blank nodes reachable
+ * from there, and the labels of neighbouring IRI resources. The cost
+ * of a description is therefore proportional to the degree of the
+ * resource, and not to the size of the model.
  */
 public class ModelDataSource implements DataSource {
-	private Model model;
+	private final Model model;
+	private final Collection<Property> labelProperties;
 
 	public ModelDataSource(Model model) {
+		this(model, Collections.<Property>singleton(RDFS.label));
+	}
+
+	/**
+	 * @param model The model containing the data
+	 * @param labelProperties Values of these properties on neighbouring
+	 * 		resources will be included in descriptions
+	 */
+	public ModelDataSource(Model model, Collection<Property> labelProperties) {
 		this.model = model;
+		this.labelProperties = labelProperties;
 	}
 
 	@Override
@@ -32,43 +61,135 @@ public class ModelDataSource implements DataSource {
 	@Override
 	public Model describeResource(String resourceURI) {
 		Resource r = ResourceFactory.createResource(resourceURI);
-		if (model.contains(r, null, (RDFNode) null) || model.contains(null, null, r)) {
-			return model;
+		if (!model.contains(r, null, (RDFNode) null) && !model.contains(null, null, r)) {
+			return ModelUtil.EMPTY_MODEL;
+		}
+		Extraction extraction = new Extraction(r);
+		extraction.addArcs(model.listStatements(r, null, (RDFNode) null), false);
+		extraction.addArcs(model.listStatements(null, null, r), true);
+		return extraction.result;
+	}
+
+	@Override
+	public Model describeResources(Collection<String> absoluteIRIs) {
+		Model result = ModelFactory.createDefaultModel();
+		result.setNsPrefixes(model);
+		for (String iri: absoluteIRIs) {
+			Resource r = ResourceFactory.createResource(iri);
+			Extraction extraction = new Extraction(r);
+			extraction.addArcs(model.listStatements(r, null, (RDFNode) null), false);
+			result.add(extraction.result);
 		}
-		return ModelUtil.EMPTY_MODEL;
+		return result;
 	}
-	
+
 	@Override
-	public Map<Property, Integer> getHighIndegreeProperties(String resourceURI) {
-		return null;
+	public Model getTypes(Collection<String> absoluteIRIs) {
+		Model result = ModelFactory.createDefaultModel();
+		result.setNsPrefixes(model);
+		for (String iri: absoluteIRIs) {
+			result.add(model.listStatements(
+					ResourceFactory.createResource(iri), RDF.type, (RDFNode) null));
+		}
+		return result;
 	}
 
 	@Override
-	public Map<Property, Integer> getHighOutdegreeProperties(String resourceURI) {
-		return null;
+	public DescriptionResult getDescription(String absoluteIRI) {
+		return new DescriptionResult(describeResource(absoluteIRI));
 	}
 
 	@Override
 	public Model listPropertyValues(String resourceURI, Property property,
-			boolean isInverse) {
-		return model;
+			boolean isInverse, int offset, int limit) {
+		Resource r = ResourceFactory.createResource(resourceURI);
+		Extraction extraction = new Extraction(r);
+		extraction.addArcs(isInverse
+				? model.listStatements(null, property, r)
+				: model.listStatements(r, property, (RDFNode) null),
+				isInverse, offset, limit);
+		return extraction.result;
 	}
-	
+
 	@Override
-	public List<Resource> getIndex() {
+	public List<Resource> getIndex(int limit) {
 		List<Resource> result = new ArrayList<Resource>();
 		ResIterator subjects = model.listSubjects();
-		while (subjects.hasNext() && result.size() < DataSource.MAX_INDEX_SIZE) {
+		while (subjects.hasNext() && result.size() < limit) {
 			Resource r = subjects.next();
 			if (r.isAnon()) continue;
 			result.add(r);
 		}
 		NodeIterator objects = model.listObjects();
-		while (objects.hasNext() && result.size() < DataSource.MAX_INDEX_SIZE) {
+		while (objects.hasNext() && result.size() < limit) {
 			RDFNode o = objects.next();
 			if (!o.isURIResource()) continue;
 			result.add(o.asResource());
 		}
 		return result;
 	}
+
+	/**
+	 * Copies the arcs of one resource into a new model, along with
+	 * blank node closures and labels of the resources at the other end.
+	 */
+	private class Extraction {
+		private final Model result = ModelFactory.createDefaultModel();
+		private final Set<RDFNode> visited = new HashSet<RDFNode>();
+		private final LinkedList<Resource> pendingBlankNodes = new LinkedList<Resource>();
+		Extraction(Resource resource) {
+			result.setNsPrefixes(model);
+			visited.add(resource);
+		}
+		/**
+		 * Adds all arcs of the iterator, which is closed afterwards.
+		 */
+		void addArcs(StmtIterator it, boolean isInverse) {
+			copy(it, isInverse, Integer.MAX_VALUE);
+			it.close();
+			completeBlankNodes();
+		}
+		/**
+		 * Adds only the arcs in a range of positions, with the arcs
+		 * sorted by the value at the other end, in
+		 * {@link ModelUtil#VALUE_ORDER}.
+		 */
+		void addArcs(StmtIterator it, final boolean isInverse, int offset, int limit) {
+			List<Statement> arcs = it.toList();
+			Collections.sort(arcs, new Comparator<Statement>() {
+				public int compare(Statement s1, Statement s2) {
+					return ModelUtil.VALUE_ORDER.compare(
+							isInverse ? s1.getSubject() : s1.getObject(),
+							isInverse ? s2.getSubject() : s2.getObject());
+				}
+			});
+			arcs = arcs.subList(Math.min(offset, arcs.size()), arcs.size());
+			copy(arcs.iterator(), isInverse, limit);
+			completeBlankNodes();
+		}
+		private void completeBlankNodes() {
+			// Complete descriptions of blank nodes. Done iteratively
+			// because RDF lists can make for very deep nesting.
+			while (!pendingBlankNodes.isEmpty()) {
+				copy(pendingBlankNodes.removeFirst().listProperties(), false, Integer.MAX_VALUE);
+			}
+		}
+		private void copy(Iterator<Statement> it, boolean isInverse, int limit) {
+			for (int i = 0; i < limit && it.hasNext(); i++) {
+				Statement stmt = it.next();
+				result.add(stmt);
+				addNeighbour(isInverse ? stmt.getSubject() : stmt.getObject());
+			}
+		}
+		private void addNeighbour(RDFNode node) {
+			if (node.isLiteral() || !visited.add(node)) return;
+			if (node.isAnon()) {
+				pendingBlankNodes.add(node.asResource());
+				return;
+			}
+			for (Property p: labelProperties) {
+				result.add(node.asResource().listProperties(p));
+			}
+		}
+	}
 }
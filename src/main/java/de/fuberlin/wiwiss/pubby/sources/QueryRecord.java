@@ -0,0 +1,60 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+/**
+ * A record of a query that was sent to a SPARQL endpoint while
+ * answering a request. Used to report the provenance of a
+ * {@link DescriptionResult}. Immutable.
+ */
+public class QueryRecord {
+	private final String endpointURL;
+	private final String query;
+	private final boolean isGraphQuery;
+	private final long elapsedMillis;
+	private final long resultSize;
+
+	/**
+	 * @param endpointURL The endpoint that answered the query
+	 * @param query The query string as sent to the endpoint
+	 * @param isGraphQuery <code>true</code> for DESCRIBE and CONSTRUCT
+	 * 		queries, <code>false</code> for SELECT queries
+	 * @param elapsedMillis Time taken to send the query and read the result
+	 * @param resultSize Number of triples or solutions in the result
+	 */
+	public QueryRecord(String endpointURL, String query, boolean isGraphQuery,
+			long elapsedMillis, long resultSize) {
+		this.endpointURL = endpointURL;
+		this.query = query;
+		this.isGraphQuery = isGraphQuery;
+		this.elapsedMillis = elapsedMillis;
+		this.resultSize = resultSize;
+	}
+
+	public String getEndpointURL() {
+		return endpointURL;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return <code>true</code> if the query returned an RDF graph
+	 */
+	public boolean isGraphQuery() {
+		return isGraphQuery;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getResultSize() {
+		return resultSize;
+	}
+
+	@Override
+	public String toString() {
+		return "<" + endpointURL + "> " + elapsedMillis + " ms, " +
+				resultSize + " results: " + query;
+	}
+}
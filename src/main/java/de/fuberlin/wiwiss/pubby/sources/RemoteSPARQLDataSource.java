@@ -1,5 +1,6 @@
 package de.fuberlin.wiwiss.pubby.sources;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,38 +11,65 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.riot.WebContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.hp.hpl.jena.query.QueryException;
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
-import com.hp.hpl.jena.sparql.engine.http.HttpQuery;
-import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.vocabulary.RDF;
 
 import de.fuberlin.wiwiss.pubby.ConfigurationException;
+import de.fuberlin.wiwiss.pubby.ModelUtil;
 import de.fuberlin.wiwiss.pubby.VocabularyStore.CachedPropertyCollection;
+import de.fuberlin.wiwiss.pubby.vocab.CONF;
 
 /**
  * A data source backed by a SPARQL endpoint accessed through
  * the SPARQL protocol.
  */
 public class RemoteSPARQLDataSource implements DataSource {
+	private final static Logger log = LoggerFactory.getLogger(RemoteSPARQLDataSource.class);
+
+	/**
+	 * Media type requested for DESCRIBE and CONSTRUCT results unless
+	 * configured otherwise
+	 */
+	public final static String DEFAULT_GRAPH_CONTENT_TYPE = "application/rdf+xml";
+
+	private final HttpTransport transport;
 	private final String endpointURL;
 	private final String defaultGraphURI;
 	private final boolean supportsSPARQL11;
 
+	private final boolean usesDefaultResourceQueries;
 	private final Set<String> resourceQueries;
 	private final Set<String> propertyQueries;
 	private final Set<String> inversePropertyQueries;
@@ -51,25 +79,30 @@ public class RemoteSPARQLDataSource implements DataSource {
 	private final CachedPropertyCollection highIndegreeProperties;
 	private final CachedPropertyCollection highOutdegreeProperties;
 	
-	private String previousDescribeQuery;
 	private String contentType = null;
+	private boolean combineQueries = true;
+	private ExecutorService executor = null;
 	private final Set<String[]> queryParamsSelect = new HashSet<String[]>();
 	private final Set<String[]> queryParamsGraph = new HashSet<String[]>();
 	
-	public RemoteSPARQLDataSource(String endpointURL, String defaultGraphURI) {
-		this(endpointURL, defaultGraphURI, false, null, null, null, null, null, null, null);
-	}
-	
-	public RemoteSPARQLDataSource(String endpointURL, String defaultGraphURI,
+	/**
+	 * @param transport The HTTP client; owned by the caller, who must
+	 * 		shut it down when it is no longer needed
+	 */
+	public RemoteSPARQLDataSource(HttpTransport transport, 
+			String endpointURL, String defaultGraphURI,
 			boolean supportsSPARQL11,
 			Set<String> resourceQueries, 
 			Set<String> propertyQueries, Set<String> inversePropertyQueries,
 			Set<String> anonPropertyQueries, Set<String> anonInversePropertyQueries,
 			CachedPropertyCollection highIndegreeProperties, CachedPropertyCollection highOutdegreeProperties) {
+		this.transport = transport;
 		this.endpointURL = endpointURL;
 		this.defaultGraphURI = defaultGraphURI;
 		this.supportsSPARQL11 = supportsSPARQL11;
-		if (resourceQueries == null || resourceQueries.isEmpty()) {
+		this.usesDefaultResourceQueries = 
+				resourceQueries == null || resourceQueries.isEmpty();
+		if (usesDefaultResourceQueries) {
 			resourceQueries = supportsSPARQL11 ?
 				new HashSet<String>(Arrays.asList(new String[]{
 					"CONSTRUCT {?__this__ ?p ?o} WHERE {?__this__ ?p ?o. FILTER (?p NOT IN ?__high_outdegree_properties__)}",
@@ -79,19 +112,19 @@ public class RemoteSPARQLDataSource implements DataSource {
 		}
 		if (propertyQueries == null || propertyQueries.isEmpty()) {
 			propertyQueries = Collections.singleton(
-					"CONSTRUCT {?__this__ ?__property__ ?x} WHERE {?__this__ ?__property__ ?x. FILTER (!isBlank(?x))}");
+					"CONSTRUCT {?__this__ ?__property__ ?x} WHERE {?__this__ ?__property__ ?x. FILTER (!isBlank(?x))} ORDER BY ?x");
 		}
 		if (inversePropertyQueries == null || inversePropertyQueries.isEmpty()) {
 			inversePropertyQueries = Collections.singleton(
-					"CONSTRUCT {?x ?__property__ ?__this__} WHERE {?x ?__property__ ?__this__. FILTER (!isBlank(?x))}");
+					"CONSTRUCT {?x ?__property__ ?__this__} WHERE {?x ?__property__ ?__this__. FILTER (!isBlank(?x))} ORDER BY ?x");
 		}
 		if (anonPropertyQueries == null || anonPropertyQueries.isEmpty()) {
 			anonPropertyQueries = Collections.singleton(
-					"DESCRIBE ?x WHERE {?__this__ ?__property__ ?x. FILTER (isBlank(?x))}");
+					"DESCRIBE ?x WHERE {?__this__ ?__property__ ?x. FILTER (isBlank(?x))} ORDER BY ?x");
 		}
 		if (anonInversePropertyQueries == null || anonInversePropertyQueries.isEmpty()) {
 			anonInversePropertyQueries = Collections.singleton(
-					"DESCRIBE ?x WHERE {?x ?__property__ ?__this__. FILTER (isBlank(?x))}");
+					"DESCRIBE ?x WHERE {?x ?__property__ ?__this__. FILTER (isBlank(?x))} ORDER BY ?x");
 		}
 		this.resourceQueries = resourceQueries;
 		this.propertyQueries = propertyQueries;
@@ -111,6 +144,24 @@ public class RemoteSPARQLDataSource implements DataSource {
 		this.contentType = mediaType;
 	}
 
+	/**
+	 * Enables or disables getting a resource description and its
+	 * high-degree property counts with a single query. Only has an
+	 * effect with SPARQL 1.1 and the default resource description
+	 * queries. Enabled by default.
+	 */
+	public void setCombineQueries(boolean combineQueries) {
+		this.combineQueries = combineQueries;
+	}
+
+	/**
+	 * Sets an executor for sending multiple queries at the same time.
+	 * Without it, queries are sent one after another.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	public void addGraphQueryParam(String param) {
 		queryParamsGraph.add(parseQueryParam(param));
 	}
@@ -137,46 +188,272 @@ public class RemoteSPARQLDataSource implements DataSource {
 
 	@Override
 	public Model describeResource(String resourceURI) {
-		// Loop over resource description queries, join results in a single model.
+		return getDescription(resourceURI, false).getModel();
+	}
+
+	/**
+	 * With SPARQL 1.1 and the default resource description queries,
+	 * the description and the high-degree property counts are fetched
+	 * with a single query, unless disabled through
+	 * {@link #setCombineQueries(boolean)}. Otherwise, the individual
+	 * queries are sent at the same time.
+	 */
+	@Override
+	public DescriptionResult getDescription(String resourceURI) {
+		return getDescription(resourceURI, supportsSPARQL11);
+	}
+
+	private DescriptionResult getDescription(final String resourceURI, boolean withCounts) {
+		if (withCounts && combineQueries && usesDefaultResourceQueries) {
+			return getCombinedDescription(resourceURI);
+		}
+		// Run all the queries at once, then join results in a single model.
 		// Process each query to replace place-holders of the given resource.
+		// The tasks may run in different threads
+		final List<QueryRecord> records = 
+				Collections.synchronizedList(new ArrayList<QueryRecord>());
+		List<FutureTask<Model>> queries = new ArrayList<FutureTask<Model>>();
+		for (final String query: resourceQueries) {
+			queries.add(new FutureTask<Model>(new Callable<Model>() {
+				public Model call() {
+					return execQueryGraph(preProcessQuery(query, resourceURI), records);
+				}
+			}));
+		}
+		List<FutureTask<?>> allTasks = new ArrayList<FutureTask<?>>(queries);
+		FutureTask<Map<Property, Integer>> highIndegree = null;
+		FutureTask<Map<Property, Integer>> highOutdegree = null;
+		if (withCounts) {
+			highIndegree = new FutureTask<Map<Property, Integer>>(
+					new Callable<Map<Property, Integer>>() {
+				public Map<Property, Integer> call() {
+					return getHighDegreeProperties(HIGH_INDEGREE_QUERY, resourceURI, records);
+				}
+			});
+			highOutdegree = new FutureTask<Map<Property, Integer>>(
+					new Callable<Map<Property, Integer>>() {
+				public Map<Property, Integer> call() {
+					return getHighDegreeProperties(HIGH_OUTDEGREE_QUERY, resourceURI, records);
+				}
+			});
+			allTasks.add(highIndegree);
+			allTasks.add(highOutdegree);
+		}
+		runConcurrently(allTasks);
 		Model model = ModelFactory.createDefaultModel();
-		for (String query: resourceQueries) {
-			Model result = execQueryGraph(preProcessQuery(query, resourceURI));
+		for (FutureTask<Model> query: queries) {
+			Model result = getResult(query);
 			model.add(result);
 			model.setNsPrefixes(result);
 		}
-		return model;
+		return new DescriptionResult(model,
+				withCounts ? getResult(highIndegree) : null,
+				withCounts ? getResult(highOutdegree) : null,
+				new ArrayList<QueryRecord>(records));
+	}
+
+	/**
+	 * Gets arcs and high-degree property counts in one CONSTRUCT query.
+	 * The counts are encoded as marker triples that are removed from
+	 * the result afterwards.
+	 */
+	private DescriptionResult getCombinedDescription(String resourceURI) {
+		List<QueryRecord> records = new ArrayList<QueryRecord>(1);
+		Model model = execQueryGraph(
+				preProcessQuery(COMBINED_DESCRIPTION_QUERY, resourceURI), records);
+		return new DescriptionResult(model,
+				extractCounts(model, HIGH_INDEGREE_COUNT),
+				extractCounts(model, HIGH_OUTDEGREE_COUNT),
+				records);
+	}
+
+	private Map<Property, Integer> extractCounts(Model model, Property marker) {
+		Map<Property, Integer> result = new HashMap<Property, Integer>();
+		StmtIterator it = model.listStatements(null, marker, (RDFNode) null);
+		while (it.hasNext()) {
+			Statement stmt = it.nextStatement();
+			if (!stmt.getSubject().isURIResource() || !stmt.getObject().isLiteral()) continue;
+			try {
+				result.put(ResourceFactory.createProperty(stmt.getSubject().getURI()),
+						stmt.getInt());
+			} catch (JenaException ex) {
+				// Not a number; ignore
+			}
+		}
+		model.removeAll(null, marker, null);
+		return result;
+	}
+
+	private final static Property HIGH_INDEGREE_COUNT = 
+			ResourceFactory.createProperty(CONF.NS + "highIndegreeCount");
+	private final static Property HIGH_OUTDEGREE_COUNT = 
+			ResourceFactory.createProperty(CONF.NS + "highOutdegreeCount");
+	private final static String COMBINED_DESCRIPTION_QUERY =
+			"CONSTRUCT {" +
+			"  ?__this__ ?p ?o. " +
+			"  ?s ?ip ?__this__. " +
+			"  ?hip <" + HIGH_INDEGREE_COUNT.getURI() + "> ?incount. " +
+			"  ?hop <" + HIGH_OUTDEGREE_COUNT.getURI() + "> ?outcount. " +
+			"} WHERE {" +
+			"  { ?__this__ ?p ?o. FILTER (?p NOT IN ?__high_outdegree_properties__) }" +
+			"  UNION { ?s ?ip ?__this__. FILTER (?ip NOT IN ?__high_indegree_properties__) }" +
+			"  UNION { SELECT ?hip (COUNT(?x) AS ?incount) WHERE {" +
+			"    ?x ?hip ?__this__. FILTER (?hip IN ?__high_indegree_properties__)" +
+			"  } GROUP BY ?hip }" +
+			"  UNION { SELECT ?hop (COUNT(?y) AS ?outcount) WHERE {" +
+			"    ?__this__ ?hop ?y. FILTER (?hop IN ?__high_outdegree_properties__)" +
+			"  } GROUP BY ?hop }" +
+			"}";
+
+	/**
+	 * Starts the tasks on the executor, if there is one, and runs any
+	 * that haven't been picked up by the executor in this thread. Tasks
+	 * therefore never wait for a free thread, even if all the executor's
+	 * threads are busy waiting for other tasks.
+	 */
+	private void runConcurrently(List<FutureTask<?>> tasks) {
+		if (executor != null) {
+			for (FutureTask<?> task: tasks.subList(1, tasks.size())) {
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException ex) {
+					// Will be run below
+				}
+			}
+		}
+		for (FutureTask<?> task: tasks) {
+			task.run();
+		}
+	}
+
+	private <T> T getResult(FutureTask<T> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new QueryException("Interrupted while waiting for <" + endpointURL + ">");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new QueryException(ex.getCause());
+		}
 	}
 
+	/**
+	 * With SPARQL 1.1 and the default resource description queries,
+	 * resources are described in batches of {@link #MAX_BATCH_SIZE}, each
+	 * with a single query that has the IRIs in a <code>VALUES</code> block.
+	 * Otherwise, falls back to one {@link #describeResource(String)}
+	 * per IRI.
+	 */
 	@Override
-	public Map<Property, Integer> getHighIndegreeProperties(String resourceURI) {
-		return getHighDegreeProperties(
-				"SELECT ?p (COUNT(?s) AS ?count) " +
-				"WHERE { " +
-				"  ?s ?p ?__this__. " +
-				"  FILTER (?p IN ?__high_indegree_properties__)" +
-				"}" +
-				"GROUP BY ?p",
-				resourceURI);
+	public Model describeResources(Collection<String> resourceURIs) {
+		Model model = ModelFactory.createDefaultModel();
+		if (!supportsSPARQL11 || !usesDefaultResourceQueries) {
+			for (String resourceURI: resourceURIs) {
+				Model result = describeResource(resourceURI);
+				model.add(result);
+				model.setNsPrefixes(result);
+			}
+			return model;
+		}
+		List<String> batch = new ArrayList<String>(MAX_BATCH_SIZE);
+		for (String resourceURI: resourceURIs) {
+			batch.add(resourceURI);
+			if (batch.size() == MAX_BATCH_SIZE) {
+				describeBatch(batch, model);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			describeBatch(batch, model);
+		}
+		return model;
+	}
+	public final static int MAX_BATCH_SIZE = 50;
+
+	private void describeBatch(List<String> resourceURIs, Model model) {
+		StringBuilder values = new StringBuilder();
+		for (String resourceURI: resourceURIs) {
+			values.append(" <").append(resourceURI).append('>');
+		}
+		String query = replaceString(
+				"CONSTRUCT {?s ?p ?o} WHERE {VALUES ?s {?__values__ } ?s ?p ?o. " +
+				"FILTER (?p NOT IN ?__high_outdegree_properties__)}",
+				"?__values__", values.toString());
+		Model result = execQueryGraph(preProcessQuery(query, null));
+		model.add(result);
+		model.setNsPrefixes(result);
 	}
 
+	/**
+	 * Asks for the types of resources in batches of
+	 * {@link #MAX_BATCH_SIZE}, each with a single <code>SELECT</code>
+	 * query. Without SPARQL 1.1, the IRIs are listed in a
+	 * <code>FILTER</code> rather than a <code>VALUES</code> block.
+	 */
 	@Override
-	public Map<Property, Integer> getHighOutdegreeProperties(String resourceURI) {
-		return getHighDegreeProperties(
-				"SELECT ?p (COUNT(?o) AS ?count) " +
-				"WHERE { " +
-				"  ?__this__ ?p ?o. " +
-				"  FILTER (?p IN ?__high_outdegree_properties__)" +
-				"}" +
-				"GROUP BY ?p", 
-				resourceURI);
+	public Model getTypes(Collection<String> resourceURIs) {
+		Model model = ModelFactory.createDefaultModel();
+		List<String> batch = new ArrayList<String>(MAX_BATCH_SIZE);
+		for (String resourceURI: resourceURIs) {
+			batch.add(resourceURI);
+			if (batch.size() == MAX_BATCH_SIZE) {
+				addTypes(batch, model);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			addTypes(batch, model);
+		}
+		return model;
+	}
+
+	private void addTypes(List<String> resourceURIs, Model model) {
+		StringBuilder iris = new StringBuilder();
+		for (String resourceURI: resourceURIs) {
+			if (supportsSPARQL11) {
+				iris.append(" <").append(resourceURI).append('>');
+			} else {
+				if (iris.length() > 0) iris.append(" || ");
+				iris.append("?s = <").append(resourceURI).append('>');
+			}
+		}
+		ResultSet rs = execQuerySelect(supportsSPARQL11
+				? "SELECT ?s ?type WHERE {VALUES ?s {" + iris + " } ?s a ?type}"
+				: "SELECT ?s ?type WHERE {?s a ?type. FILTER (" + iris + ")}");
+		while (rs.hasNext()) {
+			QuerySolution solution = rs.next();
+			if (!solution.contains("s") || !solution.contains("type")) continue;
+			model.add(solution.getResource("s"), RDF.type, solution.get("type"));
+		}
 	}
 
+	private final static String HIGH_INDEGREE_QUERY =
+			"SELECT ?p (COUNT(?s) AS ?count) " +
+			"WHERE { " +
+			"  ?s ?p ?__this__. " +
+			"  FILTER (?p IN ?__high_indegree_properties__)" +
+			"}" +
+			"GROUP BY ?p";
+
+	private final static String HIGH_OUTDEGREE_QUERY =
+			"SELECT ?p (COUNT(?o) AS ?count) " +
+			"WHERE { " +
+			"  ?__this__ ?p ?o. " +
+			"  FILTER (?p IN ?__high_outdegree_properties__)" +
+			"}" +
+			"GROUP BY ?p";
+
 	private Map<Property, Integer> getHighDegreeProperties(String query, 
-			String resourceURI) {
+			String resourceURI, List<QueryRecord> records) {
 		if (!supportsSPARQL11) return null;
 		query = preProcessQuery(query, resourceURI);
-		ResultSet rs = execQuerySelect(query);
+		ResultSet rs = execQuerySelect(query, records);
 		Map<Property, Integer> results = new HashMap<Property, Integer>();
 		while (rs.hasNext()) {
 			QuerySolution solution = rs.next();
@@ -188,41 +465,72 @@ public class RemoteSPARQLDataSource implements DataSource {
 		return results;
 	}
 
+	/**
+	 * The offset and limit are appended to the queries as
+	 * <code>OFFSET</code> and <code>LIMIT</code> clauses. If there are
+	 * several queries for non-blank values, each is asked for its first
+	 * <code>offset + limit</code> values, and the page is cut from their
+	 * merged results. Blank node values are paged separately, so a page
+	 * can contain a page of non-blank values plus a page of blank node
+	 * values. A configured query that ends with its own
+	 * <code>LIMIT</code> or <code>OFFSET</code> is not paged; it is
+	 * sent unchanged, and on its own only for the first page.
+	 */
 	@Override
 	public Model listPropertyValues(String resourceURI, Property property, 
-			boolean isInverse) {
+			boolean isInverse, int offset, int limit) {
 		// Loop over the queries, join results in a single model.
 		// Process each query to replace place-holders of the given resource and property.
-		List<String> queries = new ArrayList<String>();
-		queries.addAll(isInverse ? inversePropertyQueries : propertyQueries);
-		queries.addAll(isInverse ? anonInversePropertyQueries : anonPropertyQueries);
+		Collection<String> queries = isInverse ? inversePropertyQueries : propertyQueries;
+		boolean isMerged = queries.size() > 1;
+		int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
 		Model model = ModelFactory.createDefaultModel();
 		for (String query: queries) {
-			String preprocessed = preProcessQuery(query, resourceURI, property);
-			Model result = execQueryGraph(preprocessed);
-			model.add(result);
-			model.setNsPrefixes(result);
+			addPropertyValues(model, preProcessQuery(query, resourceURI, property),
+					isMerged ? 0 : offset, isMerged ? end : limit);
+		}
+		if (isMerged) {
+			ModelUtil.sliceValues(model, model.getResource(resourceURI),
+					property, isInverse, offset, limit);
+		}
+		for (String query: isInverse ? anonInversePropertyQueries : anonPropertyQueries) {
+			addPropertyValues(model, preProcessQuery(query, resourceURI, property),
+					offset, limit);
 		}
 		return model;
 	}
+
+	private void addPropertyValues(Model model, String query, int offset, int limit) {
+		if (!trailingLimitPattern.matcher(query).find()) {
+			query += " LIMIT " + limit + (offset > 0 ? " OFFSET " + offset : "");
+		} else if (offset > 0) {
+			return;
+		}
+		Model result = execQueryGraph(query);
+		model.add(result);
+		model.setNsPrefixes(result);
+	}
 	
+	private final static Pattern trailingLimitPattern = 
+			Pattern.compile("\\b(LIMIT|OFFSET)\\s+\\d+\\s*$", Pattern.CASE_INSENSITIVE);
+
 	@Override
-	public List<Resource> getIndex() {
+	public List<Resource> getIndex(int limit) {
 		List<Resource> result = new ArrayList<Resource>();
 		ResultSet rs = execQuerySelect(
 				"SELECT DISTINCT ?s { " +
 				"?s ?p ?o " +
 				"FILTER (isURI(?s)) " +
-				"} LIMIT " + DataSource.MAX_INDEX_SIZE);
+				"} LIMIT " + limit);
 		while (rs.hasNext()) {
 			result.add(rs.next().getResource("s"));
 		}
-		if (result.size() < DataSource.MAX_INDEX_SIZE) {
+		if (result.size() < limit) {
 			rs = execQuerySelect(
 					"SELECT DISTINCT ?o { " +
 					"?s ?p ?o " +
 					"FILTER (isURI(?o)) " +
-					"} LIMIT " + (DataSource.MAX_INDEX_SIZE - result.size()));
+					"} LIMIT " + (limit - result.size()));
 			while (rs.hasNext()) {
 				result.add(rs.next().getResource("o"));
 			}
@@ -230,72 +538,107 @@ public class RemoteSPARQLDataSource implements DataSource {
 		return result;
 	}
 
-	public String getPreviousDescribeQuery() {
-		return previousDescribeQuery;
-	}
-	
 	private Model execQueryGraph(String query) {
-		Model model = ModelFactory.createDefaultModel();
-		previousDescribeQuery = query;
+		return execQueryGraph(query, null);
+	}
+
+	/**
+	 * @param records If not null, a record of the query is added to it
+	 */
+	private Model execQueryGraph(String query, List<QueryRecord> records) {
+		long start = System.currentTimeMillis();
 
 		// Since we don't know the exact query type (e.g. DESCRIBE or CONSTRUCT),
 		// and com.hp.hpl.jena.query.QueryFactory could throw exceptions on
-		// vendor-specific sections of the query, we use the lower-level
-		// com.hp.hpl.jena.sparql.engine.http.HttpQuery to execute the query and
-		// read the results into model.
-		
-		HttpQuery httpQuery = new HttpQuery(endpointURL);
-		httpQuery.addParam("query", query);
-		if (defaultGraphURI != null) {
-			httpQuery.addParam("default-graph-uri", defaultGraphURI);
-		}
-		for (String[] param: queryParamsGraph) {
-			httpQuery.addParam(param[0], param[1]);
-		}
-		
-		// The rest is more or less a copy of QueryEngineHTTP.execModel()
-		httpQuery.setAccept(contentType);
-		InputStream in = httpQuery.exec();
-
-		// Don't assume the endpoint actually gives back the content type we
-		// asked for
-		String actualContentType = httpQuery.getContentType();
-
-		// If the server fails to return a Content-Type then we will assume
-		// the server returned the type we asked for
-		if (actualContentType == null || actualContentType.equals("")) {
-			actualContentType = contentType;
-		}
-
-		// Try to select language appropriately here based on the model content
-		// type
-		Lang lang = WebContent.contentTypeToLang(actualContentType);
-		if (!RDFLanguages.isTriples(lang))
-			throw new QueryException("Endpoint <" + endpointURL + 
-					"> returned Content Type: " + actualContentType
-					+ " which is not a supported RDF graph syntax");
-		RDFDataMgr.read(model, in, lang);
+		// vendor-specific sections of the query, we send the query string
+		// as it is and read the results into a model.
+		List<NameValuePair> params = createParams(query, queryParamsGraph);
+		final String requestedContentType = 
+				contentType == null ? DEFAULT_GRAPH_CONTENT_TYPE : contentType;
+		Model model = transport.execute(endpointURL, params, requestedContentType,
+				new ResponseHandler<Model>() {
+			public Model handleResponse(HttpResponse response) throws IOException {
+				// Don't assume the endpoint actually gives back the content
+				// type we asked for. If the server fails to return a
+				// Content-Type then we will assume the server returned the
+				// type we asked for.
+				String actualContentType = HttpTransport.getMediaType(response);
+				if (actualContentType == null) {
+					actualContentType = requestedContentType;
+				}
+				Lang lang = WebContent.contentTypeToLang(actualContentType);
+				if (lang == null || !RDFLanguages.isTriples(lang))
+					throw new QueryException("Endpoint <" + endpointURL + 
+							"> returned Content Type: " + actualContentType
+							+ " which is not a supported RDF graph syntax");
+				Model result = ModelFactory.createDefaultModel();
+				RDFDataMgr.read(result, response.getEntity().getContent(), lang);
+				return result;
+			}
+		});
 
 		// Skip prefixes ns1, ns2, etc, which are usually
 		// auto-assigned by the endpoint and do more harm than good
 		for (String prefix: model.getNsPrefixMap().keySet()) {
-            if (prefix.matches("^ns[0-9]+$")) {
-            	model.removeNsPrefix(prefix);
-            }
-        }
+			if (prefix.matches("^ns[0-9]+$")) {
+				model.removeNsPrefix(prefix);
+			}
+		}
 		
+		record(query, true, start, model.size(), records);
 		return model;
 	}
 	
 	private ResultSet execQuerySelect(String query) {
-		QueryEngineHTTP endpoint = new QueryEngineHTTP(endpointURL, query);
+		return execQuerySelect(query, null);
+	}
+
+	/**
+	 * @param records If not null, a record of the query is added to it
+	 */
+	private ResultSet execQuerySelect(String query, List<QueryRecord> records) {
+		long start = System.currentTimeMillis();
+		ResultSetRewindable result = transport.execute(endpointURL,
+				createParams(query, queryParamsSelect),
+				WebContent.contentTypeResultsXML + ", " + 
+				WebContent.contentTypeResultsJSON + ";q=0.9",
+				new ResponseHandler<ResultSetRewindable>() {
+			public ResultSetRewindable handleResponse(HttpResponse response) throws IOException {
+				InputStream in = response.getEntity().getContent();
+				ResultSet results = 
+						WebContent.contentTypeResultsJSON.equals(HttpTransport.getMediaType(response))
+						? ResultSetFactory.fromJSON(in)
+						: ResultSetFactory.fromXML(in);
+				// Read everything before the connection goes back to the pool
+				return ResultSetFactory.copyResults(results);
+			}
+		});
+		record(query, false, start, result.size(), records);
+		return result;
+	}
+
+	private void record(String query, boolean isGraphQuery, long start,
+			long resultSize, List<QueryRecord> records) {
+		QueryRecord record = new QueryRecord(endpointURL, query, isGraphQuery,
+				System.currentTimeMillis() - start, resultSize);
+		if (log.isDebugEnabled()) {
+			log.debug("Query " + record);
+		}
+		if (records != null) {
+			records.add(record);
+		}
+	}
+	
+	private List<NameValuePair> createParams(String query, Set<String[]> extraParams) {
+		List<NameValuePair> result = new ArrayList<NameValuePair>();
+		result.add(new BasicNameValuePair("query", query));
 		if (defaultGraphURI != null) {
-			endpoint.setDefaultGraphURIs(Collections.singletonList(defaultGraphURI));
+			result.add(new BasicNameValuePair("default-graph-uri", defaultGraphURI));
 		}
-		for (String[] param: queryParamsSelect) {
-			endpoint.addParam(param[0], param[1]);
+		for (String[] param: extraParams) {
+			result.add(new BasicNameValuePair(param[0], param[1]));
 		}
-		return endpoint.execSelect();
+		return result;
 	}
 	
 	private String preProcessQuery(String query, String resourceURI) {
@@ -303,7 +646,8 @@ public class RemoteSPARQLDataSource implements DataSource {
 	}
 	
 	private String preProcessQuery(String query, String resourceURI, Property property) {
-		String result = replaceString(query, "?__this__", "<" + resourceURI + ">");
+		String result = resourceURI == null ? query :
+				replaceString(query, "?__this__", "<" + resourceURI + ">");
 		if (property != null) {
 			result = replaceString(result, "?__property__", "<" + property.getURI() + ">");
 		}
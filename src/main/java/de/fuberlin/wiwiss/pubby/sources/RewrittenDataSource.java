@@ -1,12 +1,13 @@
 package de.fuberlin.wiwiss.pubby.sources;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.vocabulary.OWL;
 
@@ -37,30 +38,22 @@ public class RewrittenDataSource implements DataSource {
 		this.addSameAs = addSameAsStatements;
 	}
 	
-	private boolean isOriginalIRI(String absoluteIRI) {
-		try {
-			rewriter.unrewrite(absoluteIRI);
-			return false;
-		} catch (IllegalArgumentException ex) {
-			// Tried to unrewrite an IRI that is already in original form
-			return true;
-		}
-	}
-	
 	@Override
 	public boolean canDescribe(String absoluteIRI) {
-		if (isOriginalIRI(absoluteIRI)) {
+		String originalIRI = rewriter.tryUnrewrite(absoluteIRI);
+		if (originalIRI == null) {
 			// According to our logic, the original namespace is empty
 			// because we transplanted it. It only contains a sameAs
 			// statements for every resource in it.
 			return addSameAs && original.canDescribe(absoluteIRI);
 		}
-		return original.canDescribe(rewriter.unrewrite(absoluteIRI));
+		return original.canDescribe(originalIRI);
 	}
 
 	@Override
 	public Model describeResource(String iri) {
-		if (isOriginalIRI(iri)) {
+		String originalIRI = rewriter.tryUnrewrite(iri);
+		if (originalIRI == null) {
 			// According to our logic, the original namespace is empty
 			// because we transplanted it. It only contains a sameAs
 			// statements for every resource in it.
@@ -72,40 +65,78 @@ public class RewrittenDataSource implements DataSource {
 			return result;
 		}
 		// Normal case -- a rewritten IRI
-		Model result = rewriter.rewrite(
-				original.describeResource(
-						rewriter.unrewrite(iri)));
+		Model result = rewriter.rewrite(original.describeResource(originalIRI));
 		if (addSameAs && !result.isEmpty()) {
 			addSameAsStatement(result, iri);
 		}
 		return result;
 	}
 
+	/**
+	 * IRIs in original form are skipped because they have no outgoing
+	 * arcs in this data source.
+	 */
+	@Override
+	public Model describeResources(Collection<String> absoluteIRIs) {
+		List<String> rewrittenIRIs = new ArrayList<String>(absoluteIRIs.size());
+		List<String> originalIRIs = new ArrayList<String>(absoluteIRIs.size());
+		for (String iri: absoluteIRIs) {
+			String originalIRI = rewriter.tryUnrewrite(iri);
+			if (originalIRI == null) continue;
+			rewrittenIRIs.add(iri);
+			originalIRIs.add(originalIRI);
+		}
+		if (originalIRIs.isEmpty()) return ModelUtil.EMPTY_MODEL;
+		Model result = rewriter.rewrite(original.describeResources(originalIRIs));
+		if (addSameAs) {
+			for (String iri: rewrittenIRIs) {
+				if (!result.contains(result.getResource(iri), null, (RDFNode) null)) continue;
+				addSameAsStatement(result, iri);
+			}
+		}
+		return result;
+	}
+
 	@Override
-	public Map<Property, Integer> getHighIndegreeProperties(String resourceIRI) {
-		if (isOriginalIRI(resourceIRI)) return null;
-		return rewriter.rewrite(
-				original.getHighIndegreeProperties(
-						rewriter.unrewrite(resourceIRI)));
+	public Model getTypes(Collection<String> absoluteIRIs) {
+		List<String> originalIRIs = new ArrayList<String>(absoluteIRIs.size());
+		for (String iri: absoluteIRIs) {
+			String originalIRI = rewriter.tryUnrewrite(iri);
+			if (originalIRI == null) continue;
+			originalIRIs.add(originalIRI);
+		}
+		if (originalIRIs.isEmpty()) return ModelUtil.EMPTY_MODEL;
+		return rewriter.rewrite(original.getTypes(originalIRIs));
 	}
 
 	@Override
-	public Map<Property, Integer> getHighOutdegreeProperties(String resourceIRI) {
-		if (isOriginalIRI(resourceIRI)) return null;
-		return rewriter.rewrite(
-				original.getHighOutdegreeProperties(
-						rewriter.unrewrite(resourceIRI)));
+	public DescriptionResult getDescription(String absoluteIRI) {
+		String originalIRI = rewriter.tryUnrewrite(absoluteIRI);
+		if (originalIRI == null) {
+			return new DescriptionResult(describeResource(absoluteIRI));
+		}
+		// Normal case -- a rewritten IRI
+		DescriptionResult original = this.original.getDescription(originalIRI);
+		Model result = rewriter.rewrite(original.getModel());
+		if (addSameAs && !result.isEmpty()) {
+			addSameAsStatement(result, absoluteIRI);
+		}
+		return new DescriptionResult(result,
+				rewriter.rewrite(original.getHighIndegreeProperties()),
+				rewriter.rewrite(original.getHighOutdegreeProperties()),
+				original.getQueries());
 	}
 
 	@Override
 	public Model listPropertyValues(String resourceIRI, Property property,
-			boolean isInverse) {
-		if (isOriginalIRI(resourceIRI)) {
+			boolean isInverse, int offset, int limit) {
+		String originalIRI = rewriter.tryUnrewrite(resourceIRI);
+		if (originalIRI == null) {
 			// According to our logic, the original namespace is empty
 			// because we transplanted it. It only contains a sameAs
 			// statements for every resource in it.
 			if (!addSameAs || !property.equals(OWL.sameAs) || !isInverse || 
-					original.describeResource(resourceIRI).isEmpty()) {
+					offset > 0 || original.describeResource(resourceIRI).isEmpty()) {
 				return ModelUtil.EMPTY_MODEL;
 			}
 			Model result = ModelFactory.createDefaultModel();
@@ -115,18 +146,20 @@ public class RewrittenDataSource implements DataSource {
 		// Normal case -- a rewritten IRI
 		Model result = rewriter.rewrite(
 				original.listPropertyValues(
-						rewriter.unrewrite(resourceIRI), 
+						originalIRI, 
 						rewriter.unrewrite(property), 
-						isInverse));
-		if (addSameAs && !result.isEmpty() && property.equals(OWL.sameAs) && !isInverse) {
+						isInverse, offset, limit));
+		// The sameAs statement goes on the first page
+		if (addSameAs && !result.isEmpty() && property.equals(OWL.sameAs) && !isInverse &&
+				offset == 0) {
 			addSameAsStatement(result, resourceIRI);
 		}
 		return result;
 	}
 
 	@Override
-	public List<Resource> getIndex() {
-		List<Resource> originalIndex = original.getIndex();
+	public List<Resource> getIndex(int limit) {
+		List<Resource> originalIndex = original.getIndex(limit);
 		List<Resource> result = new ArrayList<Resource>(originalIndex.size());
 		for (Resource r: originalIndex) {
 			result.add(rewriter.rewrite(r));
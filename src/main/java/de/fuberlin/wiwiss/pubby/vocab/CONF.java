@@ -23,9 +23,24 @@ public class CONF {
 	public static final Property imageProperty = m.createProperty(NS + "imageProperty");
 	public static final Property defaultLanguage = m.createProperty(NS + "defaultLanguage");
 	public static final Property indexResource = m.createProperty(NS + "indexResource");
+	public static final Property indexSize = m.createProperty(NS + "indexSize");
+	public static final Property indexPageSize = m.createProperty(NS + "indexPageSize");
+	public static final Property indexRefreshInterval = m.createProperty(NS + "indexRefreshInterval");
 	public static final Property dataset = m.createProperty(NS + "dataset");
 	public static final Property showLabels = m.createProperty(NS + "showLabels");
+	public static final Property prettyPrintRDF = m.createProperty(NS + "prettyPrintRDF");
 	public static final Property loadVocabulary = m.createProperty(NS + "loadVocabulary");
+	public static final Property cacheSize = m.createProperty(NS + "cacheSize");
+	public static final Property cacheTTL = m.createProperty(NS + "cacheTTL");
+	public static final Property sourceThreads = m.createProperty(NS + "sourceThreads");
+	public static final Property requestThreads = m.createProperty(NS + "requestThreads");
+	public static final Property sourceTimeout = m.createProperty(NS + "sourceTimeout");
+	public static final Property skipSlowSources = m.createProperty(NS + "skipSlowSources");
+	public static final Property httpMaxConnections = m.createProperty(NS + "httpMaxConnections");
+	public static final Property httpMaxConnectionsPerEndpoint = m.createProperty(NS + "httpMaxConnectionsPerEndpoint");
+	public static final Property httpConnectTimeout = m.createProperty(NS + "httpConnectTimeout");
+	public static final Property httpReadTimeout = m.createProperty(NS + "httpReadTimeout");
+	public static final Property httpMaxRetries = m.createProperty(NS + "httpMaxRetries");
 
 	// Dataset subclasses
 	public static final Resource AnnotationProvider = m.createResource(NS + "AnnotationProvider");
@@ -39,7 +54,10 @@ public class CONF {
 	public static final Property sparqlEndpoint = m.createProperty(NS + "sparqlEndpoint"); 
 	public static final Property sparqlDefaultGraph = m.createProperty(NS + "sparqlDefaultGraph");
 	public static final Property supportsSPARQL11 = m.createProperty(NS + "supportsSPARQL11");
+	public static final Property combineQueries = m.createProperty(NS + "combineQueries");
+	public static final Property cacheMaxAge = m.createProperty(NS + "cacheMaxAge");
 	public static final Property loadRDF = m.createProperty(NS + "loadRDF");
+	public static final Property storage = m.createProperty(NS + "storage");
 	public static final Property rdfDocumentMetadata = m.createProperty(NS + "rdfDocumentMetadata");
 	public static final Property metadataTemplate = m.createProperty(NS + "metadataTemplate");
 	public static final Property contentType = m.createProperty(NS + "contentType");
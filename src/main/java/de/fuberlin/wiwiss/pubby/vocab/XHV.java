@@ -0,0 +1,19 @@
+package de.fuberlin.wiwiss.pubby.vocab;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+
+/**
+ * The XHTML vocabulary, for link relations such as <tt>next</tt>
+ * in RDF documents.
+ */
+public class XHV {
+
+	public static final String NS = "http://www.w3.org/1999/xhtml/vocab#";
+	
+	private static final Model m = ModelFactory.createDefaultModel();
+	
+	public static final Property next = m.createProperty(NS + "next");
+	public static final Property prev = m.createProperty(NS + "prev");
+}
@@ -0,0 +1,124 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class BoundedCacheTest extends TestCase {
+	private AtomicInteger loads;
+
+	public void setUp() {
+		loads = new AtomicInteger();
+	}
+
+	public void testValueIsLoadedOnce() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0);
+		assertEquals("a!", cache.get("a", loader("a")));
+		assertEquals("a!", cache.get("a", loader("a")));
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	public void testLeastRecentlyUsedIsEvicted() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(2, 0);
+		cache.get("a", loader("a"));
+		cache.get("b", loader("b"));
+		cache.get("a", loader("a"));
+		cache.get("c", loader("c"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNotNull(cache.getIfPresent("a"));
+		assertNull(cache.getIfPresent("b"));
+	}
+
+	public void testExpiredValueIsReloaded() throws InterruptedException {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 1);
+		cache.get("a", loader("a"));
+		Thread.sleep(10);
+		cache.get("a", loader("a"));
+		assertEquals(2, loads.get());
+	}
+
+	public void testNullValuesAreCached() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0);
+		assertNull(cache.get("a", loader(null)));
+		assertNull(cache.get("a", loader(null)));
+		assertEquals(1, loads.get());
+	}
+
+	public void testNullValuesExpireSeparately() throws InterruptedException {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, 1);
+		cache.get("a", loader("a"));
+		cache.get("b", loader(null));
+		Thread.sleep(10);
+		cache.get("a", loader("a"));
+		cache.get("b", loader(null));
+		assertEquals(3, loads.get());
+	}
+
+	public void testLargeCacheStaysBounded() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(1000, 0);
+		for (int i = 0; i < 5000; i++) {
+			cache.get("key" + i, loader("v"));
+		}
+		assertEquals(1000, cache.size());
+		assertEquals(4000, cache.getEvictionCount());
+	}
+
+	public void testFailedLoadIsNotCached() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0);
+		try {
+			cache.get("a", new Callable<String>() {
+				public String call() {
+					throw new IllegalStateException("boom");
+				}
+			});
+			fail("Expected exception");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+		assertEquals("a!", cache.get("a", loader("a")));
+	}
+
+	public void testConcurrentRequestsAreCoalesced() throws InterruptedException {
+		final BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<String> slowLoader = new Callable<String>() {
+			public String call() throws InterruptedException {
+				loads.incrementAndGet();
+				release.await();
+				return "slow";
+			}
+		};
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					cache.get("a", slowLoader);
+				}
+			};
+			threads[i].start();
+		}
+		Thread.sleep(50);
+		release.countDown();
+		for (Thread t: threads) {
+			t.join();
+		}
+		assertEquals(1, loads.get());
+		assertEquals("slow", cache.getIfPresent("a"));
+	}
+
+	private Callable<String> loader(final String value) {
+		return new Callable<String>() {
+			public String call() {
+				loads.incrementAndGet();
+				return value == null ? null : value + "!";
+			}
+		};
+	}
+}
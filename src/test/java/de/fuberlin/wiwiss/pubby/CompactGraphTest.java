@@ -0,0 +1,99 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.shared.AddDeniedException;
+
+public class CompactGraphTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private Node[] nodes;
+	private Node[] predicates;
+	private Graph expected;
+	private Graph compact;
+
+	public void setUp() {
+		nodes = new Node[] {
+				NodeFactory.createURI(NS + "a"),
+				NodeFactory.createURI(NS + "b"),
+				NodeFactory.createURI(NS + "Köln"),
+				NodeFactory.createAnon(new AnonId("b1")),
+				NodeFactory.createLiteral("a"),
+				NodeFactory.createLiteral("a", "en", false),
+				NodeFactory.createLiteral("1", XSDDatatype.XSDinteger),
+				NodeFactory.createLiteral("x\u0000y", "de", false)
+		};
+		predicates = new Node[] {
+				NodeFactory.createURI(NS + "p"),
+				NodeFactory.createURI(NS + "q"),
+				NodeFactory.createURI(NS + "r")
+		};
+		expected = Factory.createGraphMem();
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		Random random = new Random(42);
+		for (int i = 0; i < 3000; i++) {
+			Node s = nodes[random.nextInt(4)];
+			Node p = predicates[random.nextInt(predicates.length)];
+			Node o = nodes[random.nextInt(nodes.length)];
+			Triple t = Triple.create(s, p, o);
+			expected.add(t);
+			builder.add(t);
+		}
+		builder.setNsPrefix("ex", NS);
+		compact = builder.build();
+	}
+
+	public void testSizeWithoutDuplicates() {
+		assertEquals(expected.size(), compact.size());
+	}
+
+	public void testAllPatterns() {
+		Node[] subjects = {Node.ANY, nodes[0], nodes[3], NodeFactory.createURI(NS + "missing")};
+		Node[] props = {Node.ANY, predicates[0], predicates[2]};
+		for (Node s: subjects) {
+			for (Node p: props) {
+				assertSameTriples(s, p, Node.ANY);
+				for (Node o: nodes) {
+					assertSameTriples(s, p, o);
+				}
+			}
+		}
+	}
+
+	public void testPrefixes() {
+		assertEquals(NS, compact.getPrefixMapping().getNsPrefixURI("ex"));
+	}
+
+	public void testEmpty() {
+		Graph empty = new CompactGraph.Builder().build();
+		assertTrue(empty.isEmpty());
+		assertFalse(empty.contains(nodes[0], Node.ANY, Node.ANY));
+	}
+
+	public void testReadOnly() {
+		try {
+			compact.add(Triple.create(nodes[0], predicates[0], nodes[1]));
+			fail("Expected AddDeniedException");
+		} catch (AddDeniedException ex) {
+			// expected
+		}
+	}
+
+	private void assertSameTriples(Node s, Node p, Node o) {
+		List<Triple> actual = compact.find(s, p, o).toList();
+		Set<Triple> expectedTriples = expected.find(s, p, o).toSet();
+		assertEquals(s + " " + p + " " + o, expectedTriples.size(), actual.size());
+		assertEquals(expectedTriples, new HashSet<Triple>(actual));
+	}
+}
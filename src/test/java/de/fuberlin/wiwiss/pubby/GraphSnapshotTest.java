@@ -0,0 +1,107 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+
+public class GraphSnapshotTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private File dir;
+	private File source;
+	private File file;
+	private List<File> sources;
+	private CompactGraph graph;
+
+	public void setUp() throws IOException {
+		dir = File.createTempFile("pubby", "test");
+		dir.delete();
+		dir.mkdir();
+		source = new File(dir, "data.nt");
+		writeSource("original");
+		file = new File(dir, "data.nt.snapshot");
+		sources = Collections.singletonList(source);
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		Node a = NodeFactory.createURI(NS + "a");
+		Node p = NodeFactory.createURI(NS + "p");
+		builder.add(Triple.create(a, p, NodeFactory.createURI(NS + "b")));
+		builder.add(Triple.create(a, p, NodeFactory.createLiteral("Köln", "de", false)));
+		builder.add(Triple.create(a, p, NodeFactory.createLiteral("1", XSDDatatype.XSDinteger)));
+		builder.add(Triple.create(NodeFactory.createAnon(new AnonId("x")), p, a));
+		builder.setNsPrefix("ex", NS);
+		graph = builder.build();
+	}
+
+	public void tearDown() {
+		for (File f: dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	public void testNoSnapshot() {
+		assertNull(new GraphSnapshot(file, sources, NS).load());
+	}
+
+	public void testRoundTrip() {
+		new GraphSnapshot(file, sources, NS).save(graph);
+		CompactGraph loaded = new GraphSnapshot(file, sources, NS).load();
+		assertNotNull(loaded);
+		assertEquals(graph.size(), loaded.size());
+		assertEquals(graph.find(Node.ANY, Node.ANY, Node.ANY).toSet(),
+				new HashSet<Triple>(loaded.find(Node.ANY, Node.ANY, Node.ANY).toList()));
+		Node a = NodeFactory.createURI(NS + "a");
+		assertEquals(3, loaded.find(a, Node.ANY, Node.ANY).toList().size());
+		assertEquals(1, loaded.find(Node.ANY, Node.ANY, a).toList().size());
+		assertEquals(NS, loaded.getPrefixMapping().getNsPrefixURI("ex"));
+	}
+
+	public void testEmptyGraphRoundTrip() {
+		new GraphSnapshot(file, sources, NS).save(new CompactGraph.Builder().build());
+		CompactGraph loaded = new GraphSnapshot(file, sources, NS).load();
+		assertNotNull(loaded);
+		assertTrue(loaded.isEmpty());
+	}
+
+	public void testChangedSourceIsStale() throws IOException {
+		new GraphSnapshot(file, sources, NS).save(graph);
+		writeSource("modified");
+		source.setLastModified(source.lastModified() + 10000);
+		assertNull(new GraphSnapshot(file, sources, NS).load());
+	}
+
+	public void testTouchedButUnchangedSourceIsCurrent() {
+		new GraphSnapshot(file, sources, NS).save(graph);
+		source.setLastModified(source.lastModified() + 10000);
+		assertNotNull(new GraphSnapshot(file, sources, NS).load());
+	}
+
+	public void testDifferentBaseIsStale() {
+		new GraphSnapshot(file, sources, NS).save(graph);
+		assertNull(new GraphSnapshot(file, sources, "http://example.org/").load());
+	}
+
+	public void testOtherFileIsIgnored() throws IOException {
+		Writer out = new FileWriter(file);
+		out.write("not a snapshot");
+		out.close();
+		assertNull(new GraphSnapshot(file, sources, NS).load());
+	}
+
+	private void writeSource(String content) throws IOException {
+		Writer out = new FileWriter(source);
+		out.write(content);
+		out.close();
+	}
+}
@@ -0,0 +1,78 @@
+package de.fuberlin.wiwiss.pubby;
+
+import junit.framework.TestCase;
+
+public class IRIEncoderTest extends TestCase {
+
+	public void testToIRIReturnsUnchangedInput() {
+		String uri = "http://dbpedia.org/resource/Berlin";
+		assertSame(uri, IRIEncoder.toIRI(uri));
+	}
+
+	public void testToIRIDecodesUTF8() {
+		assertEquals("http://dbpedia.org/resource/Köln",
+				IRIEncoder.toIRI("http://dbpedia.org/resource/K%C3%B6ln"));
+		assertEquals("http://dbpedia.org/resource/東京",
+				IRIEncoder.toIRI("http://dbpedia.org/resource/%E6%9D%B1%E4%BA%AC"));
+		assertEquals("http://example.com/😀",
+				IRIEncoder.toIRI("http://example.com/%F0%9F%98%80"));
+	}
+
+	public void testToIRIDecodesUnreservedASCII() {
+		assertEquals("http://example.com/a-b~c",
+				IRIEncoder.toIRI("http://example.com/%61%2Db%7ec"));
+	}
+
+	public void testToIRIKeepsReservedASCIIEncoded() {
+		assertEquals("http://dbpedia.org/resource/AC%2FDC",
+				IRIEncoder.toIRI("http://dbpedia.org/resource/AC%2FDC"));
+		assertEquals("http://example.com/a%2Fb%3F",
+				IRIEncoder.toIRI("http://example.com/a%2fb%3f"));
+		assertEquals("http://example.com/100%25",
+				IRIEncoder.toIRI("http://example.com/100%25"));
+	}
+
+	public void testToIRIKeepsInvalidUTF8Encoded() {
+		// Continuation octet without start
+		assertEquals("http://example.com/%B6", IRIEncoder.toIRI("http://example.com/%B6"));
+		// Incomplete sequence
+		assertEquals("http://example.com/%C3x", IRIEncoder.toIRI("http://example.com/%C3x"));
+		assertEquals("http://example.com/%E6%9D", IRIEncoder.toIRI("http://example.com/%E6%9D"));
+		// Overlong encoding of '/'
+		assertEquals("http://example.com/%C0%AF", IRIEncoder.toIRI("http://example.com/%C0%AF"));
+		// Only the broken octet stays encoded
+		assertEquals("http://example.com/%C3ö",
+				IRIEncoder.toIRI("http://example.com/%C3%C3%B6"));
+	}
+
+	public void testToIRIIgnoresMalformedPercentSigns() {
+		assertEquals("http://example.com/%zz%", IRIEncoder.toIRI("http://example.com/%zz%"));
+		assertEquals("http://example.com/%4", IRIEncoder.toIRI("http://example.com/%4"));
+	}
+
+	public void testToURIReturnsUnchangedInput() {
+		String iri = "http://dbpedia.org/resource/AC%2FDC";
+		assertSame(iri, IRIEncoder.toURI(iri));
+	}
+
+	public void testToURIEncodesNonASCII() {
+		assertEquals("http://dbpedia.org/resource/K%C3%B6ln",
+				IRIEncoder.toURI("http://dbpedia.org/resource/Köln"));
+		assertEquals("http://dbpedia.org/resource/%E6%9D%B1%E4%BA%AC",
+				IRIEncoder.toURI("http://dbpedia.org/resource/東京"));
+		assertEquals("http://example.com/%C2%80",
+				IRIEncoder.toURI("http://example.com/\u0080"));
+		assertEquals("http://example.com/%F0%9F%98%80",
+				IRIEncoder.toURI("http://example.com/😀"));
+	}
+
+	public void testToURIReplacesUnpairedSurrogate() {
+		assertEquals("http://example.com/%EF%BF%BDa",
+				IRIEncoder.toURI("http://example.com/\ud83da"));
+	}
+
+	public void testRoundTrip() {
+		String iri = "http://dbpedia.org/resource/São_Paulo_(東)";
+		assertEquals(iri, IRIEncoder.toIRI(IRIEncoder.toURI(iri)));
+	}
+}
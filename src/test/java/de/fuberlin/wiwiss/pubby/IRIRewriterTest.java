@@ -0,0 +1,113 @@
+package de.fuberlin.wiwiss.pubby;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+public class IRIRewriterTest extends TestCase {
+	private final static String ORIGINAL = "http://data.example.org/";
+	private final static String REWRITTEN = "http://localhost:8080/resource/";
+
+	public void testNamespaceBasedClassification() {
+		IRIRewriter rewriter = IRIRewriter.createNamespaceBased(ORIGINAL, REWRITTEN);
+		assertTrue(rewriter.isOriginal(ORIGINAL + "a"));
+		assertFalse(rewriter.isRewritten(ORIGINAL + "a"));
+		assertTrue(rewriter.isRewritten(REWRITTEN + "a"));
+		assertFalse(rewriter.isOriginal(REWRITTEN + "a"));
+		assertFalse(rewriter.isOriginal("http://example.com/a"));
+		assertFalse(rewriter.isRewritten("http://example.com/a"));
+	}
+
+	public void testNamespaceBasedTryUnrewrite() {
+		IRIRewriter rewriter = IRIRewriter.createNamespaceBased(ORIGINAL, REWRITTEN);
+		assertEquals(ORIGINAL + "a", rewriter.tryUnrewrite(REWRITTEN + "a"));
+		assertEquals("http://example.com/a", rewriter.tryUnrewrite("http://example.com/a"));
+		assertNull(rewriter.tryUnrewrite(ORIGINAL + "a"));
+	}
+
+	public void testChain() {
+		IRIRewriter rewriter = IRIRewriter.chain(
+				IRIRewriter.createNamespaceBased(ORIGINAL, REWRITTEN),
+				new PubbyIRIEscaper(REWRITTEN, false));
+		assertEquals(ORIGINAL + "a#b", rewriter.tryUnrewrite(REWRITTEN + "a%23b"));
+		assertNull(rewriter.tryUnrewrite(ORIGINAL + "a"));
+		assertTrue(rewriter.isOriginal(ORIGINAL + "a"));
+		assertTrue(rewriter.isRewritten(REWRITTEN + "a"));
+		assertFalse(rewriter.isRewritten(ORIGINAL + "a"));
+	}
+
+	public void testEscaperNeverRejects() {
+		IRIRewriter escaper = new PubbyIRIEscaper(REWRITTEN, false);
+		assertEquals(REWRITTEN + "a?b", escaper.tryUnrewrite(REWRITTEN + "a%3Fb"));
+		assertFalse(escaper.isOriginal(REWRITTEN + "a"));
+		assertFalse(escaper.isRewritten(REWRITTEN + "a"));
+	}
+
+	public void testDefaultImplementationCatchesException() {
+		IRIRewriter rewriter = new IRIRewriter() {
+			@Override
+			public String rewrite(String absoluteIRI) {
+				if (absoluteIRI.startsWith(REWRITTEN)) throw new IllegalArgumentException();
+				return absoluteIRI;
+			}
+			@Override
+			public String unrewrite(String absoluteIRI) {
+				if (absoluteIRI.startsWith(ORIGINAL)) throw new IllegalArgumentException();
+				return absoluteIRI;
+			}
+		};
+		assertNull(rewriter.tryUnrewrite(ORIGINAL + "a"));
+		assertTrue(rewriter.isOriginal(ORIGINAL + "a"));
+		assertTrue(rewriter.isRewritten(REWRITTEN + "a"));
+		assertFalse(rewriter.isRewritten(ORIGINAL + "a"));
+	}
+
+	public void testMayRewrite() {
+		IRIRewriter rewriter = IRIRewriter.chain(
+				IRIRewriter.createNamespaceBased(ORIGINAL, REWRITTEN),
+				new PubbyIRIEscaper(REWRITTEN, false));
+		assertTrue(rewriter.mayRewrite(ORIGINAL + "a"));
+		assertTrue(rewriter.mayRewrite(REWRITTEN + "a#b"));
+		assertFalse(rewriter.mayRewrite("http://example.com/a#b"));
+		assertFalse(IRIRewriter.identity.mayRewrite(ORIGINAL + "a"));
+		assertFalse(new PubbyIRIEscaper(REWRITTEN, false).mayRewrite(REWRITTEN + "a"));
+		assertTrue(new PubbyIRIEscaper(REWRITTEN, true).mayRewrite(REWRITTEN + "%C3%A9"));
+	}
+
+	public void testUnaffectedModelIsNotCopied() {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource("http://example.com/a").addProperty(RDFS.label, "a");
+		IRIRewriter rewriter = IRIRewriter.createNamespaceBased(ORIGINAL, REWRITTEN);
+		assertSame(model, rewriter.rewrite(model));
+	}
+
+	public void testRewrittenModelView() {
+		Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefix("data", ORIGINAL);
+		Resource a = model.createResource(ORIGINAL + "a");
+		a.addProperty(RDFS.seeAlso, model.createResource(ORIGINAL + "b"));
+		a.addProperty(RDFS.label, "a");
+		model.createResource("http://example.com/c").addProperty(RDFS.seeAlso, a);
+		IRIRewriter rewriter = IRIRewriter.createNamespaceBased(ORIGINAL, REWRITTEN);
+		Model rewritten = rewriter.rewrite(model);
+		assertEquals(REWRITTEN, rewritten.getNsPrefixURI("data"));
+		assertEquals(3, rewritten.size());
+		Resource ra = rewritten.getResource(REWRITTEN + "a");
+		assertTrue(rewritten.contains(ra, RDFS.seeAlso, rewritten.getResource(REWRITTEN + "b")));
+		assertTrue(rewritten.contains(ra, RDFS.label, "a"));
+		assertTrue(rewritten.contains(rewritten.getResource("http://example.com/c"), RDFS.seeAlso, ra));
+		assertFalse(rewritten.contains(rewritten.getResource(ORIGINAL + "a"), null));
+		assertEquals(2, rewritten.listStatements(ra, null, (Resource) null).toList().size());
+
+		// Additions go to the view only
+		ra.addProperty(OWL.sameAs, rewritten.getResource(ORIGINAL + "a"));
+		ra.addProperty(RDFS.label, "a");
+		assertEquals(4, rewritten.size());
+		assertTrue(rewritten.contains(ra, OWL.sameAs));
+		assertEquals(3, model.size());
+	}
+}
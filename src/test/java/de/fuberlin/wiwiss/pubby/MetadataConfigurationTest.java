@@ -0,0 +1,62 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.pubby.sources.QueryRecord;
+import de.fuberlin.wiwiss.pubby.vocab.CONF;
+
+public class MetadataConfigurationTest extends TestCase {
+	private final static String ENDPOINT = "http://example.com/sparql";
+	private final static String DOCUMENT = "http://example.com/doc";
+	private File template;
+	private MetadataConfiguration metadata;
+
+	public void setUp() throws IOException {
+		template = File.createTempFile("pubby-metadata", ".ttl");
+		OutputStream out = new FileOutputStream(template);
+		try {
+			out.write(("<" + DOCUMENT + "> <" + RDFS.label.getURI() +
+					"> <about:metadata:runtime:query> .").getBytes("utf-8"));
+		} finally {
+			out.close();
+		}
+		Model config = ModelFactory.createDefaultModel();
+		Resource dataset = config.createResource();
+		dataset.addProperty(CONF.sparqlEndpoint, config.createResource(ENDPOINT));
+		dataset.addProperty(CONF.metadataTemplate,
+				config.createResource("file://" + template.toURI().getPath()));
+		metadata = new MetadataConfiguration(dataset);
+	}
+
+	public void tearDown() {
+		template.delete();
+	}
+
+	public void testRuntimeQueryIsGraphQuery() {
+		Model document = ModelFactory.createDefaultModel();
+		metadata.addMetadataFromTemplate(document, null, Arrays.asList(
+				new QueryRecord("http://example.com/other", "DESCRIBE <a>", true, 10, 1),
+				new QueryRecord(ENDPOINT, "SELECT ?p (COUNT(?o) AS ?count) {}", false, 10, 0),
+				new QueryRecord(ENDPOINT, "CONSTRUCT {} {}", true, 10, 1)));
+		assertEquals("CONSTRUCT {} {}", document.getResource(DOCUMENT)
+				.getProperty(RDFS.label).getString());
+	}
+
+	public void testNoRuntimeQueryWithoutGraphQuery() {
+		Model document = ModelFactory.createDefaultModel();
+		metadata.addMetadataFromTemplate(document, null, Arrays.asList(
+				new QueryRecord(ENDPOINT, "SELECT ?p (COUNT(?o) AS ?count) {}", false, 10, 0)));
+		assertFalse(document.getResource(DOCUMENT).hasProperty(RDFS.label));
+	}
+}
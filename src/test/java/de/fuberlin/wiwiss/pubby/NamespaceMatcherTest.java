@@ -0,0 +1,66 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+public class NamespaceMatcherTest extends TestCase {
+	private NamespaceMatcher matcher;
+
+	public void setUp() {
+		matcher = new NamespaceMatcher.Builder()
+				.add("http://example.com/", 0)
+				.add("http://example.com/vocab#", 1)
+				.add("http://example.org/", 1)
+				.add("http://example.com/vocab#", 2)
+				.build();
+	}
+
+	public void testMatchesAny() {
+		NamespaceMatcher m = new NamespaceMatcher(Arrays.asList(
+				"http://example.com/", "http://example.org/data/"));
+		assertTrue(m.matchesAny("http://example.com/"));
+		assertTrue(m.matchesAny("http://example.com/foo"));
+		assertTrue(m.matchesAny("http://example.org/data/foo"));
+		assertFalse(m.matchesAny("http://example.org/foo"));
+		assertFalse(m.matchesAny("http://example.com"));
+		assertFalse(m.matchesAny(""));
+	}
+
+	public void testEmptyNamespaceMatchesEverything() {
+		NamespaceMatcher m = new NamespaceMatcher(Arrays.asList(""));
+		assertTrue(m.matchesAny(""));
+		assertTrue(m.matchesAny("http://example.com/"));
+	}
+
+	public void testNoNamespaces() {
+		NamespaceMatcher m = new NamespaceMatcher(Arrays.<String>asList());
+		assertFalse(m.matchesAny("http://example.com/"));
+		assertTrue(m.findAll("http://example.com/").isEmpty());
+		assertNull(m.findLongest("http://example.com/"));
+	}
+
+	public void testFindAll() {
+		assertEquals(bits(0, 1, 2), matcher.findAll("http://example.com/vocab#name"));
+		assertEquals(bits(0), matcher.findAll("http://example.com/vocab"));
+		assertEquals(bits(1), matcher.findAll("http://example.org/"));
+		assertEquals(bits(), matcher.findAll("http://example.net/"));
+	}
+
+	public void testFindLongest() {
+		assertTrue(Arrays.equals(new int[] {1, 25},
+				matcher.findLongest("http://example.com/vocab#name")));
+		assertTrue(Arrays.equals(new int[] {0, 19},
+				matcher.findLongest("http://example.com/vocab")));
+		assertNull(matcher.findLongest("http://example.net/"));
+	}
+
+	private BitSet bits(int... ids) {
+		BitSet result = new BitSet();
+		for (int id: ids) {
+			result.set(id);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,93 @@
+package de.fuberlin.wiwiss.pubby;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+public class OverlayGraphTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private Model base;
+	private Model view;
+	private Resource a, b, c;
+	private Property p, q;
+
+	public void setUp() {
+		base = ModelFactory.createDefaultModel();
+		base.setNsPrefix("ex", NS);
+		a = base.createResource(NS + "a");
+		b = base.createResource(NS + "b");
+		c = base.createResource(NS + "c");
+		p = base.createProperty(NS + "p");
+		q = base.createProperty(NS + "q");
+		base.add(a, p, b);
+		base.add(a, p, c);
+		base.add(a, q, b);
+		base.add(b, p, a);
+		view = OverlayGraph.createModel(base);
+	}
+
+	public void testUnmodifiedViewShowsBase() {
+		assertTrue(view.isIsomorphicWith(base));
+		assertEquals(NS, view.getNsPrefixURI("ex"));
+	}
+
+	public void testAddDoesNotModifyBase() {
+		view.add(c, q, a);
+		view.add(a, p, b);
+		assertTrue(view.contains(c, q, a));
+		assertFalse(base.contains(c, q, a));
+		assertEquals(5, view.size());
+		assertEquals(4, base.size());
+	}
+
+	public void testRemovePropertyMasksArcs() {
+		view.getResource(NS + "a").removeAll(p);
+		assertFalse(view.contains(a, p, (RDFNode) null));
+		assertTrue(view.contains(a, q, b));
+		assertTrue(view.contains(b, p, a));
+		assertEquals(2, view.size());
+		assertEquals(4, base.size());
+	}
+
+	public void testRemoveIncomingArcs() {
+		view.removeAll(null, p, a);
+		assertFalse(view.contains(b, p, a));
+		assertEquals(3, view.size());
+	}
+
+	public void testRemoveSingleStatement() {
+		view.remove(a, p, b);
+		assertFalse(view.contains(a, p, b));
+		assertTrue(view.contains(a, p, c));
+		assertTrue(base.contains(a, p, b));
+	}
+
+	public void testAddAfterRemove() {
+		view.getResource(NS + "a").removeAll(p);
+		view.add(a, p, b);
+		assertTrue(view.contains(a, p, b));
+		assertFalse(view.contains(a, p, c));
+		assertEquals(1, view.listStatements(a, p, (RDFNode) null).toList().size());
+		view.remove(a, q, b);
+		view.add(a, q, b);
+		assertTrue(view.contains(a, q, b));
+	}
+
+	public void testRemoveAddedStatements() {
+		view.add(c, p, a);
+		view.removeAll(null, p, a);
+		assertFalse(view.contains(c, p, a));
+		view.add(c, q, a);
+		view.remove(c, q, a);
+		assertFalse(view.contains(c, q, a));
+	}
+
+	public void testPrefixesAreCopied() {
+		view.setNsPrefix("foo", "http://example.com/foo#");
+		assertNull(base.getNsPrefixURI("foo"));
+	}
+}
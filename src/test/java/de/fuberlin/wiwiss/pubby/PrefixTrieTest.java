@@ -0,0 +1,78 @@
+package de.fuberlin.wiwiss.pubby;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+
+public class PrefixTrieTest extends TestCase {
+	private PrefixTrie trie;
+
+	public void setUp() {
+		PrefixMapping prefixes = new PrefixMappingImpl();
+		prefixes.setNsPrefix("ex", "http://example.com/");
+		prefixes.setNsPrefix("exv", "http://example.com/vocab#");
+		prefixes.setNsPrefix("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
+		trie = new PrefixTrie(prefixes);
+	}
+
+	public void testLongestNamespaceWins() {
+		assertEquals("http://example.com/vocab#", trie.findNamespace("http://example.com/vocab#name"));
+		assertEquals("http://example.com/", trie.findNamespace("http://example.com/vocab"));
+		assertEquals("http://example.com/", trie.findNamespace("http://example.com/"));
+	}
+
+	public void testNoMatch() {
+		assertNull(trie.findNamespace("http://example.org/foo"));
+		assertNull(trie.findNamespace("http://example.com"));
+		assertNull(trie.findNamespace(""));
+	}
+
+	public void testLookups() {
+		assertEquals("exv", trie.getNsURIPrefix("http://example.com/vocab#"));
+		assertEquals("http://example.com/", trie.getNsPrefixURI("ex"));
+		assertNull(trie.getNsURIPrefix("http://example.org/"));
+		assertEquals(3, trie.size());
+	}
+
+	public void testQNameFor() {
+		assertEquals("exv:name", trie.qnameFor("http://example.com/vocab#name"));
+		assertEquals("rdfs:label", trie.qnameFor("http://www.w3.org/2000/01/rdf-schema#label"));
+		assertNull(trie.qnameFor("http://example.com/"));
+		assertNull(trie.qnameFor("http://example.com/a/b"));
+		assertNull(trie.qnameFor("http://example.com/1a"));
+		assertNull(trie.qnameFor("http://example.com/a?b"));
+		assertNull(trie.qnameFor("http://example.org/a"));
+	}
+
+	public void testFallbackAddsOnlyNewPrefixes() {
+		PrefixMapping modelPrefixes = new PrefixMappingImpl();
+		modelPrefixes.setNsPrefix("ex", "http://other.example.com/");
+		modelPrefixes.setNsPrefix("foo", "http://example.com/vocab#");
+		modelPrefixes.setNsPrefix("deep", "http://example.com/vocab#sub/");
+		PrefixTrie merged = trie.withFallback(modelPrefixes);
+		assertEquals("http://example.com/", merged.getNsPrefixURI("ex"));
+		assertEquals("exv", merged.getNsURIPrefix("http://example.com/vocab#"));
+		assertNull(merged.getNsPrefixURI("foo"));
+		assertEquals("deep:x", merged.qnameFor("http://example.com/vocab#sub/x"));
+		assertEquals("exv:name", merged.qnameFor("http://example.com/vocab#name"));
+		assertEquals(4, merged.size());
+	}
+
+	public void testFallbackWithNothingNewReturnsSameTrie() {
+		PrefixMapping modelPrefixes = new PrefixMappingImpl();
+		modelPrefixes.setNsPrefix("ex", "http://example.com/");
+		assertSame(trie, trie.withFallback(modelPrefixes));
+	}
+
+	public void testURIPrefixer() {
+		URIPrefixer prefixer = new URIPrefixer("http://example.com/vocab#name", trie);
+		assertEquals("exv", prefixer.getPrefix());
+		assertEquals("name", prefixer.getLocalName());
+		assertEquals("exv:name", prefixer.toTurtle());
+		prefixer = new URIPrefixer("http://example.org/foo/bar", trie);
+		assertFalse(prefixer.hasPrefix());
+		assertEquals("bar", prefixer.getLocalName());
+		assertEquals("<http://example.org/foo/bar>", prefixer.toTurtle());
+	}
+}
@@ -0,0 +1,70 @@
+package de.fuberlin.wiwiss.pubby;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.pubby.sources.ModelDataSource;
+import de.fuberlin.wiwiss.pubby.vocab.CONF;
+
+public class VocabularyStoreTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private VocabularyStore store;
+	private CountingDataSource dataSource;
+
+	public void setUp() {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource(NS + "p1").addProperty(RDFS.label, "one", "en");
+		model.createResource(NS + "p2").addProperty(RDFS.label, "two", "en")
+				.addLiteral(CONF.weight, 5);
+		dataSource = new CountingDataSource(model);
+		store = new VocabularyStore();
+		store.setDataSource(dataSource);
+	}
+
+	public void testLookupIsCached() {
+		assertEquals("one", store.getLabel(NS + "p1", false).getLexicalForm());
+		assertEquals("one", store.getLabel(NS + "p1", false).getLexicalForm());
+		assertEquals(1, dataSource.requests);
+	}
+
+	public void testPrefetchUsesSingleRequest() {
+		store.prefetch(Arrays.asList(new String[]{NS + "p1", NS + "p2", NS + "p3"}));
+		assertEquals(1, dataSource.requests);
+		assertEquals("one", store.getLabel(NS + "p1", false).getLexicalForm());
+		assertEquals("two", store.getLabel(NS + "p2", false).getLexicalForm());
+		assertNull(store.getLabel(NS + "p3", false));
+		assertNull(store.getDescription(NS + "p1"));
+		assertEquals(5, store.getWeight(ResourceFactory.createProperty(NS + "p2"), false));
+		assertEquals(1, dataSource.requests);
+	}
+
+	public void testPrefetchSkipsCachedIRIs() {
+		store.prefetch(Arrays.asList(new String[]{NS + "p1"}));
+		store.prefetch(Arrays.asList(new String[]{NS + "p1"}));
+		assertEquals(1, dataSource.requests);
+	}
+
+	private static class CountingDataSource extends ModelDataSource {
+		int requests = 0;
+		CountingDataSource(Model model) {
+			super(model);
+		}
+		@Override
+		public Model describeResource(String resourceURI) {
+			requests++;
+			return super.describeResource(resourceURI);
+		}
+		@Override
+		public Model describeResources(Collection<String> absoluteIRIs) {
+			requests++;
+			return super.describeResources(absoluteIRIs);
+		}
+	}
+}
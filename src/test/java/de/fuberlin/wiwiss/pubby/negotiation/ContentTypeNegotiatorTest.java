@@ -122,4 +122,29 @@ public class ContentTypeNegotiatorTest extends TestCase {
 		negotiator.addUserAgentOverride(Pattern.compile(""), null, "c/d");
 		assertEquals("c/d", negotiator.getBestMatch("a/b", null).getMediaType());
 	}
+	
+	public void testCachedResultIsUpdatedAfterChange() {
+		negotiator.addVariant("a/b");
+		assertNull(negotiator.getBestMatch("c/d"));
+		negotiator.addVariant("c/d");
+		assertEquals("c/d", negotiator.getBestMatch("c/d").getMediaType());
+	}
+	
+	public void testCacheDistinguishesUserAgents() {
+		negotiator.addVariant("a/b");
+		negotiator.addVariant("c/d;q=0.5");
+		negotiator.addUserAgentOverride(Pattern.compile("Foo"), null, "c/d");
+		assertEquals("a/b", negotiator.getBestMatch("a/b", "Bar").getMediaType());
+		assertEquals("c/d", negotiator.getBestMatch("a/b", "Foo").getMediaType());
+		assertEquals("a/b", negotiator.getBestMatch("a/b", null).getMediaType());
+	}
+	
+	public void testCacheDistinguishesMissingAccept() {
+		negotiator.addVariant("a/b");
+		negotiator.addVariant("c/d;q=0.5");
+		negotiator.setDefaultAccept("c/d");
+		negotiator.addUserAgentOverride(null, "", "a/b");
+		assertEquals("a/b", negotiator.getBestMatch("").getMediaType());
+		assertEquals("c/d", negotiator.getBestMatch(null).getMediaType());
+	}
 }
@@ -177,6 +177,31 @@ public class MediaRangeSpecTest extends TestCase {
 		assertEquals(0.8, ((MediaRangeSpec) accept.get(1)).getQuality(), 0.00001);
 	}
 	
+	public void testAcceptSkipsInvalidRanges() {
+		List<MediaRangeSpec> accept = MediaRangeSpec.parseAccept("*/b, a/b;q=0.5;, ,c/d;e=\"f,g\"");
+		assertEquals(2, accept.size());
+		assertMediaRangeInList(accept, 0, "a/b");
+		assertEquals(0.5, accept.get(0).getQuality(), 0.00001);
+		assertEquals("f,g", accept.get(1).getParameter("e"));
+	}
+
+	public void testAcceptWithWhitespaceAroundQuality() {
+		List<MediaRangeSpec> accept = MediaRangeSpec.parseAccept(
+				"text/html ; q = 0.9 , application/xhtml+xml;q=0.8");
+		assertEquals(2, accept.size());
+		assertEquals(0.9, accept.get(0).getQuality(), 0.00001);
+		assertEquals(0.8, accept.get(1).getQuality(), 0.00001);
+	}
+
+	public void testAcceptFromBrowser() {
+		List<MediaRangeSpec> accept = MediaRangeSpec.parseAccept(
+				"text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+		assertEquals(4, accept.size());
+		assertMediaRangeInList(accept, 2, "application/xml");
+		assertEquals(0.9, accept.get(2).getQuality(), 0.00001);
+		assertTrue(accept.get(3).isWildcardType());
+	}
+
 	public void testGetPrecedence() {
 		MediaRangeSpec m = MediaRangeSpec.parseType("a/b;c=d;e=f");
 		assertEquals(0, m.getPrecedence(MediaRangeSpec.parseRange("z/b;c=d;e=f")));
@@ -0,0 +1,135 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import java.util.concurrent.CountDownLatch;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import de.fuberlin.wiwiss.pubby.Configuration;
+
+public class BaseServletTest extends TestCase {
+	private StubContainer container;
+	private DataURLServlet servlet;
+
+	public void setUp() throws Exception {
+		container = new StubContainer(
+				"<" + StubContainer.RESOURCE_BASE + "a> " +
+				"<http://www.w3.org/2000/01/rdf-schema#label> \"A\" .",
+				"conf:requestThreads 1;");
+		servlet = container.init(new DataURLServlet());
+	}
+
+	public void tearDown() {
+		container.shutdown();
+	}
+
+	public void testBlockingRequestIsHandledAsynchronously() throws Exception {
+		StubContainer.Exchange exchange = exchange("/a");
+		servlet.doGet(exchange.request(), exchange.response());
+		assertTrue(exchange.isAsyncStarted);
+		exchange.awaitCompletion();
+		assertTrue(exchange.isAsyncCompleted);
+		assertEquals(200, exchange.status);
+		assertTrue(exchange.getBody().contains("\"A\""));
+	}
+
+	public void testWithoutAsyncSupportRequestIsHandledSynchronously() throws Exception {
+		StubContainer.Exchange exchange = exchange("/a");
+		exchange.isAsyncSupported = false;
+		servlet.doGet(exchange.request(), exchange.response());
+		assertFalse(exchange.isAsyncStarted);
+		assertEquals(200, exchange.status);
+	}
+
+	public void testRejectedRequestIsHandledInContainerThread() throws Exception {
+		CountDownLatch blocked = blockRequestThread();
+		try {
+			// Fill the queue
+			for (int i = 0; i < 4; i++) {
+				container.getConfiguration().getRequestExecutor().execute(new Runnable() {
+					public void run() {}
+				});
+			}
+			StubContainer.Exchange exchange = exchange("/a");
+			servlet.doGet(exchange.request(), exchange.response());
+			assertTrue(exchange.isAsyncStarted);
+			// Completed before doGet() returned
+			assertTrue(exchange.isAsyncCompleted);
+			assertEquals(200, exchange.status);
+		} finally {
+			blocked.countDown();
+		}
+	}
+
+	public void testExceptionInRequestThreadSends500() throws Exception {
+		BaseServlet failing = container.init(new FailingServlet());
+		StubContainer.Exchange exchange = exchange("/a");
+		failing.doGet(exchange.request(), exchange.response());
+		exchange.awaitCompletion();
+		assertTrue(exchange.isAsyncCompleted);
+		assertEquals(500, exchange.status);
+		assertEquals(1, container.getLog().size());
+	}
+
+	public void testHeadIsHandledSynchronously() throws Exception {
+		StubContainer.Exchange exchange = exchange("/a");
+		exchange.method = "HEAD";
+		servlet.doGet(exchange.request(), exchange.response());
+		assertFalse(exchange.isAsyncStarted);
+		assertEquals(200, exchange.status);
+	}
+
+	public void testQueuedRequestIsRejectedOnShutdown() throws Exception {
+		CountDownLatch blocked = blockRequestThread();
+		StubContainer.Exchange exchange = exchange("/a");
+		servlet.doGet(exchange.request(), exchange.response());
+		assertTrue(exchange.isAsyncStarted);
+		assertFalse(exchange.isAsyncCompleted);
+		container.getConfiguration().shutdown();
+		blocked.countDown();
+		assertTrue(exchange.isAsyncCompleted);
+		assertEquals(503, exchange.status);
+	}
+
+	private StubContainer.Exchange exchange(String path) {
+		StubContainer.Exchange exchange = new StubContainer.Exchange("/data", path);
+		exchange.requestHeaders.put("Accept", "text/turtle");
+		exchange.isAsyncSupported = true;
+		return exchange;
+	}
+
+	private static class FailingServlet extends BaseServlet {
+		@Override
+		protected boolean isBlocking() {
+			return true;
+		}
+		@Override
+		protected boolean doGet(String relativeURI, HttpServletRequest request,
+				HttpServletResponse response, Configuration config) {
+			throw new RuntimeException("Failed");
+		}
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Keeps the only request thread busy until the latch is released.
+	 */
+	private CountDownLatch blockRequestThread() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		container.getConfiguration().getRequestExecutor().execute(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					// Shut down
+				}
+			}
+		});
+		started.await();
+		return release;
+	}
+}
@@ -0,0 +1,72 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+public class CompressingOutputStreamTest extends TestCase {
+	private StubContainer.Exchange exchange;
+	private HttpServletResponse response;
+
+	public void setUp() {
+		exchange = new StubContainer.Exchange("/data", "/a");
+		response = exchange.response();
+	}
+
+	public void testAcceptsGzip() {
+		assertTrue(CompressingOutputStream.acceptsGzip("gzip"));
+		assertTrue(CompressingOutputStream.acceptsGzip("deflate, gzip;q=0.5"));
+		assertTrue(CompressingOutputStream.acceptsGzip("x-gzip"));
+		assertTrue(CompressingOutputStream.acceptsGzip("*"));
+		assertFalse(CompressingOutputStream.acceptsGzip(null));
+		assertFalse(CompressingOutputStream.acceptsGzip("identity"));
+		assertFalse(CompressingOutputStream.acceptsGzip("gzip;q=0"));
+		assertFalse(CompressingOutputStream.acceptsGzip("gzip;q=0, *"));
+		assertFalse(CompressingOutputStream.acceptsGzip("*;q=0"));
+	}
+
+	public void testSmallOutputIsNotCompressed() throws IOException {
+		OutputStream out = new CompressingOutputStream(response, 100);
+		out.write(new byte[50]);
+		out.write(1);
+		out.close();
+		assertNull(exchange.getHeader("Content-Encoding"));
+		assertEquals(51, exchange.body.size());
+	}
+
+	public void testLargeOutputIsCompressed() throws IOException {
+		byte[] data = new byte[5000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 10);
+		}
+		OutputStream out = new CompressingOutputStream(response, 100);
+		out.write(data, 0, 60);
+		out.write(data, 60, 60);
+		for (int i = 120; i < data.length; i++) {
+			out.write(data[i]);
+		}
+		out.close();
+		assertEquals("gzip", exchange.getHeader("Content-Encoding"));
+		assertTrue(exchange.body.size() < data.length);
+		assertTrue(Arrays.equals(data, gunzip(exchange.body.toByteArray())));
+	}
+
+	private byte[] gunzip(byte[] compressed) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+}
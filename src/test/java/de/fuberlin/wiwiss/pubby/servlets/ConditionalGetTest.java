@@ -0,0 +1,92 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+public class ConditionalGetTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private StubContainer.Exchange exchange;
+
+	public void setUp() {
+		exchange = new StubContainer.Exchange("/data", "/a");
+	}
+
+	public void testHashIgnoresStatementOrder() {
+		Model m1 = ModelFactory.createDefaultModel();
+		m1.createResource(NS + "a").addProperty(RDFS.label, "a");
+		m1.createResource(NS + "b").addProperty(RDFS.label, "b");
+		Model m2 = ModelFactory.createDefaultModel();
+		m2.createResource(NS + "b").addProperty(RDFS.label, "b");
+		m2.createResource(NS + "a").addProperty(RDFS.label, "a");
+		assertEquals(ConditionalGet.hash(m1), ConditionalGet.hash(m2));
+	}
+
+	public void testHashIgnoresBlankNodeLabels() {
+		Model m1 = ModelFactory.createDefaultModel();
+		m1.createResource().addProperty(RDFS.label, "x");
+		Model m2 = ModelFactory.createDefaultModel();
+		m2.createResource().addProperty(RDFS.label, "x");
+		assertEquals(ConditionalGet.hash(m1), ConditionalGet.hash(m2));
+	}
+
+	public void testHashDependsOnContent() {
+		Model m1 = ModelFactory.createDefaultModel();
+		m1.createResource(NS + "a").addProperty(RDFS.label, "a");
+		Model m2 = ModelFactory.createDefaultModel();
+		m2.createResource(NS + "a").addProperty(RDFS.label, "a", "en");
+		assertFalse(ConditionalGet.hash(m1).equals(ConditionalGet.hash(m2)));
+	}
+
+	public void testETagIsWeakAndDependsOnAllParts() {
+		String etag = ConditionalGet.createETag("v1", "text/html");
+		assertTrue(etag.startsWith("W/\""));
+		assertEquals(etag, ConditionalGet.createETag("v1", "text/html"));
+		assertFalse(etag.equals(ConditionalGet.createETag("v1", "text/plain")));
+		assertFalse(etag.equals(ConditionalGet.createETag("v1text/html")));
+	}
+
+	public void testMatchingETagSends304() {
+		String etag = ConditionalGet.createETag("v1");
+		exchange.requestHeaders.put("If-None-Match", "\"foo\", " + etag);
+		assertTrue(conditionalGet(60).isNotModified(etag, -1));
+		assertEquals(304, exchange.status);
+		assertEquals(etag, exchange.getHeader("ETag"));
+		assertEquals("max-age=60", exchange.getHeader("Cache-Control"));
+	}
+
+	public void testStrongFormOfWeakETagMatches() {
+		String etag = ConditionalGet.createETag("v1");
+		exchange.requestHeaders.put("If-None-Match", etag.substring(2));
+		assertTrue(conditionalGet(0).isNotModified(etag, -1));
+	}
+
+	public void testOtherETagDoesNotMatch() {
+		exchange.requestHeaders.put("If-None-Match", ConditionalGet.createETag("v1"));
+		ConditionalGet conditional = conditionalGet(0);
+		assertFalse(conditional.isNotModified(ConditionalGet.createETag("v2"), -1));
+		assertEquals(200, exchange.status);
+		conditional.setHeaders();
+		assertEquals("no-cache", exchange.getHeader("Cache-Control"));
+	}
+
+	public void testIfModifiedSince() {
+		exchange.requestHeaders.put("If-Modified-Since",
+				StubContainer.Exchange.formatDate(1000000L));
+		assertTrue(conditionalGet(0).isNotModified("W/\"x\"", 1000500L));
+		assertFalse(conditionalGet(0).isNotModified("W/\"x\"", 1001000L));
+	}
+
+	public void testIfNoneMatchOverridesIfModifiedSince() {
+		exchange.requestHeaders.put("If-None-Match", "\"other\"");
+		exchange.requestHeaders.put("If-Modified-Since",
+				StubContainer.Exchange.formatDate(1000000L));
+		assertFalse(conditionalGet(0).isNotModified("W/\"x\"", 1000000L));
+	}
+
+	private ConditionalGet conditionalGet(int maxAge) {
+		return new ConditionalGet(exchange.request(), exchange.response(), maxAge);
+	}
+}
@@ -0,0 +1,50 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import junit.framework.TestCase;
+
+public class DataURLServletTest extends TestCase {
+	private StubContainer container;
+	private DataURLServlet servlet;
+
+	public void setUp() throws Exception {
+		container = new StubContainer(
+				"<" + StubContainer.RESOURCE_BASE + "a> " +
+				"<http://www.w3.org/2000/01/rdf-schema#label> \"A\" .", "");
+		servlet = container.init(new DataURLServlet());
+	}
+
+	public void tearDown() {
+		container.shutdown();
+	}
+
+	public void testExistingResource() throws Exception {
+		StubContainer.Exchange exchange = get("/a");
+		assertEquals(200, exchange.status);
+		assertNotNull(exchange.getHeader("ETag"));
+		assertTrue(exchange.getBody().contains("\"A\""));
+	}
+
+	public void testMatchingETagSends304() throws Exception {
+		String etag = get("/a").getHeader("ETag");
+		StubContainer.Exchange exchange = new StubContainer.Exchange("/data", "/a");
+		exchange.requestHeaders.put("Accept", "text/turtle");
+		exchange.requestHeaders.put("If-None-Match", etag);
+		servlet.doGet(exchange.request(), exchange.response());
+		assertEquals(304, exchange.status);
+	}
+
+	public void testIfNoneMatchStarOnMissingResourceSends404() throws Exception {
+		StubContainer.Exchange exchange = new StubContainer.Exchange("/data", "/missing");
+		exchange.requestHeaders.put("Accept", "text/turtle");
+		exchange.requestHeaders.put("If-None-Match", "*");
+		servlet.doGet(exchange.request(), exchange.response());
+		assertEquals(404, exchange.status);
+	}
+
+	private StubContainer.Exchange get(String path) throws Exception {
+		StubContainer.Exchange exchange = new StubContainer.Exchange("/data", path);
+		exchange.requestHeaders.put("Accept", "text/turtle");
+		servlet.doGet(exchange.request(), exchange.response());
+		return exchange;
+	}
+}
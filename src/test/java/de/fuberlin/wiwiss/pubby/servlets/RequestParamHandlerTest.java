@@ -0,0 +1,46 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+public class RequestParamHandlerTest extends TestCase {
+
+	public void testAcceptHeaderIsReplaced() {
+		HttpServletRequest request = wrap("ttl");
+		assertEquals("text/rdf+n3;charset=utf-8", request.getHeader("Accept"));
+		assertEquals(Collections.singletonList("text/rdf+n3;charset=utf-8"),
+				Collections.list(request.getHeaders("Accept")));
+		assertEquals("gzip", request.getHeader("Accept-Encoding"));
+	}
+
+	public void testHeaderNamesLeaveOutAccept() {
+		assertEquals(Arrays.asList("Accept-Encoding", "Host"),
+				Collections.list(wrap("ttl").getHeaderNames()));
+	}
+
+	public void testOnlyHandledOnce() {
+		RequestParamHandler handler = new RequestParamHandler(request("ttl"));
+		assertTrue(handler.isMatchingRequest());
+		handler.getModifiedRequest();
+		assertFalse(handler.isMatchingRequest());
+	}
+
+	private HttpServletRequest wrap(String output) {
+		RequestParamHandler handler = new RequestParamHandler(request(output));
+		assertTrue(handler.isMatchingRequest());
+		return handler.getModifiedRequest();
+	}
+
+	private HttpServletRequest request(String output) {
+		StubContainer.Exchange exchange = new StubContainer.Exchange("/page", "/a");
+		exchange.requestHeaders.put("Accept", "text/html");
+		exchange.requestHeaders.put("Accept-Encoding", "gzip");
+		exchange.requestHeaders.put("Host", "example.com");
+		exchange.parameters.put("output", output);
+		return exchange.request();
+	}
+}
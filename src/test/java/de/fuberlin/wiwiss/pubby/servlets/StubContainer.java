@@ -0,0 +1,347 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+import de.fuberlin.wiwiss.pubby.Configuration;
+
+/**
+ * Runs servlets against proxy stubs of the servlet API, with a
+ * {@link Configuration} that loads a Turtle file. Only the parts of
+ * the API that Pubby's servlets actually use are implemented.
+ * {@link Exchange} can also be used on its own, for testing code that
+ * works on a request and response without a servlet.
+ */
+class StubContainer {
+	public final static String WEB_BASE = "http://localhost/";
+	public final static String RESOURCE_BASE = WEB_BASE;
+
+	private final File dataFile;
+	private final Configuration config;
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+	private final List<String> log = new ArrayList<String>();
+
+	/**
+	 * @param data Turtle data; resources should be in {@link #RESOURCE_BASE}
+	 * @param options Additional Turtle for the conf:Configuration resource,
+	 * 		e.g. <code>"conf:requestThreads 1;"</code>
+	 */
+	public StubContainer(String data, String options) throws IOException {
+		dataFile = File.createTempFile("pubby-test", ".ttl");
+		OutputStream out = new FileOutputStream(dataFile);
+		try {
+			out.write(data.getBytes("utf-8"));
+		} finally {
+			out.close();
+		}
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new StringReader(
+				"@prefix conf: <http://richard.cyganiak.de/2007/pubby/config.rdf#> .\n" +
+				"@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n" +
+				"<> a conf:Configuration; " + options +
+				"  conf:webBase <" + WEB_BASE + ">; " +
+				"  conf:dataset [ " +
+				"    conf:datasetBase <" + RESOURCE_BASE + ">; " +
+				"    conf:loadRDF <file://" + dataFile.toURI().getPath() + ">; " +
+				"  ] ."), WEB_BASE + "config.ttl", "TURTLE");
+		config = Configuration.create(model);
+		attributes.put(ServletContextInitializer.SERVER_CONFIGURATION, config);
+	}
+
+	public Configuration getConfiguration() {
+		return config;
+	}
+
+	/**
+	 * Messages passed to {@link ServletContext#log(String, Throwable)}
+	 */
+	public List<String> getLog() {
+		return log;
+	}
+
+	public void shutdown() {
+		config.shutdown();
+		dataFile.delete();
+	}
+
+	public <T extends BaseServlet> T init(T servlet) throws ServletException {
+		final ServletContext context = (ServletContext) stub(ServletContext.class,
+				new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getAttribute".equals(method.getName())) {
+					return attributes.get(args[0]);
+				}
+				if ("setAttribute".equals(method.getName())) {
+					attributes.put((String) args[0], args[1]);
+					return null;
+				}
+				if ("getRealPath".equals(method.getName())) {
+					return new File("src/main/webapp" + args[0]).getAbsolutePath();
+				}
+				if ("log".equals(method.getName())) {
+					log.add((String) args[0]);
+					return null;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		servlet.init((ServletConfig) stub(ServletConfig.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getServletContext".equals(method.getName())) {
+					return context;
+				}
+				if ("getServletName".equals(method.getName())) {
+					return "test";
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		}));
+		return servlet;
+	}
+
+	/**
+	 * A request to a servlet, and the response that it got.
+	 */
+	public static class Exchange {
+		public final Map<String, String> requestHeaders = new LinkedHashMap<String, String>();
+		public final Map<String, String> parameters = new HashMap<String, String>();
+		public final Map<String, Object> attributes = new HashMap<String, Object>();
+		public String method = "GET";
+		public boolean isAsyncSupported = false;
+		public int status = 200;
+		public final Map<String, List<String>> responseHeaders =
+				new HashMap<String, List<String>>();
+		public final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		public boolean isCommitted = false;
+		public boolean isAsyncStarted = false;
+		public boolean isAsyncCompleted = false;
+		private final String servletPath;
+		private final String pathInfo;
+
+		/**
+		 * @param servletPath The servlet's mapping, e.g. <code>/data</code>
+		 * @param pathInfo The rest of the path, e.g. <code>/foo</code>
+		 */
+		public Exchange(String servletPath, String pathInfo) {
+			this.servletPath = servletPath;
+			this.pathInfo = pathInfo;
+		}
+
+		public String getHeader(String name) {
+			List<String> values = responseHeaders.get(name);
+			return values == null ? null : values.get(0);
+		}
+
+		public List<String> getHeaders(String name) {
+			List<String> values = responseHeaders.get(name);
+			return values == null ? new ArrayList<String>() : values;
+		}
+
+		public String getBody() {
+			try {
+				return body.toString("utf-8");
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
+		public HttpServletRequest request() {
+			final AsyncContext async = (AsyncContext) stub(AsyncContext.class,
+					new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if ("getRequest".equals(method.getName())) {
+						return request();
+					}
+					if ("getResponse".equals(method.getName())) {
+						return response();
+					}
+					if ("setTimeout".equals(method.getName())) {
+						return null;
+					}
+					if ("complete".equals(method.getName())) {
+						synchronized (Exchange.this) {
+							isAsyncCompleted = true;
+							Exchange.this.notifyAll();
+						}
+						return null;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+			return (HttpServletRequest) stub(HttpServletRequest.class,
+					new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if ("getRequestURI".equals(method.getName())) {
+						return servletPath + pathInfo;
+					}
+					if ("getContextPath".equals(method.getName())) {
+						return "";
+					}
+					if ("getServletPath".equals(method.getName())) {
+						return servletPath;
+					}
+					if ("getMethod".equals(method.getName())) {
+						return Exchange.this.method;
+					}
+					if ("getHeader".equals(method.getName())) {
+						return requestHeaders.get(args[0]);
+					}
+					if ("getHeaders".equals(method.getName())) {
+						String value = requestHeaders.get(args[0]);
+						return Collections.enumeration(value == null
+								? Collections.<String>emptyList()
+								: Collections.singletonList(value));
+					}
+					if ("getHeaderNames".equals(method.getName())) {
+						return Collections.enumeration(requestHeaders.keySet());
+					}
+					if ("getDateHeader".equals(method.getName())) {
+						String value = requestHeaders.get(args[0]);
+						return value == null ? -1L : parseDate(value);
+					}
+					if ("getParameter".equals(method.getName())) {
+						return parameters.get(args[0]);
+					}
+					if ("getAttribute".equals(method.getName())) {
+						return attributes.get(args[0]);
+					}
+					if ("setAttribute".equals(method.getName())) {
+						attributes.put((String) args[0], args[1]);
+						return null;
+					}
+					if ("isAsyncSupported".equals(method.getName())) {
+						return isAsyncSupported;
+					}
+					if ("startAsync".equals(method.getName())) {
+						isAsyncStarted = true;
+						return async;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+		}
+
+		public HttpServletResponse response() {
+			final ServletOutputStream out = new ServletOutputStream() {
+				public void write(int b) {
+					isCommitted = true;
+					body.write(b);
+				}
+			};
+			return (HttpServletResponse) stub(HttpServletResponse.class,
+					new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String name = method.getName();
+					if ("setHeader".equals(name) || "setDateHeader".equals(name)
+							|| "setIntHeader".equals(name)) {
+						responseHeaders.remove(args[0]);
+						name = name.replace("set", "add");
+					}
+					if ("addHeader".equals(name) || "addDateHeader".equals(name)
+							|| "addIntHeader".equals(name)) {
+						String header = (String) args[0];
+						if (!responseHeaders.containsKey(header)) {
+							responseHeaders.put(header, new ArrayList<String>());
+						}
+						responseHeaders.get(header).add("addDateHeader".equals(name)
+								? formatDate((Long) args[1]) : args[1].toString());
+						return null;
+					}
+					if ("containsHeader".equals(name)) {
+						return responseHeaders.containsKey(args[0]);
+					}
+					if ("setStatus".equals(name)) {
+						status = (Integer) args[0];
+						return null;
+					}
+					if ("sendError".equals(name)) {
+						status = (Integer) args[0];
+						isCommitted = true;
+						return null;
+					}
+					if ("isCommitted".equals(name)) {
+						return isCommitted;
+					}
+					if ("setContentType".equals(name)) {
+						responseHeaders.put("Content-Type", new ArrayList<String>());
+						responseHeaders.get("Content-Type").add((String) args[0]);
+						return null;
+					}
+					if ("setCharacterEncoding".equals(name)) {
+						return null;
+					}
+					if ("getOutputStream".equals(name)) {
+						return out;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+		}
+
+		/**
+		 * @return The date in the format of HTTP headers
+		 */
+		public static String formatDate(long millis) {
+			return httpDateFormat().format(new Date(millis));
+		}
+
+		private static long parseDate(String value) {
+			try {
+				return httpDateFormat().parse(value).getTime();
+			} catch (ParseException ex) {
+				throw new IllegalArgumentException(ex);
+			}
+		}
+
+		private static DateFormat httpDateFormat() {
+			DateFormat result = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			result.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return result;
+		}
+
+		/**
+		 * Waits until an asynchronous request has been completed.
+		 */
+		public synchronized void awaitCompletion() throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!isAsyncCompleted && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+		}
+	}
+
+	private static Object stub(Class<?> iface, InvocationHandler handler) {
+		return Proxy.newProxyInstance(StubContainer.class.getClassLoader(),
+				new Class<?>[] {iface}, handler);
+	}
+}
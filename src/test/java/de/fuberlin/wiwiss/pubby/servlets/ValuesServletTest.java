@@ -0,0 +1,122 @@
+package de.fuberlin.wiwiss.pubby.servlets;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.pubby.vocab.XHV;
+
+public class ValuesServletTest extends TestCase {
+	private final static String DATA_URL =
+			StubContainer.WEB_BASE + "values.data/rdfs:label/a";
+	private final static String PAGE_URL =
+			StubContainer.WEB_BASE + "values/rdfs:label/a";
+	private StubContainer container;
+
+	public void setUp() throws Exception {
+		container = new StubContainer(
+				"<" + StubContainer.RESOURCE_BASE + "a> " +
+				"<http://www.w3.org/2000/01/rdf-schema#label> \"1\", \"2\", \"3\" .", "");
+	}
+
+	public void tearDown() {
+		container.shutdown();
+	}
+
+	public void testDataFirstPageLinksToNextPage() throws Exception {
+		StubContainer.Exchange exchange = get(new ValuesDataURLServlet(),
+				"/values.data", 0);
+		assertEquals(200, exchange.status);
+		assertEquals(1, exchange.getHeaders("Link").size());
+		assertEquals("<" + DATA_URL + "?offset=2&limit=2>; rel=\"next\"",
+				exchange.getHeader("Link"));
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new ByteArrayInputStream(exchange.body.toByteArray()),
+				DATA_URL, "RDF/XML");
+		Resource document = model.getResource(DATA_URL + "?limit=2");
+		assertTrue(document.hasProperty(XHV.next,
+				model.getResource(DATA_URL + "?offset=2&limit=2")));
+		assertFalse(document.hasProperty(XHV.prev));
+	}
+
+	public void testDataLastPageLinksOnlyToPreviousPage() throws Exception {
+		StubContainer.Exchange exchange = get(new ValuesDataURLServlet(),
+				"/values.data", 2);
+		assertEquals(200, exchange.status);
+		assertEquals(1, exchange.getHeaders("Link").size());
+		assertEquals("<" + DATA_URL + "?limit=2>; rel=\"prev\"",
+				exchange.getHeader("Link"));
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new ByteArrayInputStream(exchange.body.toByteArray()),
+				DATA_URL, "RDF/XML");
+		Resource document = model.getResource(DATA_URL + "?offset=2&limit=2");
+		assertFalse(document.hasProperty(XHV.next));
+		assertTrue(document.hasProperty(XHV.prev,
+				model.getResource(DATA_URL + "?limit=2")));
+	}
+
+	public void testDataExactlyFullPageHasNoNextPage() throws Exception {
+		StubContainer.Exchange exchange = get(new ValuesDataURLServlet(),
+				"/values.data", 0, 3);
+		assertEquals(200, exchange.status);
+		assertTrue(exchange.getHeaders("Link").isEmpty());
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new ByteArrayInputStream(exchange.body.toByteArray()),
+				DATA_URL, "RDF/XML");
+		assertEquals(3, model.getResource(StubContainer.RESOURCE_BASE + "a")
+				.listProperties(RDFS.label).toList().size());
+		assertFalse(model.contains(null, XHV.next));
+	}
+
+	public void testDataPagePastLastValueIsEmpty() throws Exception {
+		StubContainer.Exchange exchange = get(new ValuesDataURLServlet(),
+				"/values.data", 4);
+		assertEquals(200, exchange.status);
+		assertEquals("<" + DATA_URL + "?offset=2&limit=2>; rel=\"prev\"",
+				exchange.getHeader("Link"));
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new ByteArrayInputStream(exchange.body.toByteArray()),
+				DATA_URL, "RDF/XML");
+		assertFalse(model.getResource(StubContainer.RESOURCE_BASE + "a")
+				.hasProperty(RDFS.label));
+	}
+
+	public void testPagePastLastValueIsEmpty() throws Exception {
+		StubContainer.Exchange exchange = get(new ValuesURLServlet(), "/values", 4);
+		assertEquals(200, exchange.status);
+		assertEquals("<" + PAGE_URL + "?offset=2&limit=2>; rel=\"prev\"",
+				exchange.getHeader("Link"));
+	}
+
+	public void testPageLinksToNextPage() throws Exception {
+		StubContainer.Exchange exchange = get(new ValuesURLServlet(), "/values", 0);
+		assertEquals(200, exchange.status);
+		assertEquals("<" + PAGE_URL + "?offset=2&limit=2>; rel=\"next\"",
+				exchange.getHeader("Link"));
+		assertTrue(exchange.getBody().contains(PAGE_URL + "?offset=2&amp;limit=2"));
+	}
+
+	private StubContainer.Exchange get(BaseServlet servlet, String servletPath,
+			int offset) throws Exception {
+		return get(servlet, servletPath, offset, 2);
+	}
+
+	private StubContainer.Exchange get(BaseServlet servlet, String servletPath,
+			int offset, int limit) throws Exception {
+		container.init(servlet);
+		StubContainer.Exchange exchange = new StubContainer.Exchange(
+				servletPath, "/rdfs:label/a");
+		exchange.requestHeaders.put("Accept", "application/rdf+xml");
+		exchange.parameters.put("limit", Integer.toString(limit));
+		if (offset > 0) {
+			exchange.parameters.put("offset", Integer.toString(offset));
+		}
+		servlet.doGet(exchange.request(), exchange.response());
+		return exchange;
+	}
+}
@@ -0,0 +1,158 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.pubby.vocab.XHV;
+
+public class IndexDataSourceTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private final static String INDEX = NS;
+	private final static String SIOC = "http://rdfs.org/sioc/ns#";
+	private Model model;
+	private Property containerOf;
+	private Resource person;
+
+	public void setUp() {
+		model = ModelFactory.createDefaultModel();
+		containerOf = model.createProperty(SIOC + "container_of");
+		person = model.createResource(NS + "Person");
+		// Added in reverse order, to check that the index is sorted
+		model.createResource(NS + "e").addProperty(RDF.type, person);
+		model.createResource(NS + "d").addProperty(RDFS.label, "D");
+		model.createResource(NS + "c").addProperty(RDF.type, person);
+		model.createResource(NS + "b").addProperty(RDFS.label, "B");
+		model.createResource(NS + "a").addProperty(RDF.type, person);
+	}
+
+	public void testFirstPageIsIndexResource() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model), 100, 2);
+		assertTrue(index.canDescribe(INDEX));
+		Model result = index.describeResource(INDEX);
+		Resource page = result.getResource(INDEX);
+		assertTrue(page.hasProperty(containerOf, result.getResource(NS + "Person")));
+		assertTrue(page.hasProperty(containerOf, result.getResource(NS + "a")));
+		assertEquals(2, page.listProperties(containerOf).toList().size());
+		assertTrue(page.hasProperty(XHV.next, result.getResource(INDEX + "index/2")));
+	}
+
+	public void testLaterPages() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model), 100, 2);
+		assertTrue(index.canDescribe(INDEX + "index/3"));
+		Model result = index.describeResource(INDEX + "index/3");
+		Resource page = result.getResource(INDEX + "index/3");
+		assertTrue(page.hasProperty(containerOf, result.getResource(NS + "d")));
+		assertTrue(page.hasProperty(containerOf, result.getResource(NS + "e")));
+		assertFalse(page.hasProperty(XHV.next));
+		assertTrue(index.describeResource(INDEX + "index/4").isEmpty());
+		assertTrue(index.describeResource(INDEX + "index/1").isEmpty());
+		assertTrue(index.describeResource(INDEX + "index/x").isEmpty());
+	}
+
+	public void testIndexSizeIsLimited() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model), 3, 10);
+		Model result = index.describeResource(INDEX);
+		assertEquals(3, result.listStatements(null, containerOf, (RDFNode) null).toList().size());
+	}
+
+	public void testTypeIndex() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model), 100, 2);
+		Resource typeIndex = index.describeResource(INDEX).getResource(INDEX + "index/types/1");
+		assertTrue(typeIndex.getModel().getResource(INDEX).hasProperty(
+				typeIndex.getModel().createProperty(SIOC + "parent_of"), typeIndex));
+		Model result = index.describeResource(INDEX + "index/types/1");
+		Resource page = result.getResource(INDEX + "index/types/1");
+		assertTrue(page.hasProperty(result.createProperty(SIOC + "topic"), person));
+		assertTrue(page.hasProperty(containerOf, result.getResource(NS + "a")));
+		assertTrue(page.hasProperty(containerOf, result.getResource(NS + "c")));
+		assertTrue(page.hasProperty(XHV.next, result.getResource(INDEX + "index/types/1/2")));
+		result = index.describeResource(INDEX + "index/types/1/2");
+		assertTrue(result.getResource(INDEX + "index/types/1/2").hasProperty(
+				containerOf, result.getResource(NS + "e")));
+		assertTrue(index.describeResource(INDEX + "index/types/2").isEmpty());
+	}
+
+	public void testTypesAreFoundWithoutDescribingResources() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model) {
+			@Override
+			public Model describeResources(Collection<String> absoluteIRIs) {
+				throw new AssertionError("Should only ask for types");
+			}
+		}, 100, 2);
+		Model result = index.describeResource(INDEX + "index/types/1");
+		assertTrue(result.getResource(INDEX + "index/types/1").hasProperty(
+				containerOf, result.getResource(NS + "a")));
+	}
+
+	public void testPlaceholderIsServedDuringBackgroundBuild() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model) {
+			@Override
+			public List<Resource> getIndex(int limit) {
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return super.getIndex(limit);
+			}
+		}, 100, 10);
+		try {
+			index.startBackgroundRefresh(0);
+			Resource page = index.describeResource(INDEX).getResource(INDEX);
+			assertTrue(page.hasProperty(RDFS.comment));
+			assertFalse(page.hasProperty(containerOf));
+			release.countDown();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (page.hasProperty(RDFS.comment) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+				page = index.describeResource(INDEX).getResource(INDEX);
+			}
+			assertFalse(page.hasProperty(RDFS.comment));
+			assertEquals(6, page.listProperties(containerOf).toList().size());
+		} finally {
+			index.shutdown();
+		}
+	}
+
+	public void testRefreshPicksUpChanges() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model), 100, 10);
+		assertEquals(6, index.describeResource(INDEX).listStatements(
+				null, containerOf, (RDFNode) null).toList().size());
+		model.createResource(NS + "f").addProperty(RDFS.label, "F");
+		assertEquals(6, index.describeResource(INDEX).listStatements(
+				null, containerOf, (RDFNode) null).toList().size());
+		index.refresh();
+		assertEquals(7, index.describeResource(INDEX).listStatements(
+				null, containerOf, (RDFNode) null).toList().size());
+	}
+
+	public void testResourcesUnderIndexPathArePassedThrough() {
+		model.createResource(NS + "index/about").addProperty(RDFS.label, "About");
+		model.createResource(NS + "index/9").addProperty(RDFS.label, "Nine");
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model), 100, 2);
+		assertTrue(index.describeResource(NS + "index/about").contains(
+				model.getResource(NS + "index/about"), RDFS.label, "About"));
+		assertTrue(index.describeResource(NS + "index/9").contains(
+				model.getResource(NS + "index/9"), RDFS.label, "Nine"));
+		assertTrue(index.describeResource(INDEX + "index/2").getResource(
+				INDEX + "index/2").hasProperty(containerOf));
+	}
+
+	public void testOtherResourcesArePassedThrough() {
+		IndexDataSource index = new IndexDataSource(INDEX, new ModelDataSource(model));
+		assertTrue(index.describeResource(NS + "b").contains(
+				model.getResource(NS + "b"), RDFS.label, "B"));
+	}
+}
@@ -0,0 +1,134 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import de.fuberlin.wiwiss.pubby.ModelUtil;
+
+public class MergeDataSourceTest extends TestCase {
+	private final static String IRI = "http://example.com/r";
+	private ExecutorService executor;
+
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	public void testSequentialMergeWithoutExecutor() {
+		Model result = new MergeDataSource(source("a", 0), source("b", 0))
+				.describeResource(IRI);
+		assertEquals(2, result.size());
+	}
+
+	public void testSourcesAreQueriedInParallel() {
+		long start = System.currentTimeMillis();
+		Model result = merge(0, false, source("a", 300), source("b", 300),
+				source("c", 300)).describeResource(IRI);
+		assertEquals(3, result.size());
+		assertTrue(System.currentTimeMillis() - start < 800);
+	}
+
+	public void testSlowSourceIsSkipped() {
+		Model result = merge(100, true, source("a", 0), source("b", 2000))
+				.describeResource(IRI);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(null, RDFS.label, "a"));
+	}
+
+	public void testSlowSourceFails() {
+		try {
+			merge(100, false, source("a", 0), source("b", 2000)).describeResource(IRI);
+			fail("Expected timeout");
+		} catch (DataSourceTimeoutException ex) {
+			// expected
+		}
+	}
+
+	public void testSourcesOutsideNamespaceAreNotAsked() {
+		DataSource other = new ModelDataSource(ModelFactory.createDefaultModel()) {
+			@Override
+			public boolean canDescribe(String absoluteIRI) {
+				throw new AssertionError("Should not be asked about " + absoluteIRI);
+			}
+		};
+		MergeDataSource merge = new MergeDataSource(
+				source("a", 0), other, source("b", 0), source("c", 0));
+		merge.setSourceNamespaces(Arrays.<Set<String>>asList(
+				Collections.singleton("http://example.com/"),
+				Collections.singleton("http://example.org/"),
+				new HashSet<String>(Arrays.asList("http://example.net/", "http://example.com/r")),
+				null));
+		assertTrue(merge.canDescribe(IRI));
+		Model result = merge.describeResource(IRI);
+		assertEquals(3, result.size());
+		assertEquals(3, merge.getDescription(IRI).getModel().size());
+		assertEquals(3, merge.describeResources(Collections.singleton(IRI)).size());
+	}
+
+	public void testPropertyValuesArePagedAcrossSources() {
+		MergeDataSource merge = new MergeDataSource(
+				source(0, "a", "c", "e"), source(0, "b", "d", "f"));
+		assertEquals(Arrays.asList("a", "b"), labels(
+				merge.listPropertyValues(IRI, RDFS.label, false, 0, 2)));
+		assertEquals(Arrays.asList("c", "d"), labels(
+				merge.listPropertyValues(IRI, RDFS.label, false, 2, 2)));
+		assertEquals(Arrays.asList("e", "f"), labels(
+				merge.listPropertyValues(IRI, RDFS.label, false, 4, 2)));
+		assertTrue(merge.listPropertyValues(IRI, RDFS.label, false, 6, 2).isEmpty());
+	}
+
+	private List<String> labels(Model model) {
+		List<String> result = new ArrayList<String>();
+		for (RDFNode value: ModelUtil.listValues(model,
+				model.getResource(IRI), RDFS.label, false)) {
+			result.add(value.asLiteral().getLexicalForm());
+		}
+		return result;
+	}
+
+	private MergeDataSource merge(long timeout, boolean skip, DataSource... sources) {
+		return new MergeDataSource(Arrays.asList(sources), new PrefixMappingImpl(),
+				executor, timeout, skip);
+	}
+
+	private DataSource source(String label, long delayMillis) {
+		return source(delayMillis, label);
+	}
+
+	private DataSource source(final long delayMillis, String... labels) {
+		Model model = ModelFactory.createDefaultModel();
+		Resource r = model.createResource(IRI);
+		for (String label: labels) {
+			r.addProperty(RDFS.label, label);
+		}
+		return new ModelDataSource(model) {
+			@Override
+			public Model describeResource(String resourceURI) {
+				try {
+					Thread.sleep(delayMillis);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return super.describeResource(resourceURI);
+			}
+		};
+	}
+}
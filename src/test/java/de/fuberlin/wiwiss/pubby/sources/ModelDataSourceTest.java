@@ -0,0 +1,119 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+public class ModelDataSourceTest extends TestCase {
+	private final static String NS = "http://example.com/";
+	private Model model;
+	private Resource alice;
+	private Resource bob;
+	private Resource carol;
+	private Property knows;
+	private Property address;
+	private Property city;
+
+	public void setUp() {
+		model = ModelFactory.createDefaultModel();
+		model.setNsPrefix("ex", NS);
+		alice = model.createResource(NS + "alice");
+		bob = model.createResource(NS + "bob");
+		carol = model.createResource(NS + "carol");
+		knows = model.createProperty(NS + "knows");
+		address = model.createProperty(NS + "address");
+		city = model.createProperty(NS + "city");
+		alice.addProperty(RDFS.label, "Alice");
+		alice.addProperty(knows, bob);
+		alice.addProperty(address, model.createResource()
+				.addProperty(city, model.createResource()
+						.addProperty(RDFS.label, "Berlin")));
+		bob.addProperty(RDFS.label, "Bob");
+		bob.addProperty(knows, carol);
+		carol.addProperty(RDFS.label, "Carol");
+		carol.addProperty(knows, alice);
+		carol.addProperty(RDF.type, model.createResource(NS + "Person"));
+	}
+
+	public void testDescriptionContainsOutgoingAndIncomingArcs() {
+		Model result = new ModelDataSource(model).describeResource(alice.getURI());
+		assertTrue(result.contains(alice, knows, bob));
+		assertTrue(result.contains(carol, knows, alice));
+	}
+
+	public void testDescriptionContainsNeighbourLabels() {
+		Model result = new ModelDataSource(model).describeResource(alice.getURI());
+		assertTrue(result.contains(bob, RDFS.label, "Bob"));
+		assertTrue(result.contains(carol, RDFS.label, "Carol"));
+	}
+
+	public void testDescriptionExcludesOtherArcsOfNeighbours() {
+		Model result = new ModelDataSource(model).describeResource(alice.getURI());
+		assertFalse(result.contains(bob, knows, carol));
+		assertFalse(result.contains(carol, RDF.type, (RDFNode) null));
+	}
+
+	public void testDescriptionIncludesBlankNodeClosure() {
+		Model result = new ModelDataSource(model).describeResource(alice.getURI());
+		assertTrue(result.contains(null, city, (RDFNode) null));
+		assertTrue(result.contains(null, RDFS.label, "Berlin"));
+	}
+
+	public void testUnknownResourceGivesEmptyDescription() {
+		assertTrue(new ModelDataSource(model).describeResource(
+				NS + "nobody").isEmpty());
+	}
+
+	public void testPrefixesAreKept() {
+		Model result = new ModelDataSource(model).describeResource(alice.getURI());
+		assertEquals(NS, result.getNsPrefixURI("ex"));
+	}
+
+	public void testDescribeResourcesContainsOutgoingArcsOfAll() {
+		Model result = new ModelDataSource(model).describeResources(
+				Arrays.asList(new String[]{alice.getURI(), bob.getURI()}));
+		assertTrue(result.contains(alice, knows, bob));
+		assertTrue(result.contains(bob, knows, carol));
+		assertTrue(result.contains(null, RDFS.label, "Berlin"));
+	}
+
+	public void testPropertyValues() {
+		Model result = new ModelDataSource(model).listPropertyValues(
+				alice.getURI(), knows, true, 0, DataSource.DEFAULT_VALUES_PAGE_SIZE);
+		assertTrue(result.contains(carol, knows, alice));
+		assertTrue(result.contains(carol, RDFS.label, "Carol"));
+		assertFalse(result.contains(alice, knows, bob));
+	}
+
+	public void testPropertyValuesArePaged() {
+		for (int i = 0; i < 25; i++) {
+			alice.addProperty(knows, model.createResource(NS + "r" + i));
+		}
+		ModelDataSource source = new ModelDataSource(model);
+		Model all = ModelFactory.createDefaultModel();
+		for (int offset = 0; offset < 40; offset += 10) {
+			Model page = source.listPropertyValues(alice.getURI(), knows, false, offset, 10);
+			int count = page.listStatements(alice, knows, (RDFNode) null).toList().size();
+			assertEquals(offset < 20 ? 10 : (offset < 30 ? 6 : 0), count);
+			all.add(page);
+		}
+		assertEquals(26, all.listStatements(alice, knows, (RDFNode) null).toList().size());
+	}
+
+	public void testDescriptionSizeIndependentOfModelSize() {
+		for (int i = 0; i < 100000; i++) {
+			model.createResource(NS + "r" + i).addProperty(knows,
+					model.createResource(NS + "r" + (i + 1)));
+		}
+		Model result = new ModelDataSource(model).describeResource(alice.getURI());
+		assertEquals(8, result.size());
+	}
+}
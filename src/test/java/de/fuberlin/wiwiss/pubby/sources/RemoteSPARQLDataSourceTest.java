@@ -0,0 +1,296 @@
+package de.fuberlin.wiwiss.pubby.sources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fuberlin.wiwiss.pubby.vocab.CONF;
+
+/**
+ * Runs {@link RemoteSPARQLDataSource} against a local stub endpoint
+ * that answers every query with the same Turtle document.
+ */
+public class RemoteSPARQLDataSourceTest extends TestCase {
+	private final static String IRI = "http://example.com/r";
+	private final static String TURTLE = "<" + IRI + "> <" + RDFS.label.getURI() + "> \"r\" .\n";
+
+	private final static String EMPTY_RESULTS = 
+			"<sparql xmlns='http://www.w3.org/2005/sparql-results#'>" +
+			"<head><variable name='p'/><variable name='count'/></head>" +
+			"<results/></sparql>";
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+	private String endpointURL;
+	private HttpTransport transport;
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger gzippedResponses = new AtomicInteger();
+	private final Set<String> queries = Collections.synchronizedSet(new HashSet<String>());
+	private volatile String response = TURTLE;
+	private volatile int status = 200;
+	private volatile long delayMillis = 0;
+
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/sparql", new StubEndpoint());
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+		endpointURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/sparql";
+		transport = new HttpTransport(10, 5, 1000, 300, 2);
+	}
+
+	public void tearDown() {
+		transport.shutdown();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	public void testDescribeResource() {
+		Model result = dataSource().describeResource(IRI);
+		assertTrue(result.contains(ResourceFactory.createResource(IRI), RDFS.label, "r"));
+	}
+
+	public void testConnectionIsReused() {
+		RemoteSPARQLDataSource ds = dataSource();
+		for (int i = 0; i < 5; i++) {
+			ds.describeResource(IRI);
+		}
+		assertEquals(5, requests.get());
+		assertEquals(1, clientPorts.size());
+	}
+
+	public void testCompressedResponseIsDecoded() {
+		Model result = dataSource().describeResource(IRI);
+		assertEquals(1, gzippedResponses.get());
+		assertEquals(1, result.size());
+	}
+
+	public void testReadTimeoutIsNotRetried() {
+		delayMillis = 2000;
+		long start = System.currentTimeMillis();
+		try {
+			dataSource().describeResource(IRI);
+			fail("Expected timeout");
+		} catch (QueryExceptionHTTP ex) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < 1500);
+		assertEquals(1, requests.get());
+	}
+
+	public void testErrorStatus() {
+		status = 500;
+		try {
+			dataSource().describeResource(IRI);
+			fail("Expected exception");
+		} catch (QueryExceptionHTTP ex) {
+			assertEquals(500, ex.getResponseCode());
+		}
+	}
+
+	public void testCombinedDescription() {
+		response = TURTLE + 
+				"<" + RDFS.seeAlso.getURI() + "> <" + CONF.NS + "highOutdegreeCount> 42 .\n";
+		DescriptionResult result = dataSource(true).getDescription(IRI);
+		assertEquals(1, requests.get());
+		assertEquals(1, result.getModel().size());
+		assertEquals(Collections.singletonMap(RDFS.seeAlso, 42), 
+				result.getHighOutdegreeProperties());
+		assertTrue(result.getHighIndegreeProperties().isEmpty());
+	}
+
+	public void testSeparateQueriesWhenNotCombined() {
+		RemoteSPARQLDataSource ds = dataSource(true);
+		ds.setCombineQueries(false);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		ds.setExecutor(executor);
+		try {
+			DescriptionResult result = ds.getDescription(IRI);
+			assertEquals(1, result.getModel().size());
+		} finally {
+			executor.shutdownNow();
+		}
+		// Two CONSTRUCTs, two SELECTs for the counts
+		assertEquals(4, requests.get());
+		assertEquals(4, queries.size());
+	}
+
+	public void testDescriptionRecordsQueries() {
+		DescriptionResult result = dataSource(true).getDescription(IRI);
+		assertEquals(1, result.getQueries().size());
+		QueryRecord query = result.getQueries().get(0);
+		assertEquals(endpointURL, query.getEndpointURL());
+		assertTrue(query.getQuery().contains("<" + IRI + ">"));
+		assertEquals(1, query.getResultSize());
+		assertTrue(query.isGraphQuery());
+		assertTrue(query.getElapsedMillis() >= 0);
+	}
+
+	public void testSeparateQueriesAreAllRecorded() {
+		RemoteSPARQLDataSource ds = dataSource(true);
+		ds.setCombineQueries(false);
+		List<QueryRecord> records = ds.getDescription(IRI).getQueries();
+		assertEquals(4, records.size());
+		int graphQueries = 0;
+		for (QueryRecord query: records) {
+			if (query.isGraphQuery()) graphQueries++;
+		}
+		assertEquals(2, graphQueries);
+	}
+
+	public void testPropertyValuesArePaged() throws UnsupportedEncodingException {
+		dataSource().listPropertyValues(IRI, RDFS.label, false, 20, 10);
+		assertEquals(2, queries.size());
+		for (String query: queries) {
+			assertTrue(URLDecoder.decode(query, "utf-8").contains(" ORDER BY ?x LIMIT 10 OFFSET 20"));
+		}
+	}
+
+	public void testTypesAreQueriedInBatches() throws UnsupportedEncodingException {
+		response = "<sparql xmlns='http://www.w3.org/2005/sparql-results#'>" +
+				"<head><variable name='s'/><variable name='type'/></head>" +
+				"<results><result>" +
+				"<binding name='s'><uri>" + IRI + "</uri></binding>" +
+				"<binding name='type'><uri>http://example.com/Person</uri></binding>" +
+				"</result></results></sparql>";
+		List<String> iris = new ArrayList<String>();
+		for (int i = 0; i < 60; i++) {
+			iris.add(IRI + i);
+		}
+		iris.add(IRI);
+		Model result = dataSource().getTypes(iris);
+		assertTrue(result.contains(ResourceFactory.createResource(IRI), RDF.type,
+				ResourceFactory.createResource("http://example.com/Person")));
+		assertEquals(2, queries.size());
+		for (String query: queries) {
+			String decoded = URLDecoder.decode(query, "utf-8");
+			assertTrue(decoded.contains("SELECT ?s ?type"));
+			assertTrue(decoded.contains("FILTER (?s = <" + IRI + "0> || ") ||
+					decoded.contains("FILTER (?s = <" + IRI + "50> || "));
+		}
+	}
+
+	public void testSeveralPropertyQueriesArePagedTogether() throws UnsupportedEncodingException {
+		Set<String> propertyQueries = new HashSet<String>(Arrays.asList(
+				"CONSTRUCT {?__this__ ?__property__ ?x} WHERE {?__this__ ?__property__ ?x} ORDER BY ?x",
+				"CONSTRUCT {?__this__ ?__property__ ?x} WHERE {?x ?__property__ ?__this__} ORDER BY ?x"));
+		RemoteSPARQLDataSource ds = new RemoteSPARQLDataSource(transport,
+				endpointURL, null, false, null, propertyQueries,
+				null, null, null, null, null);
+		ds.setGraphContentType("text/turtle");
+		ds.listPropertyValues(IRI, RDFS.label, false, 20, 10);
+		assertEquals(3, queries.size());
+		int paged = 0;
+		for (String query: queries) {
+			String decoded = URLDecoder.decode(query, "utf-8");
+			if (decoded.contains("DESCRIBE")) {
+				assertTrue(decoded.contains(" LIMIT 10 OFFSET 20"));
+			} else {
+				assertTrue(decoded.contains(" ORDER BY ?x LIMIT 30"));
+				assertFalse(decoded.contains("OFFSET"));
+				paged++;
+			}
+		}
+		assertEquals(2, paged);
+	}
+
+	public void testConfiguredQueryWithLimitIsNotPaged() throws UnsupportedEncodingException {
+		String query = "CONSTRUCT {?__this__ ?__property__ ?x} " +
+				"WHERE {?__this__ ?__property__ ?x} LIMIT 5";
+		RemoteSPARQLDataSource ds = new RemoteSPARQLDataSource(transport,
+				endpointURL, null, false, null, Collections.singleton(query),
+				null, null, null, null, null);
+		ds.setGraphContentType("text/turtle");
+		ds.listPropertyValues(IRI, RDFS.label, false, 0, 10);
+		assertEquals(2, queries.size());
+		int unchanged = 0;
+		for (String sent: queries) {
+			String decoded = URLDecoder.decode(sent, "utf-8");
+			if (decoded.contains("} LIMIT 5")) {
+				assertFalse(decoded.contains("LIMIT 10"));
+				unchanged++;
+			}
+		}
+		assertEquals(1, unchanged);
+		queries.clear();
+		ds.listPropertyValues(IRI, RDFS.label, false, 10, 10);
+		assertEquals(1, queries.size());
+		assertTrue(URLDecoder.decode(queries.iterator().next(), "utf-8").contains("DESCRIBE"));
+	}
+
+	private RemoteSPARQLDataSource dataSource() {
+		return dataSource(false);
+	}
+
+	private RemoteSPARQLDataSource dataSource(boolean supportsSPARQL11) {
+		RemoteSPARQLDataSource result = new RemoteSPARQLDataSource(transport,
+				endpointURL, null, supportsSPARQL11, null, null, null, null, null, null, null);
+		result.setGraphContentType("text/turtle");
+		return result;
+	}
+
+	private class StubEndpoint implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			requests.incrementAndGet();
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			// Long queries are POSTed
+			String query = exchange.getRequestURI().getRawQuery();
+			if (query == null) {
+				query = new Scanner(exchange.getRequestBody(), "UTF-8").useDelimiter("\\A").next();
+			}
+			queries.add(query);
+			if (delayMillis > 0) {
+				try {
+					Thread.sleep(delayMillis);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			boolean isSelect = query.contains("SELECT+%3Fp");
+			byte[] body = (isSelect ? EMPTY_RESULTS : response).getBytes("UTF-8");
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+				gzip.write(body);
+				gzip.close();
+				body = buffer.toByteArray();
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				gzippedResponses.incrementAndGet();
+			}
+			exchange.getResponseHeaders().set("Content-Type", isSelect
+					? "application/sparql-results+xml" : "text/turtle; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+}